@@ -19,4 +19,9 @@ public interface DragonCache<K, V> {
 	 * @return
 	 */
 	public V get(K k);
+
+	/**
+	 * 清空cache
+	 */
+	public void invalidateAll();
 }
@@ -60,6 +60,7 @@ public class GoogleDragonCache<K, V> implements DragonCache<K, V> {
 		return cache.size();
 	}
 
+	@Override
 	public void invalidateAll() {
 		cache.invalidateAll();
 	}
@@ -1,7 +1,5 @@
 package com.tianshouzhi.dragon.common.jdbc.sqltype;
 
-import java.util.regex.Pattern;
-
 /**
  * Created by TIANSHOUZHI336 on 2016/12/2.
  */
@@ -10,16 +8,4 @@ public enum SqlType {
 	SELECT, SHOW, DEBUG, EXPLAIN;
 
 	// DUMP, INSERT, UPDATE, DELETE, REPLACE, TRUNCATE, CREATE, DROP, LOAD, MERGE, ALTER, RENAME, CALL;
-
-	private Pattern pattern;
-
-	SqlType() {
-		String regex = "(\\s*/\\*.+\\*/)?" + "\\s*" + this.name() + ".+";
-		int flags = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
-		pattern = Pattern.compile(regex, flags);
-	}
-
-	public Pattern getPattern() {
-		return pattern;
-	}
 }
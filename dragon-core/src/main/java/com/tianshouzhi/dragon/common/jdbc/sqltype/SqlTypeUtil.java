@@ -5,8 +5,6 @@ import com.tianshouzhi.dragon.common.cache.DragonCacheBuilder;
 
 import java.sql.SQLException;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by TIANSHOUZHI336 on 2016/12/2.
@@ -16,6 +14,15 @@ public class SqlTypeUtil {
 	private static DragonCache<String, Boolean> sqlTypeCache = DragonCacheBuilder.build(100, 2000, 50, 10,
 	      TimeUnit.MINUTES);
 
+	// 强制走主库的hint
+	private static final String FORCE_MASTER_HINT = "/*master*/";
+
+	// values()每次都会复制数组
+	private static final SqlType[] SQL_TYPES = SqlType.values();
+
+	/**
+	 * 是否可以走从库：第一个关键字是{@link SqlType}中的类型，没有/*master*&#47; hint，并且不是SELECT ... FOR UPDATE
+	 */
 	public static boolean isQuery(String sql, boolean useCache) throws SQLException {
 		Boolean isQuery = null;
 		if (useCache) {
@@ -25,9 +32,8 @@ public class SqlTypeUtil {
 			return isQuery;
 		}
 
-		SqlType sqlType = parseSqlType(sql);
 		// if can't decide sql type, default go write
-		isQuery = (sqlType != null);
+		isQuery = scanIsQuery(sql);
 
 		if (useCache) {
 			sqlTypeCache.put(sql, isQuery);
@@ -35,16 +41,131 @@ public class SqlTypeUtil {
 		return isQuery;
 	}
 
+	/**
+	 * 跳过开头的空白和注释，根据第一个关键字判断sql类型，不是读sql返回null
+	 */
 	public static SqlType parseSqlType(String sql) throws SQLException {
-		SqlType[] values = SqlType.values();
-		for (SqlType current : values) {
-			Pattern pattern = current.getPattern();
-			Matcher matcher = pattern.matcher(sql);
-			if (matcher.matches()) {
-				return current;
+		int length = sql.length();
+		int position = 0;
+		while (position < length) {
+			int next = skipWhitespaceOrComment(sql, position);
+			if (next == position) {
+				return matchSqlType(sql, position);
 			}
+			position = next;
 		}
+		return null;
+	}
 
+	/**
+	 * 只扫描一遍sql，不使用正则表达式，也不创建对象。写sql读到第一个关键字就可以返回；读sql需要扫描完整个sql，
+	 * 查找注释中的/*master*&#47; hint，select语句还要查找for update。字符串和注释中的for update不算
+	 */
+	private static boolean scanIsQuery(String sql) {
+		int length = sql.length();
+		SqlType sqlType = null;
+		boolean afterFor = false;// 上一个单词是FOR
+		int position = 0;
+		while (position < length) {
+			char c = sql.charAt(position);
+			if (c == '/' && sql.startsWith(FORCE_MASTER_HINT, position)) {
+				return false;
+			}
+			int next = skipWhitespaceOrComment(sql, position);
+			if (next != position) {
+				position = next;
+				continue;
+			}
+			if (sqlType == null) {
+				sqlType = matchSqlType(sql, position);
+				if (sqlType == null) {
+					return false;
+				}
+				position += sqlType.name().length();
+				continue;
+			}
+			if (c == '\'' || c == '"' || c == '`') {
+				position = skipQuoted(sql, position);
+				afterFor = false;
+			} else if (isIdentifierPart(c)) {
+				int wordEnd = position + 1;
+				while (wordEnd < length && isIdentifierPart(sql.charAt(wordEnd))) {
+					wordEnd++;
+				}
+				if (afterFor && sqlType == SqlType.SELECT && isWord(sql, position, wordEnd, "UPDATE")) {
+					return false;
+				}
+				afterFor = isWord(sql, position, wordEnd, "FOR");
+				position = wordEnd;
+			} else {
+				afterFor = false;
+				position++;
+			}
+		}
+		return sqlType != null;
+	}
+
+	private static SqlType matchSqlType(String sql, int start) {
+		for (SqlType sqlType : SQL_TYPES) {
+			String name = sqlType.name();
+			int end = start + name.length();
+			if (sql.regionMatches(true, start, name, 0, name.length())
+			      && (end == sql.length() || !isIdentifierPart(sql.charAt(end)))) {
+				return sqlType;
+			}
+		}
 		return null;
 	}
+
+	/**
+	 * 跳过position处的空白或者注释(/* *&#47;、#、-- )，返回之后的位置，position处不是空白或注释时返回position
+	 */
+	private static int skipWhitespaceOrComment(String sql, int position) {
+		int length = sql.length();
+		char c = sql.charAt(position);
+		if (Character.isWhitespace(c)) {
+			return position + 1;
+		}
+		if (c == '/' && position + 1 < length && sql.charAt(position + 1) == '*') {
+			int end = sql.indexOf("*/", position + 2);
+			return end < 0 ? length : end + 2;
+		}
+		// mysql中--之后必须是空白才是注释
+		if (c == '#' || (c == '-' && position + 2 < length && sql.charAt(position + 1) == '-'
+		      && Character.isWhitespace(sql.charAt(position + 2)))) {
+			int end = sql.indexOf('\n', position);
+			return end < 0 ? length : end + 1;
+		}
+		return position;
+	}
+
+	// 跳过引号括起来的内容，支持反斜杠转义和两个引号的转义，返回结束引号之后的位置
+	private static int skipQuoted(String sql, int position) {
+		int length = sql.length();
+		char quote = sql.charAt(position);
+		int i = position + 1;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\\' && quote != '`') {
+				i += 2;
+			} else if (c == quote) {
+				if (i + 1 < length && sql.charAt(i + 1) == quote) {
+					i += 2;
+				} else {
+					return i + 1;
+				}
+			} else {
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isWord(String sql, int start, int end, String keyword) {
+		return end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+	}
 }
@@ -0,0 +1,136 @@
+package com.tianshouzhi.dragon.ha.config;
+
+import com.tianshouzhi.dragon.common.exception.DragonException;
+
+import java.util.Properties;
+
+/**
+ * 真实数据源的熔断与健康检查配置，同一个HA数据源下的所有真实数据源共用一份配置
+ */
+public class CircuitBreakerConfig {
+	private static final String PREFIX = "dragon.ha.circuitBreaker.";
+
+	// 统计窗口内致命异常的比例(百分比)达到这个值时熔断
+	private int failureRateThreshold = 50;
+
+	// 统计窗口内的请求数达到这个值时才计算失败率，避免少量请求失败就熔断
+	private int minimumRequests = 5;
+
+	// 统计窗口的长度
+	private long windowMillis = 10000;
+
+	// 熔断之后第一次探测的等待时间，之后每次探测失败等待时间加倍
+	private long initialBackoffMillis = 1000;
+
+	private long maxBackoffMillis = 60000;
+
+	// 半开状态下每秒最多放行的真实请求数，连续成功这么多次之后关闭熔断
+	private int halfOpenRequests = 5;
+
+	// 每个HA数据源并行探测的线程数
+	private int probeThreads = 4;
+
+	// 探测时Connection.isValid与show slave status的超时时间，单位秒
+	private int probeTimeoutSeconds = 1;
+
+	public CircuitBreakerConfig() {
+	}
+
+	public CircuitBreakerConfig(Properties properties) {
+		this.failureRateThreshold = getInt(properties, "failureRateThreshold", failureRateThreshold);
+		this.minimumRequests = getInt(properties, "minimumRequests", minimumRequests);
+		this.windowMillis = getInt(properties, "windowMillis", (int) windowMillis);
+		this.initialBackoffMillis = getInt(properties, "initialBackoffMillis", (int) initialBackoffMillis);
+		this.maxBackoffMillis = getInt(properties, "maxBackoffMillis", (int) maxBackoffMillis);
+		this.halfOpenRequests = getInt(properties, "halfOpenRequests", halfOpenRequests);
+		this.probeThreads = getInt(properties, "probeThreads", probeThreads);
+		this.probeTimeoutSeconds = getInt(properties, "probeTimeoutSeconds", probeTimeoutSeconds);
+		if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+			throw new DragonException(PREFIX + "failureRateThreshold must between 1 and 100");
+		}
+		if (maxBackoffMillis < initialBackoffMillis) {
+			throw new DragonException(PREFIX + "maxBackoffMillis can't less than initialBackoffMillis");
+		}
+	}
+
+	private static int getInt(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(PREFIX + name);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		int result;
+		try {
+			result = Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new DragonException("invalid " + PREFIX + name + ":" + value);
+		}
+		if (result <= 0) {
+			throw new DragonException(PREFIX + name + " must > 0");
+		}
+		return result;
+	}
+
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public void setFailureRateThreshold(int failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	public int getMinimumRequests() {
+		return minimumRequests;
+	}
+
+	public void setMinimumRequests(int minimumRequests) {
+		this.minimumRequests = minimumRequests;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public int getHalfOpenRequests() {
+		return halfOpenRequests;
+	}
+
+	public void setHalfOpenRequests(int halfOpenRequests) {
+		this.halfOpenRequests = halfOpenRequests;
+	}
+
+	public int getProbeThreads() {
+		return probeThreads;
+	}
+
+	public void setProbeThreads(int probeThreads) {
+		this.probeThreads = probeThreads;
+	}
+
+	public int getProbeTimeoutSeconds() {
+		return probeTimeoutSeconds;
+	}
+
+	public void setProbeTimeoutSeconds(int probeTimeoutSeconds) {
+		this.probeTimeoutSeconds = probeTimeoutSeconds;
+	}
+}
@@ -2,7 +2,9 @@ package com.tianshouzhi.dragon.ha.config;
 
 import com.tianshouzhi.dragon.common.exception.DragonException;
 import com.tianshouzhi.dragon.common.util.StringUtils;
+import com.tianshouzhi.dragon.ha.router.RouterStrategy;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,17 +18,33 @@ public class HADataSourceConfig {
 
 	private Map<String, RealDataSourceConfig> realDataSourceConfigMap = new HashMap<String, RealDataSourceConfig>(4);
 
+	// 有多个可读(可写)的数据源时的路由策略，默认按照权重随机选择
+	private RouterStrategy routerStrategy = RouterStrategy.WEIGHT;
+
+	private CircuitBreakerConfig circuitBreakerConfig;
+
 	public HADataSourceConfig(Properties properties) {
 		this.properties = properties;
 		String dsNames = properties.getProperty("dragon.ha.datasources");
 		if (StringUtils.isBlank(dsNames)) {
 			throw new DragonException("dragon.ha.datasources can't be null");
 		}
+		String routerStrategy = properties.getProperty("dragon.ha.routerStrategy");
+		if (StringUtils.isNotBlank(routerStrategy)) {
+			try {
+				this.routerStrategy = RouterStrategy.valueOf(routerStrategy.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new DragonException("invalid dragon.ha.routerStrategy:" + routerStrategy + ",valid values:"
+				      + Arrays.toString(RouterStrategy.values()));
+			}
+		}
+		this.circuitBreakerConfig = new CircuitBreakerConfig(properties);
 		for (String dsName : dsNames.split(",")) {
 			String _dsName = dsName.trim();
 			String dsClass = properties.getProperty("dragon.ha." + _dsName + ".class");
 			String readWeight = properties.getProperty("dragon.ha." + _dsName + ".readWeight", "0");
 			String writeWeight = properties.getProperty("dragon.ha." + _dsName + ".writeWeight", "0");
+			String maxReplicationLag = properties.getProperty("dragon.ha." + _dsName + ".maxReplicationLag", "-1");
 			Properties dsProperties = new Properties();
 			Enumeration<?> enumeration = properties.propertyNames();
 			while (enumeration.hasMoreElements()) {
@@ -43,6 +61,7 @@ public class HADataSourceConfig {
 			realDataSourceConfig.setRealDsClass(dsClass);
 			realDataSourceConfig.setReadWeight(Integer.parseInt(readWeight));
 			realDataSourceConfig.setWriteWeight(Integer.parseInt(writeWeight));
+			realDataSourceConfig.setMaxReplicationLag(Long.parseLong(maxReplicationLag.trim()));
 			realDataSourceConfig.setRealDsProperties(dsProperties);
 			realDataSourceConfigMap.put(dsName, realDataSourceConfig);
 		}
@@ -56,4 +75,12 @@ public class HADataSourceConfig {
 		return realDataSourceConfigMap;
 	}
 
+	public RouterStrategy getRouterStrategy() {
+		return routerStrategy;
+	}
+
+	public CircuitBreakerConfig getCircuitBreakerConfig() {
+		return circuitBreakerConfig;
+	}
+
 }
@@ -12,6 +12,9 @@ public class RealDataSourceConfig {
 
 	private int writeWeight;
 
+	// 允许读取的最大主从同步延迟，单位秒，小于0表示不限制
+	private long maxReplicationLag = -1;
+
 	private String realDsClass;
 
 	private Properties realDsProperties;
@@ -40,6 +43,14 @@ public class RealDataSourceConfig {
 		this.writeWeight = writeWeight;
 	}
 
+	public long getMaxReplicationLag() {
+		return maxReplicationLag;
+	}
+
+	public void setMaxReplicationLag(long maxReplicationLag) {
+		this.maxReplicationLag = maxReplicationLag;
+	}
+
 	public String getRealDsClass() {
 		return realDsClass;
 	}
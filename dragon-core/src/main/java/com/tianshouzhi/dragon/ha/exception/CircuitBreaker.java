@@ -0,0 +1,213 @@
+package com.tianshouzhi.dragon.ha.exception;
+
+import com.tianshouzhi.dragon.common.log.Log;
+import com.tianshouzhi.dragon.common.log.LoggerFactory;
+import com.tianshouzhi.dragon.ha.config.CircuitBreakerConfig;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 真实数据源的熔断器，每个真实数据源一个：
+ * <ul>
+ * <li>CLOSED：正常路由，统计窗口内致命异常的比例达到阈值时熔断</li>
+ * <li>OPEN：不再路由，由{@link HealthChecker}按照指数退避的间隔探测，探测成功之后进入半开状态</li>
+ * <li>HALF_OPEN：每秒放行少量真实请求，连续成功之后关闭熔断，任何一个请求出现致命异常重新熔断</li>
+ * </ul>
+ * 关闭状态下记录请求结果、半开状态下放行请求都只需要原子操作，状态变化时加锁
+ */
+public class CircuitBreaker {
+	private static final Log LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	// windowCounts中一个请求的增量
+	private static final long REQUEST_UNIT = 1L << 32;
+
+	private final DataSourceAvailability availability;
+
+	private final RealDataSourceWrapper dataSourceWrapper;
+
+	private final CircuitBreakerConfig config;
+
+	private volatile State state = State.CLOSED;
+
+	// 统计窗口内的请求数(高32位)与致命异常数(低32位)，放在一个long中保证两者一起重置
+	private final AtomicLong windowCounts = new AtomicLong();
+
+	private volatile long windowStart = System.currentTimeMillis();
+
+	// 连续熔断(探测失败)的次数，用于计算下一次探测的等待时间
+	private int openCount;
+
+	private volatile long nextProbeTime;
+
+	private volatile long halfOpenSince;
+
+	// 半开状态下当前这一秒(高32位)与这一秒已经放行的请求数(低32位)，通过CAS放行，路由时不需要加锁
+	private final AtomicLong trialCounts = new AtomicLong();
+
+	private final AtomicInteger trialSuccesses = new AtomicInteger();
+
+	// 同一个数据源同时只有一个探测(或者采样主从同步延迟)的任务
+	private final AtomicBoolean probing = new AtomicBoolean();
+
+	public CircuitBreaker(DataSourceAvailability availability, RealDataSourceWrapper dataSourceWrapper,
+	      CircuitBreakerConfig config) {
+		this.availability = availability;
+		this.dataSourceWrapper = dataSourceWrapper;
+		this.config = config;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * sql执行成功，或者出现了非致命异常(例如sql语法错误，说明数据源是可以访问的)
+	 */
+	public void onSuccess() {
+		State current = state;
+		if (current == State.CLOSED) {
+			record(0);
+		} else if (current == State.HALF_OPEN) {
+			if (trialSuccesses.incrementAndGet() >= config.getHalfOpenRequests()) {
+				close();
+			}
+		}
+		// OPEN状态下的结果来自熔断之前已经发出的请求，忽略
+	}
+
+	/**
+	 * 获取连接或者执行sql出现了致命异常
+	 */
+	public void onFailure() {
+		State current = state;
+		if (current == State.CLOSED) {
+			long counts = record(1);
+			long requests = counts >>> 32;
+			long failures = counts & 0xFFFFFFFFL;
+			if (requests >= config.getMinimumRequests() && failures * 100 >= config.getFailureRateThreshold() * requests) {
+				open(State.CLOSED);
+			}
+		} else if (current == State.HALF_OPEN) {
+			open(State.HALF_OPEN);
+		}
+	}
+
+	/**
+	 * 半开状态下每秒最多放行halfOpenRequests个真实请求
+	 *
+	 * @return 可以把请求路由到这个数据源
+	 */
+	public boolean tryAcquireTrial() {
+		if (state != State.HALF_OPEN) {
+			return false;
+		}
+		long second = System.currentTimeMillis() / 1000;
+		while (true) {
+			long counts = trialCounts.get();
+			long permits = (counts >>> 32) == second ? counts & 0xFFFFFFFFL : 0;
+			if (permits >= config.getHalfOpenRequests()) {
+				return false;
+			}
+			if (trialCounts.compareAndSet(counts, (second << 32) | (permits + 1))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * OPEN状态到了探测时间；或者半开状态持续了一个统计窗口都没有真实请求来决定是否恢复，由探测决定
+	 */
+	boolean needProbe(long now) {
+		State current = state;
+		if (current == State.OPEN) {
+			return now >= nextProbeTime;
+		}
+		return current == State.HALF_OPEN && now - halfOpenSince >= config.getWindowMillis();
+	}
+
+	boolean tryStartProbe() {
+		return probing.compareAndSet(false, true);
+	}
+
+	void endProbe() {
+		probing.set(false);
+	}
+
+	synchronized void onProbeSuccess() {
+		if (state == State.OPEN) {
+			halfOpenSince = System.currentTimeMillis();
+			trialCounts.set(0);
+			trialSuccesses.set(0);
+			state = State.HALF_OPEN;
+			LOG.info("real datasource 【" + dataSourceWrapper.getFullName() + "】 probe success, half open");
+		} else if (state == State.HALF_OPEN) {
+			close();
+		}
+	}
+
+	synchronized void onProbeFailure() {
+		if (state == State.OPEN) {
+			openCount++;
+			nextProbeTime = System.currentTimeMillis() + backoffMillis();
+		} else if (state == State.HALF_OPEN) {
+			open(State.HALF_OPEN);
+		}
+	}
+
+	private long record(long failure) {
+		long now = System.currentTimeMillis();
+		if (now - windowStart >= config.getWindowMillis()) {
+			synchronized (this) {
+				if (now - windowStart >= config.getWindowMillis()) {
+					windowStart = now;
+					windowCounts.set(0);
+				}
+			}
+		}
+		return windowCounts.addAndGet(REQUEST_UNIT + failure);
+	}
+
+	private synchronized void open(State expected) {
+		if (state != expected) {// 已经被其他线程修改
+			return;
+		}
+		openCount++;
+		nextProbeTime = System.currentTimeMillis() + backoffMillis();
+		state = State.OPEN;
+		dataSourceWrapper.disable();
+		availability.markdown(dataSourceWrapper);
+		LOG.warn("markdown real datasource 【" + dataSourceWrapper.getFullName() + "】, next probe after "
+		      + backoffMillis() + "ms!!!");
+	}
+
+	private synchronized void close() {
+		if (state != State.HALF_OPEN) {
+			return;
+		}
+		openCount = 0;
+		windowStart = System.currentTimeMillis();
+		windowCounts.set(0);
+		state = State.CLOSED;
+		dataSourceWrapper.enable();
+		availability.markup(dataSourceWrapper);
+		LOG.info("markup real datasource 【" + dataSourceWrapper.getFullName() + "】!!!");
+	}
+
+	// initialBackoffMillis * 2^(openCount-1)，不超过maxBackoffMillis
+	private long backoffMillis() {
+		int shift = Math.min(Math.max(openCount - 1, 0), 30);
+		return Math.min(config.getInitialBackoffMillis() << shift, config.getMaxBackoffMillis());
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker{" + "dataSource=" + dataSourceWrapper.getFullName() + ", state=" + state + '}';
+	}
+}
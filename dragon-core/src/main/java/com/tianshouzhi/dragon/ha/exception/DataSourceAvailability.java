@@ -0,0 +1,110 @@
+package com.tianshouzhi.dragon.ha.exception;
+
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个HA数据源下所有真实数据源的可用性。markdown/markup时复制一份新的不可变快照，通过volatile发布，
+ * 路由时只需要读取一次volatile变量，不需要加锁，也不需要创建新的集合
+ */
+public class DataSourceAvailability {
+	private final String haDSName;
+
+	private volatile Snapshot snapshot = new Snapshot(0, Collections.<String, RealDataSourceWrapper> emptyMap());
+
+	public DataSourceAvailability(String haDSName) {
+		this.haDSName = haDSName;
+	}
+
+	public String getHaDSName() {
+		return haDSName;
+	}
+
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return 之前是可用的，返回true
+	 */
+	synchronized boolean markdown(RealDataSourceWrapper dataSourceWrapper) {
+		Snapshot current = snapshot;
+		if (current.invalidDataSources.containsKey(dataSourceWrapper.getRealDSName())) {
+			return false;
+		}
+		Map<String, RealDataSourceWrapper> invalids = new HashMap<String, RealDataSourceWrapper>(
+		      current.invalidDataSources);
+		invalids.put(dataSourceWrapper.getRealDSName(), dataSourceWrapper);
+		snapshot = new Snapshot(current.version + 1, invalids);
+		return true;
+	}
+
+	/**
+	 * @return 之前是不可用的，返回true
+	 */
+	synchronized boolean markup(RealDataSourceWrapper dataSourceWrapper) {
+		Snapshot current = snapshot;
+		if (!current.invalidDataSources.containsKey(dataSourceWrapper.getRealDSName())) {
+			return false;
+		}
+		Map<String, RealDataSourceWrapper> invalids = new HashMap<String, RealDataSourceWrapper>(
+		      current.invalidDataSources);
+		invalids.remove(dataSourceWrapper.getRealDSName());
+		snapshot = new Snapshot(current.version + 1, invalids);
+		return true;
+	}
+
+	/**
+	 * 不可变的可用性快照，每次变化时version加1
+	 */
+	public static final class Snapshot {
+		private final long version;
+
+		// key为真实数据源的名称
+		private final Map<String, RealDataSourceWrapper> invalidDataSources;
+
+		private final Set<String> invalidRealDSNames;
+
+		// 路由时遍历数组，不需要创建迭代器
+		private final RealDataSourceWrapper[] invalidDataSourceArray;
+
+		Snapshot(long version, Map<String, RealDataSourceWrapper> invalidDataSources) {
+			this.version = version;
+			this.invalidDataSources = Collections.unmodifiableMap(invalidDataSources);
+			this.invalidRealDSNames = this.invalidDataSources.keySet();
+			this.invalidDataSourceArray = invalidDataSources.values().toArray(
+			      new RealDataSourceWrapper[invalidDataSources.size()]);
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return 不可修改的集合，没有不可用的数据源时为空集合
+		 */
+		public Set<String> getInvalidRealDSNames() {
+			return invalidRealDSNames;
+		}
+
+		/**
+		 * @return 共享的数组，不能修改
+		 */
+		public RealDataSourceWrapper[] getInvalidDataSources() {
+			return invalidDataSourceArray;
+		}
+
+		public boolean isAvailable(String realDSName) {
+			return !invalidDataSources.containsKey(realDSName);
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{" + "version=" + version + ", invalidRealDSNames=" + invalidRealDSNames + '}';
+		}
+	}
+}
@@ -1,128 +1,58 @@
 package com.tianshouzhi.dragon.ha.exception;
 
-import com.tianshouzhi.dragon.common.log.Log;
-import com.tianshouzhi.dragon.common.log.LoggerFactory;
-import com.tianshouzhi.dragon.common.thread.DragonThreadFactory;
 import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
-import com.tianshouzhi.dragon.ha.util.DatasourceUtil;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by tianshouzhi on 2017/9/22.
+ *
+ * 真实数据源的熔断由每个数据源的{@link CircuitBreaker}负责，恢复由每个HA数据源的{@link HealthChecker}探测，
+ * 这里只记录异常，以及发布每个HA数据源的可用性快照
  */
 public abstract class DataSourceMonitor {
-	private static final Log LOG = LoggerFactory.getLogger(DataSourceMonitor.class);
-    public static final String CHECK_THREAD_NAME ="DRAGON_FATAL_EXCEPTION_DATASOURCE_CHECKER";
-	public static Map<String, Set<RealDataSourceWrapper>> unavailableDataSources = new ConcurrentHashMap<String, Set<RealDataSourceWrapper>>();
-
-	private static ScheduledExecutorService monitorExecutor =Executors.newSingleThreadScheduledExecutor(
-	      new DragonThreadFactory(CHECK_THREAD_NAME, true));
-
-	static {
-		monitorExecutor.scheduleWithFixedDelay(new Runnable() {
-			@Override
-			public void run() {
-				if (unavailableDataSources != null) {
-					for (Map.Entry<String, Set<RealDataSourceWrapper>> haDatasourceEntry : unavailableDataSources
-					      .entrySet()) {
-						for (RealDataSourceWrapper dataSourceWrapper : haDatasourceEntry.getValue()) {
-							try {
-								if (canMarkup(dataSourceWrapper)) {
-									markup(dataSourceWrapper);
-								}
-							} catch (Exception ignore) {
-								// continue for next
-							}
-						}
-					}
-				}
-			}
-		}, 1, 1, TimeUnit.SECONDS);
-	}
-
-	private static boolean canMarkup(RealDataSourceWrapper dataSourceWrapper)  {
-		boolean markup = false;
-        Connection connection =null;
-        try{
-            connection = dataSourceWrapper.getConnection();
-            
-            if(connection.isValid(3)){
-                markup=true;
-            }
-            
-            //如果拥有show slave status执行权限，
-            PreparedStatement preparedStatement = connection.prepareStatement("show slave status");
-            ResultSet resultSet = preparedStatement.executeQuery();
-            boolean slaveIoRunning = "Yes".equalsIgnoreCase(resultSet.getString("Slave_IO_Running"));// slave IO 线程在运行
-            boolean slaveSqlRunning = "Yes".equalsIgnoreCase(resultSet.getString("Slave_SQL_Running")); // slave SQL线程在运行
-            boolean noDelay = resultSet.getInt("Seconds_Behind_Master")==0;// 主从同步没有延迟
-			if (!(slaveIoRunning && slaveSqlRunning && noDelay)) {
-				LOG.warn("the db which "+dataSourceWrapper.getFullName() +"connected to is recovery,wait sync the " +
-						"master binlog to markup" );
-				markup = false;
-			}
-            resultSet.close();
-            preparedStatement.close();
-        }catch (Exception ignore){}
-        DatasourceUtil.close(connection);
-		return markup;
-	}
-
-	private static void markup(RealDataSourceWrapper dataSourceWrapper) {
-		dataSourceWrapper.enable();
-        Set<RealDataSourceWrapper> invalidSet = unavailableDataSources.get(dataSourceWrapper.getHaDSName());
-        invalidSet.remove(dataSourceWrapper);
-        LOG.info("markup real datasource 【" + dataSourceWrapper.getFullName() + "】!!!");
-	}
+	// key为HA数据源的名称，每个HA数据源一个可用性快照
+	private static ConcurrentMap<String, DataSourceAvailability> availabilities = new ConcurrentHashMap<String, DataSourceAvailability>();
 
+	/**
+	 * @return 是否是致命异常，致命异常计入熔断器的失败率
+	 */
 	public static boolean monitor(SQLException e, RealDataSourceWrapper dataSourceWrapper) {
 		boolean fatal = ExceptionSorterUtil.isExceptionFatal(e);
 		if (fatal) {
-			markdown(dataSourceWrapper);
+			dataSourceWrapper.getCircuitBreaker().onFailure();
 		}
 		return fatal;
 	}
 
-	private static void markdown(RealDataSourceWrapper dataSourceWrapper) {
-		dataSourceWrapper.disable();
-        Set<RealDataSourceWrapper> invalidSet = unavailableDataSources.get(dataSourceWrapper.getHaDSName());
-        if (invalidSet == null) {
-            synchronized (DataSourceMonitor.class) {
-                if (invalidSet == null) {
-                    invalidSet = new ConcurrentSkipListSet<RealDataSourceWrapper>();
-                    unavailableDataSources.put(dataSourceWrapper.getHaDSName(), invalidSet);
-                }
-            }
-        }
-        invalidSet.add(dataSourceWrapper);
-		LOG.warn("markdown real datasource 【" + dataSourceWrapper.getFullName() + "】!!!");
-	}
-
 	public static boolean isAvailable(RealDataSourceWrapper realDataSourceWrapper) {
-		Set<RealDataSourceWrapper> invalidSet = unavailableDataSources.get(realDataSourceWrapper.getHaDSName());
-		if (invalidSet == null || !invalidSet.contains(realDataSourceWrapper)) {
-			return true;
-		}
-		return false;
+		return realDataSourceWrapper.isAvailable();
 	}
 
+	/**
+	 * @return 当前不可用(熔断或者半开)的真实数据源名称，不可修改，直接返回快照中的集合，不会创建新的对象
+	 */
 	public static Set<String> getInvalidRealDs(String hsDSName) {
-		Set<RealDataSourceWrapper> invalidSet = unavailableDataSources.get(hsDSName);
-		if (invalidSet == null) {
-			return null;
-		}
-		Set<String> invalidNames = new HashSet<String>(4);
-		for (RealDataSourceWrapper invalid : invalidSet) {
-			invalidNames.add(invalid.getDsName());
+		return getAvailability(hsDSName).getSnapshot().getInvalidRealDSNames();
+	}
+
+	/**
+	 * 路由时可以持有返回的对象，每次只需要读取其中的快照
+	 */
+	public static DataSourceAvailability getAvailability(String haDSName) {
+		// 通过编程方式创建的RealDataSourceWrapper没有指定haDSName
+		String key = haDSName == null ? "" : haDSName;
+		DataSourceAvailability availability = availabilities.get(key);
+		if (availability == null) {
+			DataSourceAvailability newAvailability = new DataSourceAvailability(key);
+			availability = availabilities.putIfAbsent(key, newAvailability);
+			if (availability == null) {
+				availability = newAvailability;
+			}
 		}
-		return invalidNames;
+		return availability;
 	}
 }
@@ -0,0 +1,238 @@
+package com.tianshouzhi.dragon.ha.exception;
+
+import com.tianshouzhi.dragon.common.log.Log;
+import com.tianshouzhi.dragon.common.log.LoggerFactory;
+import com.tianshouzhi.dragon.common.thread.DragonThreadFactory;
+import com.tianshouzhi.dragon.ha.config.CircuitBreakerConfig;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+import com.tianshouzhi.dragon.ha.util.DatasourceUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 一个HA数据源的健康检查：定时找出到了探测时间的熔断数据源，提交到有界的线程池中并行探测，
+ * 一个数据源连接超时不会影响其他数据源的恢复。同时定时采样从库的主从同步延迟
+ */
+public class HealthChecker {
+	private static final Log LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+	public static final String CHECK_THREAD_NAME = "DRAGON_FATAL_EXCEPTION_DATASOURCE_CHECKER";
+
+	// 检查是否到了探测时间的间隔，决定了退避时间的精度
+	private static final long CHECK_INTERVAL_MILLIS = 200;
+
+	private static final long REPLICATION_LAG_SAMPLE_INTERVAL_MILLIS = 1000;
+
+	// mysql：Access denied; you need (at least one of) the SUPER, REPLICATION CLIENT privilege(s)
+	private static final int ER_SPECIFIC_ACCESS_DENIED_ERROR = 1227;
+
+	private final RealDataSourceWrapper[] dataSourceWrappers;
+
+	// 只读的数据源都是从库，需要定时采样主从同步延迟
+	private final RealDataSourceWrapper[] lagSampledDataSources;
+
+	private final int probeTimeoutSeconds;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final ThreadPoolExecutor probeExecutor;
+
+	public HealthChecker(String haDSName, Collection<RealDataSourceWrapper> dataSourceWrappers,
+	      CircuitBreakerConfig config) {
+		this.dataSourceWrappers = dataSourceWrappers.toArray(new RealDataSourceWrapper[dataSourceWrappers.size()]);
+		List<RealDataSourceWrapper> lagSampled = new ArrayList<RealDataSourceWrapper>();
+		for (RealDataSourceWrapper dataSourceWrapper : dataSourceWrappers) {
+			if (dataSourceWrapper.getReadWeight() > 0 && dataSourceWrapper.getWriteWeight() <= 0) {
+				lagSampled.add(dataSourceWrapper);
+			}
+		}
+		this.lagSampledDataSources = lagSampled.toArray(new RealDataSourceWrapper[lagSampled.size()]);
+		this.probeTimeoutSeconds = config.getProbeTimeoutSeconds();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new DragonThreadFactory(CHECK_THREAD_NAME + "-"
+		      + haDSName, true));
+		// 每个数据源同时最多一个任务，队列的长度为数据源的数量即可
+		int probeThreads = Math.max(Math.min(config.getProbeThreads(), this.dataSourceWrappers.length), 1);
+		this.probeExecutor = new ThreadPoolExecutor(probeThreads, probeThreads, 60, TimeUnit.SECONDS,
+		      new ArrayBlockingQueue<Runnable>(Math.max(this.dataSourceWrappers.length, 1)), new DragonThreadFactory(
+		            CHECK_THREAD_NAME + "-" + haDSName + "-probe", true));
+		this.probeExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	public void start() {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkCircuitBreakers();
+			}
+		}, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		if (lagSampledDataSources.length > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					sampleReplicationLag();
+				}
+			}, REPLICATION_LAG_SAMPLE_INTERVAL_MILLIS, REPLICATION_LAG_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void close() {
+		scheduler.shutdownNow();
+		probeExecutor.shutdownNow();
+	}
+
+	private void checkCircuitBreakers() {
+		long now = System.currentTimeMillis();
+		for (final RealDataSourceWrapper dataSourceWrapper : dataSourceWrappers) {
+			final CircuitBreaker circuitBreaker = dataSourceWrapper.getCircuitBreaker();
+			if (!circuitBreaker.needProbe(now) || !circuitBreaker.tryStartProbe()) {
+				continue;
+			}
+			submit(circuitBreaker, new Runnable() {
+				@Override
+				public void run() {
+					boolean healthy = false;
+					try {
+						healthy = probe(dataSourceWrapper);
+					} finally {
+						if (healthy) {
+							circuitBreaker.onProbeSuccess();
+						} else {
+							circuitBreaker.onProbeFailure();
+						}
+						circuitBreaker.endProbe();
+					}
+				}
+			});
+		}
+	}
+
+	// 熔断的数据源在探测时采样
+	private void sampleReplicationLag() {
+		for (final RealDataSourceWrapper dataSourceWrapper : lagSampledDataSources) {
+			final CircuitBreaker circuitBreaker = dataSourceWrapper.getCircuitBreaker();
+			if (dataSourceWrapper.isReplicationLagUnsupported()
+			      || circuitBreaker.getState() != CircuitBreaker.State.CLOSED || !circuitBreaker.tryStartProbe()) {
+				continue;
+			}
+			submit(circuitBreaker, new Runnable() {
+				@Override
+				public void run() {
+					Connection connection = null;
+					try {
+						connection = dataSourceWrapper.getConnection();
+						updateReplicationLag(dataSourceWrapper, connection);
+					} catch (Exception e) {
+						// 获取连接失败，连接不可用由熔断器处理
+						onReplicationLagSampleError(dataSourceWrapper, e);
+					} finally {
+						DatasourceUtil.close(connection);
+						circuitBreaker.endProbe();
+					}
+				}
+			});
+		}
+	}
+
+	private void submit(CircuitBreaker circuitBreaker, Runnable task) {
+		try {
+			probeExecutor.execute(task);
+		} catch (RejectedExecutionException e) {// 已经关闭
+			circuitBreaker.endProbe();
+		}
+	}
+
+	private boolean probe(RealDataSourceWrapper dataSourceWrapper) {
+		Connection connection = null;
+		try {
+			connection = dataSourceWrapper.getConnection();
+			if (!connection.isValid(probeTimeoutSeconds)) {
+				return false;
+			}
+			// 如果拥有show slave status执行权限，主从同步的延迟需要在允许的范围内，没有配置时要求没有延迟；
+			// 无法获取延迟时，连接可用即可恢复
+			if (!updateReplicationLag(dataSourceWrapper, connection)) {
+				return true;
+			}
+			long maxReplicationLag = Math.max(dataSourceWrapper.getMaxReplicationLag(), 0);
+			if (dataSourceWrapper.getReplicationLag() > maxReplicationLag) {
+				LOG.warn("the db which " + dataSourceWrapper.getFullName() + " connected to is recovery,wait sync the "
+				      + "master binlog to markup");
+				return false;
+			}
+			return true;
+		} catch (Exception ignore) {
+			return false;
+		} finally {
+			DatasourceUtil.close(connection);
+		}
+	}
+
+	/**
+	 * 采样主从同步延迟并记录到数据源上，失败时保留上一次的结果
+	 *
+	 * @return 是否采样成功
+	 */
+	private boolean updateReplicationLag(RealDataSourceWrapper dataSourceWrapper, Connection connection) {
+		if (dataSourceWrapper.isReplicationLagUnsupported()) {
+			return false;
+		}
+		try {
+			dataSourceWrapper.setReplicationLag(sampleReplicationLag(connection));
+			dataSourceWrapper.setReplicationLagSampleFailed(false);
+			return true;
+		} catch (SQLException e) {
+			if (isUnsupported(e)) {
+				dataSourceWrapper.markReplicationLagUnsupported();
+				LOG.warn("can't execute 'show slave status' on " + dataSourceWrapper.getFullName()
+				      + ",replication lag will not be sampled:" + e.getMessage());
+			} else {
+				onReplicationLagSampleError(dataSourceWrapper, e);
+			}
+			return false;
+		}
+	}
+
+	// 连续失败时只在第一次打印日志，采样成功之后重新计数
+	private void onReplicationLagSampleError(RealDataSourceWrapper dataSourceWrapper, Exception e) {
+		if (!dataSourceWrapper.isReplicationLagSampleFailed()) {
+			dataSourceWrapper.setReplicationLagSampleFailed(true);
+			LOG.warn("sample replication lag of " + dataSourceWrapper.getFullName() + " error:" + e.getMessage());
+		}
+	}
+
+	// 没有权限，或者不是mysql等不支持show slave status的数据库(sql state以42开头表示语法错误或者没有权限)
+	private static boolean isUnsupported(SQLException e) {
+		return e.getErrorCode() == ER_SPECIFIC_ACCESS_DENIED_ERROR
+		      || (e.getSQLState() != null && e.getSQLState().startsWith("42"));
+	}
+
+	/**
+	 * 通过show slave status获取主从同步延迟，单位秒。不是从库时返回0，复制线程没有运行时返回Long.MAX_VALUE
+	 */
+	private long sampleReplicationLag(Connection connection) throws SQLException {
+		PreparedStatement preparedStatement = connection.prepareStatement("show slave status");
+		try {
+			preparedStatement.setQueryTimeout(probeTimeoutSeconds);
+			ResultSet resultSet = preparedStatement.executeQuery();
+			if (!resultSet.next()) {// 没有配置主从复制
+				return 0;
+			}
+			boolean slaveIoRunning = "Yes".equalsIgnoreCase(resultSet.getString("Slave_IO_Running"));// slave IO 线程在运行
+			boolean slaveSqlRunning = "Yes".equalsIgnoreCase(resultSet.getString("Slave_SQL_Running")); // slave SQL线程在运行
+			long secondsBehindMaster = resultSet.getLong("Seconds_Behind_Master");
+			if (!slaveIoRunning || !slaveSqlRunning || resultSet.wasNull()) {
+				return Long.MAX_VALUE;
+			}
+			return secondsBehindMaster;
+		} finally {
+			preparedStatement.close();
+		}
+	}
+}
@@ -4,14 +4,6 @@ package com.tianshouzhi.dragon.ha.hint;
  * Created by TIANSHOUZHI336 on 2016/12/4.
  */
 public class DragonHAHintUtil {
-	//判断sql是否强制走主库，如果使用正则表达式的话，对于长sql，效率低，cpu使用率较高，因此这里直接用string的indexOf方法来判断
-	//可能存在误判，例如sql并不需要走主，但是sql内容中包含/*master*/，但是这是极端情况，这样的sql不会太多，不会对主库造成过大压力
-	private static String FORCE_MASTER_PREFIX = "/*master*/";
-
-	public static boolean isForceMaster(String sql) {
-		return sql.indexOf(FORCE_MASTER_PREFIX) != -1;
-	}
-
 	private static final ThreadLocal<Boolean> hint = new ThreadLocal<Boolean>() {
 		@Override
 		protected Boolean initialValue() {
@@ -31,7 +23,39 @@ public class DragonHAHintUtil {
 		return hint.get();
 	}
 
+	// 读取从库时允许的最大主从同步延迟，单位秒，小于0表示使用数据源的配置
+	private static final ThreadLocal<Long> maxReplicationLagHint = new ThreadLocal<Long>() {
+		@Override
+		protected Long initialValue() {
+			return -1L;
+		}
+	};
+
+	/**
+	 * 设置当前线程下一次执行的sql允许的最大主从同步延迟，延迟超过的从库不会被选择，所有从库都超过时读主库。
+	 * 执行sql时会清除，不会影响线程池中这个线程之后处理的其他请求
+	 *
+	 * @param seconds 单位秒
+	 */
+	public static void maxReplicationLag(long seconds) {
+		maxReplicationLagHint.set(seconds);
+	}
+
+	public static long getMaxReplicationLag() {
+		return maxReplicationLagHint.get();
+	}
+
+	/**
+	 * 获取并清除最大主从同步延迟的设置
+	 */
+	public static long consumeMaxReplicationLag() {
+		long seconds = maxReplicationLagHint.get();
+		maxReplicationLagHint.remove();
+		return seconds;
+	}
+
 	public static void clear() {
 		hint.set(false);
+		maxReplicationLagHint.set(-1L);
 	}
 }
\ No newline at end of file
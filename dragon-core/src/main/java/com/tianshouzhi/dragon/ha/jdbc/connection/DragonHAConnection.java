@@ -5,6 +5,7 @@ import com.tianshouzhi.dragon.common.jdbc.sqltype.SqlTypeUtil;
 import com.tianshouzhi.dragon.ha.exception.DragonHAException;
 import com.tianshouzhi.dragon.ha.hint.DragonHAHintUtil;
 import com.tianshouzhi.dragon.ha.jdbc.datasource.DragonHADatasource;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
 import com.tianshouzhi.dragon.ha.jdbc.statement.DragonHAPrepareStatement;
 import com.tianshouzhi.dragon.ha.jdbc.statement.DragonHAStatement;
 import com.tianshouzhi.dragon.ha.util.DatasourceUtil;
@@ -157,6 +158,8 @@ public class DragonHAConnection extends DragonConnection implements Connection {
 	 * @throws SQLException
 	 */
 	public Connection getRealConnection(String sql, boolean useSqlTypeCache) throws SQLException {
+		// 主从同步延迟的hint只对这一次执行有效，不管是否需要路由都要清除
+		long maxReplicationLag = DragonHAHintUtil.consumeMaxReplicationLag();
 		// 1、如果已经开启了事务 总是获取写连接
 		if (!autoCommit) {
 			return buildNewWriteConnectionIfNeed();
@@ -167,24 +170,24 @@ public class DragonHAConnection extends DragonConnection implements Connection {
 			return buildNewWriteConnectionIfNeed();
 		}
 
-		// 3、sql中有hint
-		if (DragonHAHintUtil.isForceMaster(sql)) {
-			return buildNewWriteConnectionIfNeed();
-		}
-
-		// 4、没有hint且没有开启事务,如果是写sql
+		// 3、写sql、sql中有/*master*/ hint、select ... for update，扫描一遍sql即可判断
 		if (!SqlTypeUtil.isQuery(sql, useSqlTypeCache)) {// retry for read connection
 			return buildNewWriteConnectionIfNeed();
 		} else {
-			return buildNewReadConnectionIfNeed();
+			return buildNewReadConnectionIfNeed(maxReplicationLag);
 		}
 	}
 
+	// 获取元数据等不是执行sql的操作，使用数据源配置的最大主从同步延迟
 	private Connection buildNewReadConnectionIfNeed() throws SQLException {
+		return buildNewReadConnectionIfNeed(-1);
+	}
+
+	private Connection buildNewReadConnectionIfNeed(long maxReplicationLag) throws SQLException {
 		if (this.realConnection != null) {
 			return realConnection;
 		}
-		this.realDSName = this.dragonHADatasource.getRouterManager().routeRead();
+		this.realDSName = this.dragonHADatasource.getRouterManager().routeRead(maxReplicationLag);
 		this.realConnection = this.dragonHADatasource.getConnectionByRealDSName(realDSName);
 		this.isRead=true;
 		setConnectionParams(this.realConnection);
@@ -394,6 +397,16 @@ public class DragonHAConnection extends DragonConnection implements Connection {
 		throw new DragonHAException("this method must invoke after any sql executed!!!");
 	}
 
+	/**
+	 * @return 当前真实连接所属的数据源，还没有获取真实连接时返回null
+	 */
+	public RealDataSourceWrapper getRealDataSourceWrapper() {
+		if (realDSName == null) {
+			return null;
+		}
+		return dragonHADatasource.getRealDSMap().get(realDSName);
+	}
+
 	public String getFullName() {
 		return dragonHADatasource.getDsName() + "." + realDSName;
 	}
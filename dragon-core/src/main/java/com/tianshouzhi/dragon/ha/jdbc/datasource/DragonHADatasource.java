@@ -5,14 +5,18 @@ import com.tianshouzhi.dragon.common.jdbc.datasource.DragonDataSourceAdapter;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
 import com.tianshouzhi.dragon.common.util.StringUtils;
+import com.tianshouzhi.dragon.ha.config.CircuitBreakerConfig;
 import com.tianshouzhi.dragon.ha.config.HAConfigManager;
 import com.tianshouzhi.dragon.ha.config.HADataSourceConfig;
 import com.tianshouzhi.dragon.ha.config.HALocalConfigManager;
 import com.tianshouzhi.dragon.ha.config.RealDataSourceConfig;
+import com.tianshouzhi.dragon.ha.exception.CircuitBreaker;
 import com.tianshouzhi.dragon.ha.exception.DataSourceMonitor;
 import com.tianshouzhi.dragon.ha.exception.DragonHAException;
+import com.tianshouzhi.dragon.ha.exception.HealthChecker;
 import com.tianshouzhi.dragon.ha.jdbc.connection.DragonHAConnection;
 import com.tianshouzhi.dragon.ha.router.RouterManager;
+import com.tianshouzhi.dragon.ha.router.RouterStrategy;
 import com.tianshouzhi.dragon.ha.util.DatasourceUtil;
 
 import javax.sql.DataSource;
@@ -39,12 +43,19 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
 
     private RouterManager routerManager;
 
+    private RouterStrategy routerStrategy = RouterStrategy.WEIGHT;
+
+    private CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+
+    private HealthChecker healthChecker;
+
     @Override
     protected void doInit() throws Exception {
         initDsName();
         LOGGER.info("init DragonHADatasource(" + dsName + ")");
         initConfigManager();
         initRealDSMap();
+        initHealthChecker();
         initRouterManager();
     }
 
@@ -68,11 +79,14 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
                 throw new DragonHAException("configManager can't be null !");
             } else {
                 HADataSourceConfig haDataSourceConfig = configManager.getHADataSourceConfig();
+                this.routerStrategy = haDataSourceConfig.getRouterStrategy();
+                this.circuitBreakerConfig = haDataSourceConfig.getCircuitBreakerConfig();
                 Map<String, RealDataSourceConfig> realDataSourceConfigMap = haDataSourceConfig.getRealDataSourceConfigMap();
                 for (Map.Entry<String, RealDataSourceConfig> configEntry : realDataSourceConfigMap.entrySet()) {
                     String realDsName = configEntry.getKey();
                     RealDataSourceConfig config = configEntry.getValue();
                     addRealDatasource(this.dsName,realDsName, config.getReadWeight(), config.getWriteWeight(), config.getRealDsProperties(), config.getRealDsClass());
+                    realDSMap.get(realDsName).setMaxReplicationLag(config.getMaxReplicationLag());
                 }
             }
         }
@@ -89,6 +103,16 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
         }
     }
 
+    // 每个真实数据源一个熔断器，由这个HA数据源自己的HealthChecker探测恢复，并采样从库的主从同步延迟
+    private void initHealthChecker() {
+        for (RealDataSourceWrapper realDataSourceWrapper : realDSMap.values()) {
+            realDataSourceWrapper.setCircuitBreaker(new CircuitBreaker(DataSourceMonitor.getAvailability(dsName),
+                    realDataSourceWrapper, circuitBreakerConfig));
+        }
+        this.healthChecker = new HealthChecker(dsName, realDSMap.values(), circuitBreakerConfig);
+        this.healthChecker.start();
+    }
+
     private void initRouterManager() {
         this.routerManager = new RouterManager(this);
     }
@@ -113,7 +137,8 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
         if (realDataSourceWrapper == null) {
             throw new DragonHAException("not valid datasource found with realDSName:" + realDSName);
         }
-        if (!DataSourceMonitor.isAvailable(realDataSourceWrapper)) {
+        // 半开状态的数据源只会被路由少量试探的请求，需要放行
+        if (realDataSourceWrapper.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN) {
             throw new DragonHAException(realDataSourceWrapper.getFullName() + " is not available!!!");
         }
         try {
@@ -127,6 +152,9 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
     @Override
     public void close() throws DragonException {
         LOGGER.info(" close DragonHADatasource(" + getDsName() + ")");
+        if (healthChecker != null) {
+            healthChecker.close();
+        }
         for (RealDataSourceWrapper realDataSourceWrapper : this.realDSMap.values()) {
             realDataSourceWrapper.close();
         }
@@ -151,4 +179,20 @@ public class DragonHADatasource extends DragonDataSourceAdapter {
     public RouterManager getRouterManager() {
         return routerManager;
     }
+
+    public RouterStrategy getRouterStrategy() {
+        return routerStrategy;
+    }
+
+    public void setRouterStrategy(RouterStrategy routerStrategy) {
+        this.routerStrategy = routerStrategy;
+    }
+
+    public CircuitBreakerConfig getCircuitBreakerConfig() {
+        return circuitBreakerConfig;
+    }
+
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
 }
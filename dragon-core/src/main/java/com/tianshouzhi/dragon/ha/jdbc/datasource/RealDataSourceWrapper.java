@@ -5,12 +5,16 @@ import com.tianshouzhi.dragon.common.jdbc.datasource.DragonDataSource;
 import com.tianshouzhi.dragon.common.jdbc.datasource.DragonDataSourceAdapter;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
+import com.tianshouzhi.dragon.ha.exception.CircuitBreaker;
 import com.tianshouzhi.dragon.ha.util.DatasourceUtil;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by tianshouzhi on 2017/11/1.
@@ -26,7 +30,24 @@ public class RealDataSourceWrapper extends DragonDataSourceAdapter implements Dr
     private Properties properties;
     private String clazz;
     private DataSource dataSource;
-    private boolean available = true;
+    private volatile boolean available = true;
+    private CircuitBreaker circuitBreaker;
+
+    // 主从同步延迟，单位秒，由HealthChecker定时采样，-1表示还没有采样(或者不是从库)
+    private volatile long replicationLag = -1;
+    // 允许读取的最大主从同步延迟，单位秒，小于0表示不限制
+    private volatile long maxReplicationLag = -1;
+    // 没有show slave status的执行权限(或者数据库不支持)时为true，不再采样主从同步延迟
+    private volatile boolean replicationLagUnsupported;
+    // 上一次采样主从同步延迟失败，连续失败时只打印一次日志
+    private volatile boolean replicationLagSampleFailed;
+
+    // 响应时间的指数加权移动平均，新的样本占的比重
+    private static final double EWMA_ALPHA = 0.2;
+    // 正在执行的sql数量
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 响应时间的指数加权移动平均(微秒)，为0表示还没有样本
+    private final AtomicLong ewmaLatencyMicros = new AtomicLong();
 
     public RealDataSourceWrapper(String haDSName, String realDSName, int readWeight, int writeWeight, Properties properties, String clazz) {
         this.haDSName = haDSName;
@@ -113,6 +134,94 @@ public class RealDataSourceWrapper extends DragonDataSourceAdapter implements Dr
         return available;
     }
 
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public long getReplicationLag() {
+        return replicationLag;
+    }
+
+    public void setReplicationLag(long replicationLag) {
+        this.replicationLag = replicationLag;
+    }
+
+    public boolean isReplicationLagUnsupported() {
+        return replicationLagUnsupported;
+    }
+
+    /**
+     * 无法采样主从同步延迟，之前采样的结果也不再使用
+     */
+    public void markReplicationLagUnsupported() {
+        this.replicationLagUnsupported = true;
+        this.replicationLag = -1;
+    }
+
+    public boolean isReplicationLagSampleFailed() {
+        return replicationLagSampleFailed;
+    }
+
+    public void setReplicationLagSampleFailed(boolean replicationLagSampleFailed) {
+        this.replicationLagSampleFailed = replicationLagSampleFailed;
+    }
+
+    public long getMaxReplicationLag() {
+        return maxReplicationLag;
+    }
+
+    public void setMaxReplicationLag(long maxReplicationLag) {
+        this.maxReplicationLag = maxReplicationLag;
+    }
+
+    /**
+     * @param maxReplicationLag 本次读取允许的最大延迟，小于0表示使用数据源的配置
+     * @return 已经采样到的延迟超过了允许的范围
+     */
+    public boolean isLagging(long maxReplicationLag) {
+        long budget = maxReplicationLag >= 0 ? maxReplicationLag : this.maxReplicationLag;
+        return budget >= 0 && replicationLag > budget;
+    }
+
+    /**
+     * 开始在这个数据源上执行sql，与{@link #endExecute(long, boolean)}成对调用
+     */
+    public void beginExecute() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * sql执行结束，只用执行成功的sql更新响应时间，避免快速失败的数据源被认为响应快
+     *
+     * @param elapsedNanos 执行时间，单位纳秒
+     */
+    public void endExecute(long elapsedNanos, boolean success) {
+        inFlight.decrementAndGet();
+        if (!success) {
+            return;
+        }
+        long sample = Math.max(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), 1);
+        while (true) {
+            long current = ewmaLatencyMicros.get();
+            long next = current == 0 ? sample : (long) (current + EWMA_ALPHA * (sample - current));
+            if (ewmaLatencyMicros.compareAndSet(current, Math.max(next, 1))) {
+                return;
+            }
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getEwmaLatencyMicros() {
+        return ewmaLatencyMicros.get();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
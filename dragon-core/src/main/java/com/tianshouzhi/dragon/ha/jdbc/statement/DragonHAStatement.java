@@ -3,8 +3,10 @@ package com.tianshouzhi.dragon.ha.jdbc.statement;
 import com.tianshouzhi.dragon.common.jdbc.statement.DragonStatement;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
+import com.tianshouzhi.dragon.ha.exception.DataSourceMonitor;
 import com.tianshouzhi.dragon.ha.exception.DragonHAException;
 import com.tianshouzhi.dragon.ha.jdbc.connection.DragonHAConnection;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -51,7 +53,25 @@ public class DragonHAStatement extends DragonStatement implements Statement {
             realConnection = dragonHAConnection.buildNewWriteConnectionIfNeed();
         }
         createRealStatement(realConnection);
-        boolean isResultSet = doExecuteByType();
+        // 记录数据源正在执行的sql数量与响应时间，供根据负载选择数据源的router使用
+        RealDataSourceWrapper realDataSourceWrapper = dragonHAConnection.getRealDataSourceWrapper();
+        realDataSourceWrapper.beginExecute();
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean isResultSet;
+        try {
+            isResultSet = doExecuteByType();
+            success = true;
+        } catch (SQLException e) {
+            // 非致命异常(例如sql语法错误)说明数据源是可以访问的
+            if (!DataSourceMonitor.monitor(e, realDataSourceWrapper)) {
+                realDataSourceWrapper.getCircuitBreaker().onSuccess();
+            }
+            throw e;
+        } finally {
+            realDataSourceWrapper.endExecute(System.nanoTime() - start, success);
+        }
+        realDataSourceWrapper.getCircuitBreaker().onSuccess();
         setExecuteResult(isResultSet);
         return isResultSet; // 正常执行完成，跳出循环，不进行重试
     }
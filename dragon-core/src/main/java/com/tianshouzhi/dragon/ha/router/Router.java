@@ -1,8 +1,15 @@
 package com.tianshouzhi.dragon.ha.router;
 
+import java.util.Set;
+
 /**
  * Created by tianshouzhi on 2017/8/16.
  */
 public interface Router {
     String route();
+
+    /**
+     * @param excludes 除了不可用的数据源之外，本次路由还需要排除的数据源，例如主从同步延迟过大的从库
+     */
+    String route(Set<String> excludes);
 }
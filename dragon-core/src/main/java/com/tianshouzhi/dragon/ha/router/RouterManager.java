@@ -1,14 +1,23 @@
 package com.tianshouzhi.dragon.ha.router;
 
 import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.ha.exception.CircuitBreaker;
+import com.tianshouzhi.dragon.ha.exception.DataSourceAvailability;
+import com.tianshouzhi.dragon.ha.exception.DataSourceMonitor;
 import com.tianshouzhi.dragon.ha.exception.DragonHAException;
 import com.tianshouzhi.dragon.ha.jdbc.datasource.DragonHADatasource;
 import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+import com.tianshouzhi.dragon.ha.router.impl.LeastLatencyRouter;
+import com.tianshouzhi.dragon.ha.router.impl.RandomRouter;
+import com.tianshouzhi.dragon.ha.router.impl.RoundRobinRouter;
 import com.tianshouzhi.dragon.ha.router.impl.SingleRouter;
 import com.tianshouzhi.dragon.ha.router.impl.WeightRouter;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by tianshouzhi on 2017/8/16.
@@ -18,10 +27,18 @@ public class RouterManager {
     private final Router readRouter;
     private final Router writeRouter;
     private String haDSName;
+    private RouterStrategy routerStrategy;
+    // 可读的数据源，读取时需要排除主从同步延迟过大的从库
+    private final RealDataSourceWrapper[] readDataSources;
+    private final DataSourceAvailability availability;
 
     public RouterManager(DragonHADatasource dragonHADatasource) {
         this.haDSName = dragonHADatasource.getDsName();
+        this.availability = DataSourceMonitor.getAvailability(haDSName);
+        this.routerStrategy = dragonHADatasource.getRouterStrategy();
         Map<String, RealDataSourceWrapper> dataSourceWrappers = dragonHADatasource.getRealDSMap();
+        Collection<RealDataSourceWrapper> readWrappers = filterDatasourceConfig(dataSourceWrappers, true).values();
+        this.readDataSources = readWrappers.toArray(new RealDataSourceWrapper[readWrappers.size()]);
         this.readRouter = buildRouter(dataSourceWrappers, true);
         this.writeRouter = buildRouter(dataSourceWrappers, false);
     }
@@ -35,7 +52,19 @@ public class RouterManager {
         if(wrapperMap.size()==1){
             return buildSingleRouter(wrapperMap);
         }
-        return buildWeightRouter(wrapperMap, isRead);
+        switch (routerStrategy) {
+            case RANDOM:
+                return new RandomRouter(this.haDSName, wrapperMap.keySet());
+            case ROUND_ROBIN:
+                return new RoundRobinRouter(this.haDSName, makeWeightMap(wrapperMap, isRead));
+            case WEIGHT:
+                return buildWeightRouter(wrapperMap, isRead);
+            case LEAST_LATENCY:
+                return new LeastLatencyRouter(this.haDSName, wrapperMap, makeWeightMap(wrapperMap, isRead));
+            default:
+                throw new DragonHAException("router strategy " + routerStrategy + " only support one real datasource, ha datasource:"
+                        + haDSName + ",real datasources:" + wrapperMap.keySet());
+        }
     }
 
     private Router buildSingleRouter(Map<String, RealDataSourceWrapper> configMap) {
@@ -43,6 +72,14 @@ public class RouterManager {
     }
 
     private Router buildWeightRouter(Map<String, RealDataSourceWrapper> dataSourceWrappers, boolean isRead) {
+        Map<String, Integer> dsWeightMap = makeWeightMap(dataSourceWrappers, isRead);
+        if(dsWeightMap.size()==0){
+            return null;
+        }
+        return new WeightRouter(this.haDSName, dsWeightMap);
+    }
+
+    private Map<String, Integer> makeWeightMap(Map<String, RealDataSourceWrapper> dataSourceWrappers, boolean isRead) {
         HashMap<String, Integer> dsWeightMap = new HashMap<String, Integer>(4);
         for (Map.Entry<String, RealDataSourceWrapper> entry : dataSourceWrappers.entrySet()) {
             String realDSName = entry.getKey();
@@ -54,10 +91,7 @@ public class RouterManager {
                 dsWeightMap.put(realDSName, realDataSourceWrapper.getWriteWeight());
             }
         }
-        if(dsWeightMap.size()==0){
-            return null;
-        }
-        return new WeightRouter(this.haDSName, dsWeightMap);
+        return dsWeightMap;
     }
 
     private Map<String, RealDataSourceWrapper> filterDatasourceConfig(Map<String, RealDataSourceWrapper> configMap,
@@ -79,17 +113,98 @@ public class RouterManager {
         return filterResult;
     }
 
+    /**
+     * 用于监控，没有可读的数据源时返回null
+     */
+    public Router getReadRouter() {
+        return readRouter;
+    }
+
+    public Router getWriteRouter() {
+        return writeRouter;
+    }
+
     public String routeWrite() {
         if (writeRouter == null) {
             throw new DragonHAException("writeRouter is null");
         }
+        String trialDSName = routeTrial(false, -1);
+        if (trialDSName != null) {
+            return trialDSName;
+        }
         return writeRouter.route();
     }
 
-    public String routeRead() {
+    /**
+     * @param maxReplicationLag 本次读取允许的最大主从同步延迟，单位秒，小于0表示使用每个数据源的配置，
+     *                          参见{@link com.tianshouzhi.dragon.ha.hint.DragonHAHintUtil#maxReplicationLag(long)}
+     */
+    public String routeRead(long maxReplicationLag) {
         if (readRouter == null) {
             throw new DragonHAException("readRouter is null");
         }
-        return readRouter.route();
+        String trialDSName = routeTrial(true, maxReplicationLag);
+        if (trialDSName != null) {
+            return trialDSName;
+        }
+        Set<String> laggingDSNames = getLaggingDSNames(maxReplicationLag);
+        if (laggingDSNames == null) {
+            return readRouter.route();
+        }
+        if (!hasReadableDataSource(laggingDSNames)) {// 所有从库的延迟都过大，读主库保证数据不过期
+            return routeWrite();
+        }
+        return readRouter.route(laggingDSNames);
+    }
+
+    /**
+     * 半开状态的数据源不参与正常的路由，每秒放行少量真实请求，根据这些请求的结果决定是否恢复。
+     * 熔断(OPEN)的数据源只需要读取一次volatile的状态就可以跳过，放行请求通过CAS，不加锁
+     *
+     * @return 没有需要放行的请求时返回null
+     */
+    private String routeTrial(boolean isRead, long maxReplicationLag) {
+        RealDataSourceWrapper[] invalids = availability.getSnapshot().getInvalidDataSources();
+        for (int i = 0; i < invalids.length; i++) {
+            RealDataSourceWrapper invalid = invalids[i];
+            if (invalid.getCircuitBreaker().getState() != CircuitBreaker.State.HALF_OPEN) {
+                continue;
+            }
+            int weight = isRead ? invalid.getReadWeight() : invalid.getWriteWeight();
+            if (weight <= 0 || (isRead && invalid.isLagging(maxReplicationLag))) {
+                continue;
+            }
+            if (invalid.getCircuitBreaker().tryAcquireTrial()) {
+                return invalid.getRealDSName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param maxReplicationLag 本次读取允许的最大延迟，小于0表示使用每个数据源的配置
+     * @return 没有延迟过大的从库时返回null
+     */
+    private Set<String> getLaggingDSNames(long maxReplicationLag) {
+        Set<String> laggingDSNames = null;
+        for (RealDataSourceWrapper readDataSource : readDataSources) {
+            if (readDataSource.isLagging(maxReplicationLag)) {
+                if (laggingDSNames == null) {
+                    laggingDSNames = new HashSet<String>(4);
+                }
+                laggingDSNames.add(readDataSource.getRealDSName());
+            }
+        }
+        return laggingDSNames;
+    }
+
+    private boolean hasReadableDataSource(Set<String> laggingDSNames) {
+        for (RealDataSourceWrapper readDataSource : readDataSources) {
+            if (!laggingDSNames.contains(readDataSource.getRealDSName())
+                    && DataSourceMonitor.isAvailable(readDataSource)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -4,5 +4,7 @@ package com.tianshouzhi.dragon.ha.router;
  * Created by tianshouzhi on 2017/11/8.
  */
 public enum RouterStrategy {
-    SINGLE,RANDOM, ROUND_ROBIN,WEIGHT
+    SINGLE,RANDOM, ROUND_ROBIN,WEIGHT,
+    // 根据每个数据源的响应时间与正在执行的sql数量选择
+    LEAST_LATENCY
 }
@@ -1,8 +1,11 @@
 package com.tianshouzhi.dragon.ha.router.impl;
 
+import com.tianshouzhi.dragon.common.util.CollectionUtils;
+import com.tianshouzhi.dragon.ha.exception.DataSourceAvailability;
 import com.tianshouzhi.dragon.ha.exception.DataSourceMonitor;
 import com.tianshouzhi.dragon.ha.router.Router;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -11,15 +14,31 @@ import java.util.Set;
 public abstract class BaseRouter implements Router {
     protected String haDSName;
 
+    private final DataSourceAvailability availability;
+
     public BaseRouter(String haDSName) {
         this.haDSName = haDSName;
+        this.availability = DataSourceMonitor.getAvailability(haDSName);
     }
 
     @Override
     public String route() {
-        Set<String> excludes=DataSourceMonitor.getInvalidRealDs(haDSName);
-        return doRoute(excludes);
+        // 快照中的集合是不可变的，没有不可用的数据源时为空集合
+        return doRoute(availability.getSnapshot().getInvalidRealDSNames());
+    }
+
+    @Override
+    public String route(Set<String> excludes) {
+        if (CollectionUtils.isEmpty(excludes)) {
+            return route();
+        }
+        Set<String> allExcludes = new HashSet<String>(excludes);
+        allExcludes.addAll(availability.getSnapshot().getInvalidRealDSNames());
+        return doRoute(allExcludes);
     }
 
+    /**
+     * @param excludes 不会被修改，实现类可以直接持有，不需要复制
+     */
     protected abstract String doRoute(Set<String> excludes);
 }
@@ -0,0 +1,37 @@
+package com.tianshouzhi.dragon.ha.router.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按照排除的数据源集合缓存计算结果。不同的请求排除的数据源可能不同(例如只排除复制延迟超过要求的从库)，
+ * 如果只缓存最近一次的结果，排除集合交替变化时每次都需要重新计算。
+ * 命中缓存时只需要计算集合的hashCode，不需要创建对象；缓存的数量超过上限时清空，避免排除集合过多时无限增长
+ */
+abstract class ExcludedCache<T> {
+    private static final int MAX_SIZE = 16;
+
+    private final ConcurrentMap<Set<String>, T> cache = new ConcurrentHashMap<Set<String>, T>();
+
+    /**
+     * @param excludes 不会被修改，直接作为缓存的key
+     */
+    T get(Set<String> excludes) {
+        T value = cache.get(excludes);
+        if (value == null) {
+            value = create(excludes);
+            if (cache.size() >= MAX_SIZE) {
+                cache.clear();
+            }
+            cache.put(excludes, value);
+        }
+        return value;
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    protected abstract T create(Set<String> excludes);
+}
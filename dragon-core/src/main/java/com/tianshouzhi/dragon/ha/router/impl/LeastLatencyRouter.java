@@ -0,0 +1,160 @@
+package com.tianshouzhi.dragon.ha.router.impl;
+
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import com.tianshouzhi.dragon.common.util.CollectionUtils;
+import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.ha.exception.DragonHAException;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 根据负载选择数据源：每个数据源的负载为 响应时间的指数加权移动平均*(正在执行的sql数量+1)/权重，
+ * 每次随机选出两个数据源，使用负载较低的一个(power of two choices)。
+ * 与每次都选择负载最低的数据源相比，不会让所有请求在同一时刻涌向同一个数据源，也不需要遍历所有数据源
+ */
+public class LeastLatencyRouter extends BaseRouter {
+    private final RealDataSourceWrapper[] wrappers;
+
+    private final int[] weights;
+
+    // 最近一次排除不可用数据源之后剩余的数据源的下标，不可用的数据源发生变化时替换
+    private final AtomicReference<Candidates> excludedCandidates = new AtomicReference<Candidates>();
+
+    private final Candidates fullCandidates;
+
+    /**
+     * @param realDSNameWeightMap 数据源名称与权重
+     */
+    public LeastLatencyRouter(String haDSName, Map<String, RealDataSourceWrapper> realDataSourceWrapperMap,
+                              Map<String, Integer> realDSNameWeightMap) {
+        super(haDSName);
+        if (MapUtils.isEmpty(realDSNameWeightMap)) {
+            throw new DragonHAException("realDSNameWeightMap can't be empty!");
+        }
+        this.wrappers = new RealDataSourceWrapper[realDSNameWeightMap.size()];
+        this.weights = new int[realDSNameWeightMap.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : realDSNameWeightMap.entrySet()) {
+            wrappers[i] = realDataSourceWrapperMap.get(entry.getKey());
+            weights[i] = entry.getValue();
+            i++;
+        }
+        this.fullCandidates = new Candidates(Collections.<String>emptySet());
+    }
+
+    @Override
+    protected String doRoute(Set<String> excludes) {
+        Candidates candidates = fullCandidates;
+        if (CollectionUtils.isNotEmpty(excludes)) {
+            candidates = excludedCandidates.get();
+            if (candidates == null || !candidates.excludes.equals(excludes)) {// 不可用的数据源发生了变化
+                candidates = new Candidates(excludes);
+                excludedCandidates.set(candidates);
+            }
+        }
+        int[] indexes = candidates.indexes;
+        if (indexes.length == 0) {
+            throw new DragonException("all datasource" + excludes + " are not avaliable!!!");
+        }
+        if (indexes.length == 1) {
+            return wrappers[indexes[0]].getRealDSName();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(indexes.length);
+        int second = random.nextInt(indexes.length - 1);
+        if (second >= first) {// 保证两次选择的不是同一个数据源
+            second++;
+        }
+        int selected = load(indexes[first]) <= load(indexes[second]) ? indexes[first] : indexes[second];
+        return wrappers[selected].getRealDSName();
+    }
+
+    // 还没有响应时间样本时按1微秒计算，新加入的数据源会优先得到请求，从而尽快得到样本
+    private double load(int index) {
+        RealDataSourceWrapper wrapper = wrappers[index];
+        long latency = Math.max(wrapper.getEwmaLatencyMicros(), 1);
+        return (double) latency * (wrapper.getInFlight() + 1) / weights[index];
+    }
+
+    /**
+     * 用于监控，返回当前router看到的每个数据源的负载
+     */
+    public List<DataSourceLoad> getDataSourceLoads() {
+        List<DataSourceLoad> loads = new ArrayList<DataSourceLoad>(wrappers.length);
+        for (int i = 0; i < wrappers.length; i++) {
+            RealDataSourceWrapper wrapper = wrappers[i];
+            loads.add(new DataSourceLoad(wrapper.getRealDSName(), weights[i], wrapper.getInFlight(),
+                    wrapper.getEwmaLatencyMicros(), load(i)));
+        }
+        return loads;
+    }
+
+    private class Candidates {
+        private final Set<String> excludes;
+
+        private final int[] indexes;
+
+        Candidates(Set<String> excludes) {
+            this.excludes = excludes;
+            List<Integer> list = new ArrayList<Integer>(wrappers.length);
+            for (int i = 0; i < wrappers.length; i++) {
+                if (!excludes.contains(wrappers[i].getRealDSName()) && weights[i] > 0) {
+                    list.add(i);
+                }
+            }
+            this.indexes = new int[list.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = list.get(i);
+            }
+        }
+    }
+
+    public static class DataSourceLoad {
+        private final String realDSName;
+
+        private final int weight;
+
+        private final int inFlight;
+
+        private final long ewmaLatencyMicros;
+
+        private final double load;
+
+        public DataSourceLoad(String realDSName, int weight, int inFlight, long ewmaLatencyMicros, double load) {
+            this.realDSName = realDSName;
+            this.weight = weight;
+            this.inFlight = inFlight;
+            this.ewmaLatencyMicros = ewmaLatencyMicros;
+            this.load = load;
+        }
+
+        public String getRealDSName() {
+            return realDSName;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getEwmaLatencyMicros() {
+            return ewmaLatencyMicros;
+        }
+
+        public double getLoad() {
+            return load;
+        }
+
+        @Override
+        public String toString() {
+            return "DataSourceLoad{" + "realDSName='" + realDSName + '\'' + ", weight=" + weight + ", inFlight="
+                    + inFlight + ", ewmaLatencyMicros=" + ewmaLatencyMicros + ", load=" + load + '}';
+        }
+    }
+}
@@ -1,7 +1,51 @@
 package com.tianshouzhi.dragon.ha.router.impl;
 
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import com.tianshouzhi.dragon.common.util.CollectionUtils;
+import com.tianshouzhi.dragon.ha.exception.DragonHAException;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Created by tianshouzhi on 2017/11/8.
+ *
+ * 忽略权重，从可用的数据源中等概率随机选择一个
  */
-public class RandomRouter {
+public class RandomRouter extends BaseRouter {
+    private final String[] realDSNames;
+
+    // 排除不可用数据源之后剩余的数据源，按照排除集合缓存
+    private final ExcludedCache<String[]> excludedCandidates = new ExcludedCache<String[]>() {
+        @Override
+        protected String[] create(Set<String> excludes) {
+            List<String> names = new ArrayList<String>(realDSNames.length);
+            for (String realDSName : realDSNames) {
+                if (!excludes.contains(realDSName)) {
+                    names.add(realDSName);
+                }
+            }
+            return names.toArray(new String[names.size()]);
+        }
+    };
+
+    public RandomRouter(String haDSName, Collection<String> realDSNames) {
+        super(haDSName);
+        if (CollectionUtils.isEmpty(realDSNames)) {
+            throw new DragonHAException("realDSNames can't be empty!");
+        }
+        this.realDSNames = realDSNames.toArray(new String[realDSNames.size()]);
+    }
+
+    @Override
+    protected String doRoute(Set<String> excludes) {
+        String[] candidates = realDSNames;
+        if (CollectionUtils.isNotEmpty(excludes)) {
+            candidates = excludedCandidates.get(excludes);
+        }
+        if (candidates.length == 0) {
+            throw new DragonException("all datasource" + excludes + " are not avaliable!!!");
+        }
+        return candidates[ThreadLocalRandom.current().nextInt(candidates.length)];
+    }
 }
@@ -1,7 +1,101 @@
 package com.tianshouzhi.dragon.ha.router.impl;
 
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import com.tianshouzhi.dragon.common.util.CollectionUtils;
+import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.ha.exception.DragonHAException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by tianshouzhi on 2017/11/8.
+ *
+ * 平滑加权轮询(与nginx的算法一致)：例如权重为{a:5,b:1,c:1}时，一个周期内的顺序为a,a,b,a,c,a,a，而不是a,a,a,a,a,b,c。
+ * nginx的实现每次选择都需要修改每个数据源的当前权重，这里预先计算出一个周期的选择顺序，路由时只需要原子的递增计数器，不需要加锁
  */
-public class RoundRobinRouter {
+public class RoundRobinRouter extends BaseRouter {
+    private final Map<String, Integer> weightMap;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    // 所有数据源都可用时一个周期的选择顺序
+    private final Sequence fullSequence;
+
+    // 排除不可用数据源之后的选择顺序，与WeightRouter一样按照排除集合缓存
+    private final ExcludedCache<Sequence> excludedSequences = new ExcludedCache<Sequence>() {
+        @Override
+        protected Sequence create(Set<String> excludes) {
+            return new Sequence(weightMap, excludes);
+        }
+    };
+
+    public RoundRobinRouter(String haDSName, Map<String, Integer> realDSNameWeightMap) {
+        super(haDSName);
+        if (MapUtils.isEmpty(realDSNameWeightMap)) {
+            throw new DragonHAException("realDSNameWeightMap can't be empty!");
+        }
+        this.weightMap = new LinkedHashMap<String, Integer>(realDSNameWeightMap);
+        this.fullSequence = new Sequence(weightMap, Collections.<String>emptySet());
+    }
+
+    @Override
+    protected String doRoute(Set<String> excludes) {
+        Sequence sequence = fullSequence;
+        if (CollectionUtils.isNotEmpty(excludes)) {
+            sequence = excludedSequences.get(excludes);
+        }
+        if (sequence.realDSNames.length == 0) {
+            throw new DragonException("all datasource" + excludes + " are not avaliable!!!");
+        }
+        // 计数器溢出之后变为负数，去掉符号位
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % sequence.realDSNames.length;
+        return sequence.realDSNames[index];
+    }
+
+    static class Sequence {
+        private final String[] realDSNames;
+
+        Sequence(Map<String, Integer> weightMap, Set<String> excludes) {
+            List<String> names = new ArrayList<String>();
+            List<Integer> weights = new ArrayList<Integer>();
+            int gcd = 0;
+            for (Map.Entry<String, Integer> entry : weightMap.entrySet()) {
+                if (!excludes.contains(entry.getKey()) && entry.getValue() > 0) {
+                    names.add(entry.getKey());
+                    weights.add(entry.getValue());
+                    gcd = gcd(gcd, entry.getValue());
+                }
+            }
+            // 权重除以最大公约数，缩短周期，例如{a:10,b:20}与{a:1,b:2}的顺序相同
+            int totalWeight = 0;
+            int[] effectiveWeights = new int[weights.size()];
+            for (int i = 0; i < effectiveWeights.length; i++) {
+                effectiveWeights[i] = weights.get(i) / gcd;
+                totalWeight += effectiveWeights[i];
+            }
+            this.realDSNames = new String[totalWeight];
+            int[] currentWeights = new int[effectiveWeights.length];
+            for (int n = 0; n < totalWeight; n++) {
+                int selected = 0;
+                for (int i = 0; i < effectiveWeights.length; i++) {
+                    currentWeights[i] += effectiveWeights[i];
+                    if (currentWeights[i] > currentWeights[selected]) {
+                        selected = i;
+                    }
+                }
+                currentWeights[selected] -= totalWeight;
+                realDSNames[n] = names.get(selected);
+            }
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
 }
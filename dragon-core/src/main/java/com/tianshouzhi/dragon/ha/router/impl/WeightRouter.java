@@ -6,103 +6,103 @@ import com.tianshouzhi.dragon.common.util.MapUtils;
 import com.tianshouzhi.dragon.ha.exception.DragonHAException;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by tianshouzhi on 2017/8/16.
+ *
+ * 按照权重随机选择：权重的前缀和保存在数组中，生成随机数之后二分查找所在的区间。
+ * selector是不可变的，排除不可用的数据源之后生成的selector按照排除集合缓存，路由时不需要加锁，也不需要每次重新计算
  */
 public class WeightRouter extends BaseRouter {
-	protected Map<WeightRange, String> weightIndexMap = new ConcurrentHashMap<WeightRange, String>();
+	// 所有数据源都可用时的selector
+	private final WeightSelector fullSelector;
 
-	protected int totalWeight = 0;
-
-	private ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+	// 排除不可用数据源之后的selector
+	private final ExcludedCache<WeightSelector> excludedSelectors = new ExcludedCache<WeightSelector>() {
 		@Override
-		protected Random initialValue() {
-			return new Random();
+		protected WeightSelector create(Set<String> excludes) {
+			return new WeightSelector(fullSelector.weightMap, excludes);
 		}
 	};
 
-	public WeightRouter(String haDSName,Map<String, Integer> realDSNameWeightMap) {
+	public WeightRouter(String haDSName, Map<String, Integer> realDSNameWeightMap) {
 		super(haDSName);
 		if (MapUtils.isEmpty(realDSNameWeightMap) || realDSNameWeightMap.size() == 1) {
 			throw new DragonHAException("realDSNameWeightMap can't be null! and size must > 1");
 		}
-		this.totalWeight = calculateTotalWeight(realDSNameWeightMap.values());
-		this.weightIndexMap = makeWeightRangeIndexMap(realDSNameWeightMap);
-	}
-
-	private int calculateTotalWeight(Collection<Integer> weights) {
-		int result = 0;
-		for (Integer weight : weights) {
-			result += weight;
-		}
-		return result;
-	}
-
-	private Map<WeightRange, String> makeWeightRangeIndexMap(Map<String, Integer> indexWeightMap) {
-		HashMap<WeightRange, String> resultMap = new HashMap<WeightRange, String>(4);
-		int current = 0;
-		for (Map.Entry<String, Integer> entry : indexWeightMap.entrySet()) {
-			int start = current;
-			int end = current + entry.getValue();
-			WeightRange weightRange = new WeightRange(start, end);
-			resultMap.put(weightRange, entry.getKey());
-			current = end;
-		}
-		return resultMap;
+		this.fullSelector = new WeightSelector(new LinkedHashMap<String, Integer>(realDSNameWeightMap),
+		      Collections.<String> emptySet());
 	}
 
 	@Override
 	public String doRoute(Set<String> excludes) {
 		if (CollectionUtils.isEmpty(excludes)) {
-			return selectByRandom(this.weightIndexMap, this.totalWeight);
+			return fullSelector.select();
 		}
-
-		if(weightIndexMap.values().equals(excludes)){
-			throw new DragonException("all datasource"+excludes+" are not avaliable!!!");
+		WeightSelector selector = excludedSelectors.get(excludes);
+		if (selector.isEmpty()) {
+			throw new DragonException("all datasource" + excludes + " are not avaliable!!!");
 		}
-
-		HashMap<WeightRange, String> afterExcludeMap = new HashMap<WeightRange, String>();
-		int totalWeight = 0;
-		for (Map.Entry<WeightRange, String> entry : this.weightIndexMap.entrySet()) {
-			String datasourceIndex = entry.getValue();
-			WeightRange weightRange = entry.getKey();
-			if (!excludes.contains(datasourceIndex)) {
-				afterExcludeMap.put(weightRange, datasourceIndex);
-				totalWeight += (weightRange.end - weightRange.start);
-			}
-		}
-
-		return selectByRandom(afterExcludeMap, totalWeight);
+		return selector.select();
 	}
 
-	private String selectByRandom(Map<WeightRange, String> weightRangeIndexMap, int totalWeight) {
-		int random = this.randoms.get().nextInt(totalWeight);
-		String result = null;
-		for (Map.Entry<WeightRange, String> entry : weightRangeIndexMap.entrySet()) {
-			WeightRange weightRange = entry.getKey();
-			String datasourceIndex = entry.getValue();
-			if (random >= weightRange.start && random < weightRange.end) {
-				result = datasourceIndex;
+	static class WeightSelector {
+		// 原始的权重配置
+		private final Map<String, Integer> weightMap;
+
+		private final String[] realDSNames;
+
+		// prefixWeights[i]为前i+1个数据源的权重之和
+		private final int[] prefixWeights;
+
+		private final int totalWeight;
+
+		WeightSelector(Map<String, Integer> weightMap, Set<String> excludes) {
+			this.weightMap = weightMap;
+			List<String> names = new ArrayList<String>(weightMap.size());
+			List<Integer> prefixes = new ArrayList<Integer>(weightMap.size());
+			int current = 0;
+			for (Map.Entry<String, Integer> entry : weightMap.entrySet()) {
+				if (excludes.contains(entry.getKey()) || entry.getValue() <= 0) {
+					continue;
+				}
+				current += entry.getValue();
+				names.add(entry.getKey());
+				prefixes.add(current);
+			}
+			this.realDSNames = names.toArray(new String[names.size()]);
+			this.prefixWeights = new int[prefixes.size()];
+			for (int i = 0; i < prefixWeights.length; i++) {
+				prefixWeights[i] = prefixes.get(i);
 			}
+			this.totalWeight = current;
 		}
-		return result;
-	}
-
-	static class WeightRange {
-		private int start;
 
-		private int end;
+		boolean isEmpty() {
+			return totalWeight == 0;
+		}
 
-		public WeightRange(int start, int end) {
-			this.start = start;
-			this.end = end;
+		// 找到第一个大于random的前缀和
+		String select() {
+			int random = ThreadLocalRandom.current().nextInt(totalWeight);
+			int low = 0;
+			int high = prefixWeights.length - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (prefixWeights[mid] > random) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return realDSNames[low];
 		}
 
 		@Override
 		public String toString() {
-			return "WeightRange{" + "start=" + start + ", end=" + end + '}';
+			return "WeightSelector{" + "realDSNames=" + Arrays.toString(realDSNames) + ", prefixWeights="
+			      + Arrays.toString(prefixWeights) + '}';
 		}
 	}
 }
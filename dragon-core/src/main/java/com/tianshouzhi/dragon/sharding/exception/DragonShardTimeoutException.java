@@ -0,0 +1,14 @@
+package com.tianshouzhi.dragon.sharding.exception;
+
+/**
+ * 分库sql没有在配置的超时时间内执行完成
+ */
+public class DragonShardTimeoutException extends DragonShardException {
+    public DragonShardTimeoutException(String message) {
+        super(message);
+    }
+
+    public DragonShardTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,6 +2,7 @@ package com.tianshouzhi.dragon.sharding.jdbc.datasource;
 
 import com.tianshouzhi.dragon.common.cache.DragonCache;
 import com.tianshouzhi.dragon.common.cache.DragonCacheBuilder;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewritePlan;
 import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
 import com.tianshouzhi.dragon.sharding.route.LogicTable;
 
@@ -19,6 +20,12 @@ public class DragonShardingConfig {
 	 */
 	private DragonCache<Object, Object> cache = DragonCacheBuilder.build(100, 2000, 50, 10, TimeUnit.MINUTES);
 
+	/**
+	 * sql重写的结果，key与sql ast的缓存相同，都是sql，所以单独缓存
+	 */
+	private DragonCache<String, SqlRewritePlan> rewritePlanCache = DragonCacheBuilder.build(100, 2000, 50, 10,
+	      TimeUnit.MINUTES);
+
 	// 原始配置信息
 	private String appName;
 
@@ -33,13 +40,19 @@ public class DragonShardingConfig {
 
 	private int executionTimeout;
 
+	/**
+	 * 合并结果时内存中最多保留的记录数，超过之后写入临时文件，小于等于0表示不限制
+	 */
+	private int mergeMaxInMemoryRows;
+
 	public DragonShardingConfig(String appName, LogicDatasource logicDatasource, Map<String, LogicTable> logicTableMap,
-	      ExecutorService executor, int executionTimeout) {
+	      ExecutorService executor, int executionTimeout, int mergeMaxInMemoryRows) {
 		this.appName = appName;
 		this.logicDatasource = logicDatasource;
 		this.logicTableMap.putAll(logicTableMap);
 		this.executor = executor;
 		this.executionTimeout = executionTimeout;
+		this.mergeMaxInMemoryRows = mergeMaxInMemoryRows;
 	}
 
 	public String getAppName() {
@@ -54,6 +67,18 @@ public class DragonShardingConfig {
 		return logicTableMap;
 	}
 
+	/**
+	 * 替换逻辑表配置，旧配置的路由结果缓存同时失效。sql的解析结果(聚合函数的拆分与分区字段有关)与重写结果都引用了逻辑表的配置，也一并清空
+	 */
+	public void replaceLogicTable(LogicTable logicTable) {
+		LogicTable oldLogicTable = logicTableMap.put(logicTable.getLogicTableName(), logicTable);
+		if (oldLogicTable != null) {
+			oldLogicTable.invalidateRouteCache();
+		}
+		cache.invalidateAll();
+		rewritePlanCache.invalidateAll();
+	}
+
 	public ExecutorService getExecutor() {
 		return executor;
 	}
@@ -62,6 +87,10 @@ public class DragonShardingConfig {
 		return executionTimeout;
 	}
 
+	public int getMergeMaxInMemoryRows() {
+		return mergeMaxInMemoryRows;
+	}
+
 	public void putCache(Object key, Object value) {
 		cache.put(key, value);
 	}
@@ -69,4 +98,12 @@ public class DragonShardingConfig {
 	public <T> T getCache(Object key) {
 		return (T) cache.get(key);
 	}
+
+	public void putRewritePlan(String sql, SqlRewritePlan rewritePlan) {
+		rewritePlanCache.put(sql, rewritePlan);
+	}
+
+	public SqlRewritePlan getRewritePlan(String sql) {
+		return rewritePlanCache.get(sql);
+	}
 }
@@ -137,6 +137,10 @@ public abstract class DragonShardingConfigParser {
 			}
 		}
 		logicTableConfig.realDbTbMapping = realDbTbMapping;
+		String routeCacheSize = properties.getProperty("logicTable." + logicTableName + ".routeCacheSize");
+		if (StringUtils.isNotBlank(routeCacheSize)) {
+			logicTableConfig.routeCacheSize = Integer.parseInt(routeCacheSize.trim());
+		}
 		return logicTableConfig;
 	}
 
@@ -186,7 +190,15 @@ public abstract class DragonShardingConfigParser {
 		 * DragonException("no default realDbTbMapping config ,logic table '"+logicTbName+"' must config realDbTbMapping"); }
 		 */
 
-		return new LogicTable(logicTbName, tbNameFormat, tbRouteRules, dbRouteRules, logicDatasource, realDbTbMapping);
+		int routeCacheSize = 0;
+		if (logicTableConfig.routeCacheSize != null) {
+			routeCacheSize = logicTableConfig.routeCacheSize;
+		} else if (defaultLogicTableConfig.routeCacheSize != null) {
+			routeCacheSize = defaultLogicTableConfig.routeCacheSize;
+		}
+
+		return new LogicTable(logicTbName, tbNameFormat, tbRouteRules, dbRouteRules, logicDatasource, realDbTbMapping,
+		      routeCacheSize);
 	}
 
 	private static Map<String, List<String>> caculateRealDBTBMapping(Map<String, String> defaultRealDbTbMapping,
@@ -209,14 +221,31 @@ public abstract class DragonShardingConfigParser {
 		return realDbTbMapping;
 	}
 
+	/**
+	 * 分库sql执行超时时间，单位毫秒，小于等于0表示不限制。配置项为dragon.executor.timeout，兼容旧的parallel.execution.timeout
+	 */
 	public static int parseExecutionTimeout(Properties properties) {
 		int timeout = 3000;
-		if (properties.getProperty("parallel.execution.timeout") != null) {
+		if (properties.getProperty("dragon.executor.timeout") != null) {
+			timeout = Integer.parseInt(properties.getProperty("dragon.executor.timeout"));
+		} else if (properties.getProperty("parallel.execution.timeout") != null) {
 			timeout = Integer.parseInt(properties.getProperty("parallel.execution.timeout"));
 		}
 		return timeout;
 	}
 
+	/**
+	 * 合并多个分库的查询结果时，内存中最多保留的记录数，超过之后写入临时文件进行外部排序，小于等于0表示不限制。
+	 * 配置项为dragon.merge.maxInMemoryRows
+	 */
+	public static int parseMergeMaxInMemoryRows(Properties properties) {
+		int maxInMemoryRows = 0;
+		if (properties.getProperty("dragon.merge.maxInMemoryRows") != null) {
+			maxInMemoryRows = Integer.parseInt(properties.getProperty("dragon.merge.maxInMemoryRows"));
+		}
+		return maxInMemoryRows;
+	}
+
 	public static ExecutorService makeExecutorService(String appName, LogicDatasource logicDatasource,
 	      Map<String, LogicTable> logicTableMap, Properties properties) {
 		int corePoolSize = logicDatasource.getRealDbIndexDatasourceMap().size();
@@ -248,5 +277,7 @@ public abstract class DragonShardingConfigParser {
 		List<String> tbRouteRules;
 
 		Map<String, String> realDbTbMapping;// ${logic_table_name}_[0000,0001]
+
+		Integer routeCacheSize;// 路由结果缓存大小，不配置则不缓存
 	}
 }
@@ -39,8 +39,9 @@ public class DragonShardingDataSource extends DragonDataSourceAdapter {
 		ExecutorService executor = DragonShardingConfigParser.makeExecutorService(appName, logicDatasource, logicTableMap,
 		      configProperties);
 		int executionTimeout = DragonShardingConfigParser.parseExecutionTimeout(configProperties);
+		int mergeMaxInMemoryRows = DragonShardingConfigParser.parseMergeMaxInMemoryRows(configProperties);
 		this.dragonShardingConfig = new DragonShardingConfig(appName, logicDatasource, logicTableMap, executor,
-		      executionTimeout);
+		      executionTimeout, mergeMaxInMemoryRows);
 	}
 
 	@Override
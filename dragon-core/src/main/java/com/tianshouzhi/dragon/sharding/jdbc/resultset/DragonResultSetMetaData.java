@@ -15,6 +15,9 @@ public class DragonResultSetMetaData extends WrapperAdapter implements ResultSet
 
 	private Map<String, Integer> columnLabelIndexMap = new HashMap<String, Integer>();
 
+	// 排在最后的、合并结果时需要使用但是对用户不可见的列数
+	private int hiddenColumnCount;
+
 	public DragonResultSetMetaData(Map<Integer, ColumnMetaData> columnMetaDataMap) {
 		if (columnMetaDataMap == null) {
 			throw new NullPointerException();
@@ -23,10 +26,21 @@ public class DragonResultSetMetaData extends WrapperAdapter implements ResultSet
 	}
 
 	@Override
-	public int getColumnCount() throws SQLException {
+	public int getColumnCount() {
+		return columnMetaDataMap.size() - hiddenColumnCount;
+	}
+
+	/**
+	 * @return 包含不可见列在内的总列数
+	 */
+	public int getTotalColumnCount() {
 		return columnMetaDataMap.size();
 	}
 
+	public void setHiddenColumnCount(int hiddenColumnCount) {
+		this.hiddenColumnCount = hiddenColumnCount;
+	}
+
 	@Override
 	public boolean isAutoIncrement(int column) throws SQLException {
 		return columnMetaDataMap.get(column).isAutoIncrement();
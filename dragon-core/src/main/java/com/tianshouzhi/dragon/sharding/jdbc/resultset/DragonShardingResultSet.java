@@ -7,8 +7,8 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +25,14 @@ public class DragonShardingResultSet implements ResultSet {
 	// 下一个指针
 	private int nextPointer = -1;
 
+	// 流式合并时逐条从cursor中获取记录，此时rowRecords为null
+	private RowRecordCursor rowRecordCursor;
+
+	private RowRecord currentRow;
+
+	// 最后一次读取的列值是否为SQL NULL
+	private boolean wasNull;
+
 	private List<ResultSet> realResultSetList;
 
 	public DragonShardingResultSet(DragonShardingStatement dragonShardingStatement, DragonResultSetMetaData metaData,
@@ -38,13 +46,34 @@ public class DragonShardingResultSet implements ResultSet {
 		this.rowRecords = rowRecords;
 	}
 
+	public DragonShardingResultSet(DragonShardingStatement dragonShardingStatement, DragonResultSetMetaData metaData,
+	      List<ResultSet> realResultSetList, RowRecordCursor rowRecordCursor) {
+		this(dragonShardingStatement, metaData, realResultSetList, (List<RowRecord>) null);
+		if (rowRecordCursor == null) {
+			throw new NullPointerException();
+		}
+		this.rowRecordCursor = rowRecordCursor;
+	}
+
 	@Override
 	public boolean next() throws SQLException {
-		return ++nextPointer < rowRecords.size();
+		if (rowRecordCursor != null) {
+			currentRow = rowRecordCursor.next();
+			return currentRow != null;
+		}
+		if (++nextPointer < rowRecords.size()) {
+			currentRow = rowRecords.get(nextPointer);
+			return true;
+		}
+		currentRow = null;
+		return false;
 	}
 
 	@Override
 	public void close() throws SQLException {
+		if (rowRecordCursor != null) {
+			rowRecordCursor.close();
+		}
 		for (ResultSet resultSet : realResultSetList) {
 			resultSet.close();
 		}
@@ -52,12 +81,18 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public boolean wasNull() throws SQLException {
-		return rowRecords.isEmpty();
+		return wasNull;
+	}
+
+	private Object getColumnValue(int columnIndex) {
+		Object value = currentRow.getValue(columnIndex);
+		wasNull = value == null;
+		return value;
 	}
 
 	@Override
 	public String getString(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -66,7 +101,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public boolean getBoolean(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return false;
 		}
@@ -75,7 +110,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public byte getByte(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -84,7 +119,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public short getShort(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -93,7 +128,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public int getInt(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -102,7 +137,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public long getLong(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -111,7 +146,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public float getFloat(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -120,7 +155,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public double getDouble(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return 0;
 		}
@@ -134,7 +169,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public byte[] getBytes(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -143,7 +178,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public Date getDate(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -152,7 +187,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public Time getTime(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -161,7 +196,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public Timestamp getTimestamp(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -293,7 +328,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public Object getObject(int columnIndex) throws SQLException {
-		return rowRecords.get(nextPointer).getValue(columnIndex);
+		return getColumnValue(columnIndex);
 	}
 
 	@Override
@@ -308,7 +343,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public Reader getCharacterStream(int columnIndex) throws SQLException {
-		return (Reader) rowRecords.get(nextPointer).getValue(columnIndex);
+		return (Reader) getColumnValue(columnIndex);
 	}
 
 	@Override
@@ -318,7 +353,7 @@ public class DragonShardingResultSet implements ResultSet {
 
 	@Override
 	public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-		Object value = rowRecords.get(nextPointer).getValue(columnIndex);
+		Object value = getColumnValue(columnIndex);
 		if (value == null) {
 			return null;
 		}
@@ -1062,7 +1097,13 @@ public class DragonShardingResultSet implements ResultSet {
 		return "DragonShardingResultSet{" + "rowRecords=" + rowRecords + '}';
 	}
 
+	/**
+	 * @return 合并后的记录数，流式合并时在遍历之前无法得知，返回-1
+	 */
 	public int size() {
+		if (rowRecordCursor != null) {
+			return -1;
+		}
 		return rowRecords.size();
 	}
 
@@ -1070,35 +1111,24 @@ public class DragonShardingResultSet implements ResultSet {
 	 * 代表一行记录 Created by TIANSHOUZHI336 on 2017/3/10.
 	 */
 	public class RowRecord {
-		private Map<Integer, Column> resultsMap = new HashMap<Integer, Column>();
+		// 下标为columnIndex-1
+		private final Object[] values = new Object[metaData.getTotalColumnCount()];
 
-		public void putColumnValue(Integer columnIndex, String columnLabel, Object columnValue) {
-			resultsMap.put(columnIndex, new Column(columnLabel, columnValue));
+		public void setValue(int columnIndex, Object columnValue) {
+			values[columnIndex - 1] = columnValue;
 		}
 
-		public Object getValue(Integer columnIndex) {
-			Column column = resultsMap.get(columnIndex);
-			return column.columnValue;
+		public Object getValue(int columnIndex) {
+			return values[columnIndex - 1];
 		}
 
 		public Object getValue(String columnLabel) {
 			return getValue(metaData.getColumnIndex(columnLabel));
 		}
 
-		private class Column {
-			String columnLabel;
-
-			Object columnValue;
-
-			public Column(String columnLabel, Object columnValue) {
-				this.columnLabel = columnLabel;
-				this.columnValue = columnValue;
-			}
-		}
-
 		@Override
 		public String toString() {
-			return "RowRecord{" + "resultsMap=" + resultsMap + '}';
+			return "RowRecord{" + "values=" + Arrays.toString(values) + '}';
 		}
 	}
 }
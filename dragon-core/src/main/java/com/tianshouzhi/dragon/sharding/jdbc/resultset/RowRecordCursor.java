@@ -0,0 +1,18 @@
+package com.tianshouzhi.dragon.sharding.jdbc.resultset;
+
+import java.sql.SQLException;
+
+/**
+ * 按需逐条产生合并后的记录，用于不需要把所有分库结果都加载到内存中的场景
+ */
+public interface RowRecordCursor {
+	/**
+	 * @return 下一条记录，没有更多记录时返回null
+	 */
+	public DragonShardingResultSet.RowRecord next() throws SQLException;
+
+	/**
+	 * 释放cursor持有的资源，DragonShardingResultSet关闭时调用
+	 */
+	public void close() throws SQLException;
+}
@@ -1,9 +1,13 @@
 package com.tianshouzhi.dragon.sharding.pipeline;
 
 import com.alibaba.druid.sql.ast.SQLStatement;
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.sharding.jdbc.datasource.DragonShardingConfig;
 import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParsedResult;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.AggregateDecomposition;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
 import com.tianshouzhi.dragon.sharding.route.LogicTable;
@@ -24,6 +28,18 @@ public class HandlerContext {
 
 	private SQLStatement parsedSqlStatement;
 
+	// 解析之后的sql，可能来自缓存，被多个线程共享，不能修改
+	private SqlParsedResult sqlParsedResult;
+
+	// 普通Statement的sql参数化之后提取出来的字面量，没有参数化时为null
+	private Map<Integer, DragonPrepareStatement.ParamSetting> parameterizedParameters;
+
+	// 语法树缓存使用的sql(参数化之后的)，语法树没有缓存时为null
+	private String sqlCacheKey;
+
+	// 是否已经由FastRouteHandler完成了路由，这时不会解析语法树，也不需要重写sql
+	private boolean fastRouted;
+
 	private Map<String/* dbIndex */
 	      , Set<String/* tbIndex */
 	>> hintMap = new HashMap<String, Set<String>>();
@@ -45,6 +61,9 @@ public class HandlerContext {
 
 	private Map<String, String> fullColumnNameAliasMap;
 
+	// 路由到多个表时，被拆分的聚合函数，没有拆分时为null
+	private AggregateDecomposition aggregateDecomposition;
+
 	// sql执行的开始时间 ，用于统计
 	private long beginTime = System.currentTimeMillis();
 
@@ -64,6 +83,9 @@ public class HandlerContext {
 
 	private int parallelExecutionTaskNum;
 
+	// 只有一个执行任务时，直接在调用线程中执行，不提交到线程池
+	private boolean executeInCallerThread;
+
 	public HandlerContext(DragonShardingStatement shardingStatement) {
 		if (shardingStatement == null) {
 			throw new NullPointerException();
@@ -89,6 +111,14 @@ public class HandlerContext {
 		this.parsedSqlStatement = parsedSqlStatement;
 	}
 
+	public SqlParsedResult getSqlParsedResult() {
+		return sqlParsedResult;
+	}
+
+	public void setSqlParsedResult(SqlParsedResult sqlParsedResult) {
+		this.sqlParsedResult = sqlParsedResult;
+	}
+
 	public Map<String, Map<String, SqlRouteInfo>> getSqlRouteMap() {
 		return sqlRouteMap;
 	}
@@ -163,6 +193,14 @@ public class HandlerContext {
 		return statementList;
 	}
 
+	public AggregateDecomposition getAggregateDecomposition() {
+		return aggregateDecomposition;
+	}
+
+	public void setAggregateDecomposition(AggregateDecomposition aggregateDecomposition) {
+		this.aggregateDecomposition = aggregateDecomposition;
+	}
+
 	public void setFullColumnNameAliasMap(Map<String, String> fullColumnNameAliasMap) {
 		this.fullColumnNameAliasMap = fullColumnNameAliasMap;
 	}
@@ -239,6 +277,14 @@ public class HandlerContext {
 		this.parallelExecutionTaskNum = tarallelExecutionTaskNum;
 	}
 
+	public boolean isExecuteInCallerThread() {
+		return executeInCallerThread;
+	}
+
+	public void setExecuteInCallerThread(boolean executeInCallerThread) {
+		this.executeInCallerThread = executeInCallerThread;
+	}
+
 	public LogicDatasource getLogicDataSource() throws SQLException {
 		return getDragonShardingConfig().getLogicDatasource();
 	}
@@ -267,8 +313,45 @@ public class HandlerContext {
 		 */
 	}
 
+	/**
+	 * 普通Statement的sql参数化之后，也需要按照PreparedStatement执行
+	 */
 	public boolean isPrepare() {
-		return isPrepare;
+		return isPrepare || parameterizedParameters != null;
+	}
+
+	/**
+	 * sql中占位符对应的参数：PreparedStatement设置的参数，或者普通Statement参数化之后提取出来的字面量
+	 */
+	public Map<Integer, DragonPrepareStatement.ParamSetting> getParameters() {
+		if (shardingStatement instanceof DragonShardingPrepareStatement) {
+			return ((DragonShardingPrepareStatement) shardingStatement).getParameters();
+		}
+		return parameterizedParameters;
+	}
+
+	public Map<Integer, DragonPrepareStatement.ParamSetting> getParameterizedParameters() {
+		return parameterizedParameters;
+	}
+
+	public void setParameterizedParameters(Map<Integer, DragonPrepareStatement.ParamSetting> parameterizedParameters) {
+		this.parameterizedParameters = parameterizedParameters;
+	}
+
+	public boolean isFastRouted() {
+		return fastRouted;
+	}
+
+	public void setFastRouted(boolean fastRouted) {
+		this.fastRouted = fastRouted;
+	}
+
+	public String getSqlCacheKey() {
+		return sqlCacheKey;
+	}
+
+	public void setSqlCacheKey(String sqlCacheKey) {
+		this.sqlCacheKey = sqlCacheKey;
 	}
 
 }
@@ -5,6 +5,7 @@ import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.execution.ExecutionHandler;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.hint.HintParseHandler;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.ResultMergeHandler;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.FastRouteHandler;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParseHandler;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewriteHandler;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.statics.StaticsHandler;
@@ -25,6 +26,7 @@ public class Pipeline {
 		this.handlerContext = new HandlerContext(dragonShardingStatement);
 		this.handlerChains = new ArrayList<Handler>();
 		this.handlerChains.add(new HintParseHandler());
+		this.handlerChains.add(new FastRouteHandler());
 		this.handlerChains.add(new SqlParseHandler());
 		this.handlerChains.add(new SqlRewriteHandler());
 		this.handlerChains.add(new ExecutionHandler());
@@ -1,6 +1,7 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.execution;
 
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardTimeoutException;
 import com.tianshouzhi.dragon.sharding.jdbc.connection.DragonShardingConnection;
 import com.tianshouzhi.dragon.sharding.pipeline.Handler;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
@@ -9,12 +10,15 @@ import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by TIANSHOUZHI336 on 2016/12/11.
@@ -26,29 +30,50 @@ public class ExecutionHandler implements Handler {
 		long start = System.currentTimeMillis();
 
 		DragonShardingConnection dragonShardingConnection = context.getShardingStatement().getConnection();
-		ExecutorService executor = context.getDragonShardingConfig().getExecutor();
-		CompletionService<String> ecs = new ExecutorCompletionService<String>(executor);
 
-        // 因为一个connection可以创建多个statement，在执行当前statement的时候，判断之前的statement中使用的connection在这里是否可以复用
-		List<Future> futureList = new ArrayList<Future>();
+		// 因为一个connection可以创建多个statement，在执行当前statement的时候，判断之前的statement中使用的connection在这里是否可以复用
+		List<ExecutionTask> taskList = new ArrayList<ExecutionTask>();
 		// 判断是否开启了事务，如果开启了事务，sql只能路由到一个库中
 		if (!dragonShardingConnection.getAutoCommit()) {
-            futureList.addAll(submitTask(context, ecs));
-        } else {// 如果开启事务，同一个库的所有sql使用一个连接
-			futureList.add(submitTransactionTask(context, ecs));
+			taskList.addAll(makeTasks(context));
+		} else {// 如果开启事务，同一个库的所有sql使用一个连接
+			taskList.add(makeTransactionTask(context));
 		}
 
-		context.setParallelExecutionTaskNum(futureList.size());
+		context.setParallelExecutionTaskNum(taskList.size());
 
-		try {
-			for (int i = 0; i < futureList.size(); i++) {
-				ecs.take().get();
+		int executionTimeout = context.getDragonShardingConfig().getExecutionTimeout();
+		if (executionTimeout > 0) {// 同时设置statement的查询超时，在当前线程中执行时也能生效
+			int queryTimeout = (executionTimeout + 999) / 1000;
+			for (ExecutionTask task : taskList) {
+				task.setQueryTimeout(queryTimeout);
 			}
-		} catch (Exception e) {
-			for (Future future : futureList) {
-				future.cancel(true);
+		}
+
+		// fetchSize传递给每个分库的statement，分库的结果集按需从数据库中读取
+		int fetchSize = context.getShardingStatement().getFetchSize();
+		if (fetchSize == Integer.MIN_VALUE && hasSharedConnection(taskList)) {// 复用同一个连接的任务不能同时流式读取
+			fetchSize = 0;
+		}
+		if (fetchSize != 0) {
+			for (ExecutionTask task : taskList) {
+				task.setFetchSize(fetchSize);
 			}
-			throw new DragonShardException("execute sql error",e);
+		}
+
+		if (taskList.size() == 1) {// 只有一个任务(例如根据分区字段的点查)，直接在当前线程执行，不需要提交到线程池
+			context.setExecuteInCallerThread(true);
+			try {
+				taskList.get(0).call();
+			} catch (SQLTimeoutException e) {
+				taskList.get(0).cancel();
+				throw new DragonShardTimeoutException("execute sql timeout,timeout:" + executionTimeout + "ms", e);
+			} catch (Exception e) {
+				taskList.get(0).cancel();
+				throw new DragonShardException("execute sql error", e);
+			}
+		} else {
+			executeInParallel(context, taskList, executionTimeout);
 		}
 
 		// 将真实connection封装到sharding connection中 ，这个步骤串行执行，因此不能放到中task中 // TODO: 2017/3/19 是否需要精确到表
@@ -69,8 +94,59 @@ public class ExecutionHandler implements Handler {
 		context.setParallelExecutionTimeMillis(System.currentTimeMillis() - start);
 	}
 
-	private List<Future> submitTask(HandlerContext context, CompletionService<String> ecs) throws SQLException {
-		List<Future> futureList = new ArrayList<Future>();
+	/**
+	 * 所有任务共享一个截止时间，超时之后取消还没有完成的任务
+	 */
+	private void executeInParallel(HandlerContext context, List<ExecutionTask> taskList, int executionTimeout)
+	      throws SQLException {
+		ExecutorService executor = context.getDragonShardingConfig().getExecutor();
+		CompletionService<String> ecs = new ExecutorCompletionService<String>(executor);
+		List<Future> futureList = new ArrayList<Future>(taskList.size());
+		for (ExecutionTask task : taskList) {
+			futureList.add(ecs.submit(task));
+		}
+		long deadline = System.currentTimeMillis() + executionTimeout;
+		int finished = 0;
+		try {
+			for (; finished < futureList.size(); finished++) {
+				Future<String> future;
+				if (executionTimeout > 0) {
+					future = ecs.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+				} else {
+					future = ecs.take();
+				}
+				if (future == null) {
+					break;
+				}
+				future.get();
+			}
+		} catch (Exception e) {
+			cancel(taskList, futureList);
+			if (e instanceof ExecutionException && e.getCause() instanceof SQLTimeoutException) {
+				throw new DragonShardTimeoutException("execute sql timeout,timeout:" + executionTimeout + "ms", e);
+			}
+			throw new DragonShardException("execute sql error", e);
+		}
+		if (finished < futureList.size()) {
+			cancel(taskList, futureList);
+			throw new DragonShardTimeoutException("execute sql timeout,timeout:" + executionTimeout + "ms,"
+			      + (futureList.size() - finished) + " of " + futureList.size() + " tasks not finished");
+		}
+	}
+
+	/**
+	 * 还没有开始的任务不再执行；正在执行的任务通过Statement.cancel()取消，而不是中断执行线程，避免破坏真实connection的状态；
+	 * 已经完成的任务结果不会再被使用，释放其statement和connection
+	 */
+	private void cancel(List<ExecutionTask> taskList, List<Future> futureList) {
+		for (int i = 0; i < futureList.size(); i++) {
+			futureList.get(i).cancel(false);
+			taskList.get(i).cancel();
+		}
+	}
+
+	private List<ExecutionTask> makeTasks(HandlerContext context) throws SQLException {
+		List<ExecutionTask> taskList = new ArrayList<ExecutionTask>();
 		Map<String, Set<Connection>> realConnectionMap = context.getShardingStatement().getConnection()
 		      .getRealConnectionMap();
 		for (Map.Entry<String, Map<String, SqlRouteInfo>> entry : context.getSqlRouteMap().entrySet()) {
@@ -89,14 +165,24 @@ public class ExecutionHandler implements Handler {
 				Map.Entry<String, SqlRouteInfo> next = iterator.next();
 				final SqlRouteInfo sqlRouteInfo = next.getValue();
 				ExecutionTask sqlExecutionTask = new ExecutionTask(context.isPrepare(), true, connection, ds, sqlRouteInfo);
-				Future<String> future = ecs.submit(sqlExecutionTask);
-				futureList.add(future);
+				taskList.add(sqlExecutionTask);
+			}
+		}
+		return taskList;
+	}
+
+	private boolean hasSharedConnection(List<ExecutionTask> taskList) {
+		Set<Connection> connections = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+		for (ExecutionTask task : taskList) {
+			Connection connection = task.getConnection();
+			if (connection != null && !connections.add(connection)) {
+				return true;
 			}
 		}
-		return futureList;
+		return false;
 	}
 
-	private Future submitTransactionTask(HandlerContext context, CompletionService<String> ecs) throws SQLException {
+	private ExecutionTask makeTransactionTask(HandlerContext context) throws SQLException {
 		Map<String, Set<Connection>> realConnectionMap = context.getShardingStatement().getConnection()
 		      .getRealConnectionMap();
 		Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = context.getSqlRouteMap();
@@ -116,7 +202,6 @@ public class ExecutionHandler implements Handler {
 		Collection<SqlRouteInfo> values = next.getValue().values();
 		SqlRouteInfo[] sqlRouteInfos = new SqlRouteInfo[values.size()];
 		values.toArray(sqlRouteInfos);
-		ExecutionTask sqlExecutionTask = new ExecutionTask(context.isPrepare(), false, connection, ds, sqlRouteInfos);
-		return ecs.submit(sqlExecutionTask);
+		return new ExecutionTask(context.isPrepare(), false, connection, ds, sqlRouteInfos);
 	}
 }
@@ -6,10 +6,12 @@ import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 代表一个拆分后的sql执行任务，例如一个sql 要路由到 2个分表中查询，那么就应该创建两个查询任务进行并行的查询
@@ -29,6 +31,28 @@ public class ExecutionTask implements Callable<String> {
 
 	private boolean autoCommit;
 
+	// 查询超时时间，单位秒，0表示不限制
+	private int queryTimeout;
+
+	// 用户在DragonShardingStatement上设置的fetchSize，0表示使用驱动的默认值
+	private int fetchSize;
+
+	// 超时或者其他任务失败时被取消
+	private volatile boolean cancelled;
+
+	// 正在执行的statement，用于取消
+	private volatile Statement currentStatement;
+
+	// 执行线程是否已经结束(成功或者失败)
+	private volatile boolean finished;
+
+	// connection是否是由当前任务从ds中获取的，被取消时需要关闭
+	private volatile boolean acquiredConnection;
+
+	private volatile Connection realConnection;
+
+	private final AtomicBoolean released = new AtomicBoolean(false);
+
 	/**
 	 * 一个SqlExecutionTask中传入的多个SqlRouteInfo，都是由同一个connection完成
 	 * 如果提供了connection，则使用指定的connection；如果没有提供connection，则从ds中获取一个新的connection
@@ -51,35 +75,125 @@ public class ExecutionTask implements Callable<String> {
 		Connection realConnection = connection;
 		if (realConnection == null) {
 			realConnection = ds.getConnection();
+			acquiredConnection = true;
 		}
-		for (SqlRouteInfo sqlRouteInfo : sqlRouteInfos) {
-			realConnection.setAutoCommit(autoCommit);
-			Statement statement = null;
-			String sql = sqlRouteInfo.getSql().toString();
-			if (isPrepare) {// 如果是prepareStatement
-				statement = realConnection.prepareStatement(sql); //// FIXME: 2017/3/31 传入用户创建statement传入的参数
-				Map<Integer, DragonPrepareStatement.ParamSetting> parameters = sqlRouteInfo.getParameters();
-				Iterator<Map.Entry<Integer, DragonPrepareStatement.ParamSetting>> iterator = parameters.entrySet()
-				      .iterator();
-				while (iterator.hasNext()) {
-					Map.Entry<Integer, DragonPrepareStatement.ParamSetting> next = iterator.next();
-					Integer parameterIndex = next.getKey();
-					DragonPrepareStatement.ParamSetting paramSetting = next.getValue();
-					Object[] values = paramSetting.values;
-					DragonPrepareStatement.ParamType paramType = paramSetting.paramType;
-					DragonPrepareStatement.ParamType.setPrepareStatementParams((PreparedStatement) statement, parameterIndex,
-					      values, paramType);
+		this.realConnection = realConnection;
+		try {
+			for (SqlRouteInfo sqlRouteInfo : sqlRouteInfos) {
+				realConnection.setAutoCommit(autoCommit);
+				Statement statement = null;
+				String sql = sqlRouteInfo.getSql().toString();
+				if (isPrepare) {// 如果是prepareStatement
+					statement = realConnection.prepareStatement(sql); //// FIXME: 2017/3/31 传入用户创建statement传入的参数
+					prepareExecution(statement);
+					Map<Integer, DragonPrepareStatement.ParamSetting> parameters = sqlRouteInfo.getParameters();
+					Iterator<Map.Entry<Integer, DragonPrepareStatement.ParamSetting>> iterator = parameters.entrySet()
+					      .iterator();
+					while (iterator.hasNext()) {
+						Map.Entry<Integer, DragonPrepareStatement.ParamSetting> next = iterator.next();
+						Integer parameterIndex = next.getKey();
+						DragonPrepareStatement.ParamSetting paramSetting = next.getValue();
+						Object[] values = paramSetting.values;
+						DragonPrepareStatement.ParamType paramType = paramSetting.paramType;
+						DragonPrepareStatement.ParamType.setPrepareStatementParams((PreparedStatement) statement,
+						      parameterIndex, values, paramType);
+					}
+					((PreparedStatement) statement).execute();
+				} else {// 如果是statement // FIXME: 2017/3/31 传入用户创建statement的参数
+					statement = realConnection.createStatement();
+					prepareExecution(statement);
+					statement.execute(sql);
 				}
-				((PreparedStatement) statement).execute();
-			} else {// 如果是statement // FIXME: 2017/3/31 传入用户创建statement的参数
-				statement = realConnection.createStatement();
-				statement.execute(sql);
+				// PreparedStatement preparedStatement = realConnection.prepareStatement(sql);
+				sqlRouteInfo.setTargetStatement(statement);
+				sqlRouteInfo.setExecutionTimeMillis(System.currentTimeMillis() - start);
+			}
+		} finally {
+			finished = true;
+			if (cancelled) {// 超时之后才执行完成，结果已经不会被使用
+				release();
 			}
-			// PreparedStatement preparedStatement = realConnection.prepareStatement(sql);
-			sqlRouteInfo.setTargetStatement(statement);
-			sqlRouteInfo.setExecutionTimeMillis(System.currentTimeMillis() - start);
 		}
-
 		return sqlRouteInfos[0].getRealDBName();
 	}
+
+	private void prepareExecution(Statement statement) throws SQLException {
+		currentStatement = statement;
+		if (cancelled) {// 先设置currentStatement再检查，保证与cancel()并发时不会漏掉
+			throw new SQLException("execution task is cancelled");
+		}
+		if (queryTimeout > 0) {
+			statement.setQueryTimeout(queryTimeout);
+		}
+		// mysql中fetchSize为Integer.MIN_VALUE表示逐条流式读取，结果集读完之前同一个连接不能执行其他sql，
+		// 因此多个sql共用一个连接时不能使用
+		if (fetchSize > 0 || (fetchSize == Integer.MIN_VALUE && sqlRouteInfos.length == 1)) {
+			statement.setFetchSize(fetchSize);
+		}
+	}
+
+	/**
+	 * 由提交任务的线程调用，取消正在执行的sql。任务已经结束的话直接释放statement和connection，否则由执行线程结束时释放
+	 */
+	public void cancel() {
+		cancelled = true;
+		if (finished) {
+			release();
+			return;
+		}
+		Statement statement = currentStatement;
+		if (statement != null) {
+			try {
+				statement.cancel();
+			} catch (SQLException e) {
+				// 数据库可能已经执行完成，忽略
+			}
+		}
+		if (finished) {// cancel的过程中执行线程结束了
+			release();
+		}
+	}
+
+	private void release() {
+		if (!released.compareAndSet(false, true)) {
+			return;
+		}
+		for (SqlRouteInfo sqlRouteInfo : sqlRouteInfos) {
+			closeQuietly(sqlRouteInfo.getTargetStatement());
+		}
+		closeQuietly(currentStatement);
+		if (acquiredConnection && realConnection != null) {
+			try {
+				realConnection.close();
+			} catch (SQLException e) {
+				// ignore
+			}
+		}
+	}
+
+	private void closeQuietly(Statement statement) {
+		if (statement == null) {
+			return;
+		}
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// ignore
+		}
+	}
+
+	public void setQueryTimeout(int queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @return 复用的connection，为null表示执行时从ds中获取
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
 }
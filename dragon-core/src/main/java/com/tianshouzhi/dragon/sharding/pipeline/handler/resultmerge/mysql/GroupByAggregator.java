@@ -0,0 +1,237 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 流式的hash聚合：分库的记录逐条加入，按照group by的列(可以是多列)分组，每个分组只保留一条记录，聚合函数的结果直接累加到这条记录上，
+ * 不需要先把所有记录加载到内存中再分组。支持COUNT、SUM、MAX、MIN，其他聚合函数保留每个分组第一条记录的值，
+ * 只有group by中有唯一的分区字段时(每个分组只在一个表中)才会出现，其他情况在sql改写时已经报错。
+ * AVG与COUNT(DISTINCT)在分库sql中被拆分，参见{@link com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.AggregateDecomposition}
+ */
+public class GroupByAggregator {
+	public static final int COUNT = 0;
+
+	public static final int SUM = 1;
+
+	public static final int MAX = 2;
+
+	public static final int MIN = 3;
+
+	// 分库返回去重后的值，合并时再去重计数
+	public static final int DISTINCT_COUNT = 4;
+
+	public static final int UNSUPPORTED = -1;
+
+	// 没有group by时，所有记录都是同一组
+	private static final Object NO_GROUP_BY_KEY = new Object();
+
+	private final int[] groupByColumnIndexes;
+
+	private final int[] aggrColumnIndexes;
+
+	private final int[] aggrTypes;
+
+	// AVG列的位置(分库返回SUM)与对应的COUNT列的位置
+	private int[] avgColumnIndexes = new int[0];
+
+	private int[] avgCountColumnIndexes = new int[0];
+
+	// 保持分组第一次出现的顺序
+	private final Map<Object, Group> groupMap = new LinkedHashMap<Object, Group>();
+
+	private int inputRowCount;
+
+	/**
+	 * @param groupByColumnIndexes group by的列的位置，没有group by时为空数组
+	 * @param aggrColumnIndexes 聚合函数的列的位置
+	 * @param aggrTypes 与aggrColumnIndexes一一对应的聚合函数类型
+	 */
+	public GroupByAggregator(int[] groupByColumnIndexes, int[] aggrColumnIndexes, int[] aggrTypes) {
+		this.groupByColumnIndexes = groupByColumnIndexes;
+		this.aggrColumnIndexes = aggrColumnIndexes;
+		this.aggrTypes = aggrTypes;
+	}
+
+	public void setAvgColumns(int[] avgColumnIndexes, int[] avgCountColumnIndexes) {
+		this.avgColumnIndexes = avgColumnIndexes;
+		this.avgCountColumnIndexes = avgCountColumnIndexes;
+	}
+
+	public static int getAggrType(String methodName) {
+		if ("COUNT".equalsIgnoreCase(methodName)) {
+			return COUNT;
+		}
+		if ("SUM".equalsIgnoreCase(methodName)) {
+			return SUM;
+		}
+		if ("MAX".equalsIgnoreCase(methodName)) {
+			return MAX;
+		}
+		if ("MIN".equalsIgnoreCase(methodName)) {
+			return MIN;
+		}
+		return UNSUPPORTED;
+	}
+
+	public void add(DragonShardingResultSet.RowRecord rowRecord) {
+		inputRowCount++;
+		Object groupKey = getGroupKey(rowRecord);
+		Group group = groupMap.get(groupKey);
+		if (group == null) {// 以每个分组的第一条作为返回结果
+			groupMap.put(groupKey, new Group(rowRecord));
+			return;
+		}
+		for (int i = 0; i < aggrColumnIndexes.length; i++) {
+			aggregate(group, i, rowRecord.getValue(aggrColumnIndexes[i]));
+		}
+	}
+
+	/**
+	 * @return 每个分组一条记录，顺序与分组第一次出现的顺序一致
+	 */
+	public List<DragonShardingResultSet.RowRecord> getResult() {
+		List<DragonShardingResultSet.RowRecord> result = new ArrayList<DragonShardingResultSet.RowRecord>(
+		      groupMap.size());
+		for (Group group : groupMap.values()) {
+			for (int i = 0; i < aggrColumnIndexes.length; i++) {
+				if (aggrTypes[i] == COUNT) {
+					group.rowRecord.setValue(aggrColumnIndexes[i], group.counts[i]);
+				} else if (aggrTypes[i] == DISTINCT_COUNT) {
+					group.rowRecord.setValue(aggrColumnIndexes[i], (long) group.distinctValues[i].size());
+				}
+			}
+			for (int i = 0; i < avgColumnIndexes.length; i++) {
+				Object sum = group.rowRecord.getValue(avgColumnIndexes[i]);
+				long count = ((Number) group.rowRecord.getValue(avgCountColumnIndexes[i])).longValue();
+				group.rowRecord.setValue(avgColumnIndexes[i], avg((Number) sum, count));
+			}
+			result.add(group.rowRecord);
+		}
+		return result;
+	}
+
+	public int getInputRowCount() {
+		return inputRowCount;
+	}
+
+	private Object getGroupKey(DragonShardingResultSet.RowRecord rowRecord) {
+		if (groupByColumnIndexes.length == 0) {
+			return NO_GROUP_BY_KEY;
+		}
+		if (groupByColumnIndexes.length == 1) {
+			return rowRecord.getValue(groupByColumnIndexes[0]);
+		}
+		Object[] key = new Object[groupByColumnIndexes.length];
+		for (int i = 0; i < groupByColumnIndexes.length; i++) {
+			key[i] = rowRecord.getValue(groupByColumnIndexes[i]);
+		}
+		return Arrays.asList(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void aggregate(Group group, int i, Object value) {
+		if (aggrTypes[i] == COUNT) {
+			if (value != null) {
+				group.counts[i] += ((Number) value).longValue();
+			}
+			return;
+		}
+		if (aggrTypes[i] == DISTINCT_COUNT) {
+			if (value != null) {
+				group.distinctValues[i].add(value);
+			}
+			return;
+		}
+		if (value == null || aggrTypes[i] == UNSUPPORTED) {// 聚合函数忽略null，例如某个分库没有记录时MAX返回null
+			return;
+		}
+		int columnIndex = aggrColumnIndexes[i];
+		Object current = group.rowRecord.getValue(columnIndex);
+		if (current == null) {
+			group.rowRecord.setValue(columnIndex, value);
+			return;
+		}
+		switch (aggrTypes[i]) {
+		case SUM:
+			group.rowRecord.setValue(columnIndex, add((Number) current, (Number) value));
+			break;
+		case MAX:
+			if (((Comparable) value).compareTo(current) > 0) {
+				group.rowRecord.setValue(columnIndex, value);
+			}
+			break;
+		case MIN:
+			if (((Comparable) value).compareTo(current) < 0) {
+				group.rowRecord.setValue(columnIndex, value);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	// mysql中整数和decimal的SUM返回BigDecimal，浮点数返回Double
+	private Number add(Number current, Number value) {
+		if (current instanceof BigDecimal) {
+			return ((BigDecimal) current).add(value instanceof BigDecimal ? (BigDecimal) value
+			      : new BigDecimal(value.toString()));
+		}
+		if (current instanceof Double || current instanceof Float) {
+			return current.doubleValue() + value.doubleValue();
+		}
+		return current.longValue() + value.longValue();
+	}
+
+	// 与mysql一致，decimal的AVG结果比SUM多4位小数，浮点数返回Double
+	private Number avg(Number sum, long count) {
+		if (sum == null || count == 0) {
+			return null;
+		}
+		if (sum instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) sum;
+			return decimal.divide(BigDecimal.valueOf(count), decimal.scale() + 4, RoundingMode.HALF_UP);
+		}
+		if (sum instanceof Double || sum instanceof Float) {
+			return sum.doubleValue() / count;
+		}
+		return new BigDecimal(sum.longValue()).divide(BigDecimal.valueOf(count), 4, RoundingMode.HALF_UP);
+	}
+
+	private class Group {
+		final DragonShardingResultSet.RowRecord rowRecord;
+
+		// COUNT的累加值，避免每次累加都创建Long对象
+		final long[] counts;
+
+		// COUNT(DISTINCT)的去重集合，其他列为null
+		final Set<Object>[] distinctValues;
+
+		@SuppressWarnings("unchecked")
+		Group(DragonShardingResultSet.RowRecord rowRecord) {
+			this.rowRecord = rowRecord;
+			this.counts = new long[aggrColumnIndexes.length];
+			this.distinctValues = new Set[aggrColumnIndexes.length];
+			for (int i = 0; i < aggrColumnIndexes.length; i++) {
+				Object value = rowRecord.getValue(aggrColumnIndexes[i]);
+				if (aggrTypes[i] == COUNT) {
+					counts[i] = value == null ? 0 : ((Number) value).longValue();
+				} else if (aggrTypes[i] == DISTINCT_COUNT) {
+					distinctValues[i] = new HashSet<Object>();
+					if (value != null) {
+						distinctValues[i].add(value);
+					}
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import com.alibaba.druid.sql.ast.SQLOrderBy;
 import com.alibaba.druid.sql.ast.SQLOrderingSpecification;
 import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
 import com.alibaba.druid.sql.ast.statement.SQLSelectGroupByClause;
+import com.alibaba.druid.sql.ast.statement.SQLSelectItem;
 import com.alibaba.druid.sql.ast.statement.SQLSelectOrderByItem;
 import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
@@ -13,12 +14,13 @@ import com.tianshouzhi.dragon.common.util.MapUtils;
 import com.tianshouzhi.dragon.sharding.jdbc.resultset.ColumnMetaData;
 import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonResultSetMetaData;
 import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.ResultMerger;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.AggregateDecomposition;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql.DragonDruidASTUtil;
 
-import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -40,27 +42,87 @@ public class MysqlSelectResultMerger implements ResultMerger {
 		}
 		// 构造ResultSetMetaData 不同库返回的MetaData信息基本类似，只要取第一个就行了
 		DragonResultSetMetaData metaData = makeResultSetMetaData(realResultSetList.get(0).getMetaData());
+		if (context.getAggregateDecomposition() != null) {// 拆分聚合函数时追加的列对用户不可见
+			metaData.setHiddenColumnCount(context.getAggregateDecomposition().getHiddenColumnCount());
+		}
+		SQLSelectStatement parsedSqlStatement = (SQLSelectStatement) context.getParsedSqlStatement();
+		// 快速路由的sql没有语法树，只会路由到一个表，下面只有一个结果集的处理不会使用selectQuery
+		MySqlSelectQueryBlock selectQuery = parsedSqlStatement == null ? null
+		      : (MySqlSelectQueryBlock) parsedSqlStatement.getSelect().getQuery();
+
+		// 多个分库，只有order by，没有聚合函数和group by时，各个分库的结果已经排好序，使用多路归并按需读取，不需要加载所有记录
+		if (realResultSetList.size() > 1 && canStreamMerge(selectQuery)) {
+			Comparator<DragonShardingResultSet.RowRecord> comparator = makeOrderByComparator(metaData,
+			      selectQuery.getOrderBy(), context.getFullColumnNameAliasMap());
+			long offset = selectQuery.getLimit() == null ? 0 : Math.max(context.getOffset(), 0);
+			long rowCount = selectQuery.getLimit() == null ? -1 : context.getRowCount();
+			OrderByMergeCursor mergeCursor = new OrderByMergeCursor(realResultSetList, comparator, offset, rowCount);
+			DragonShardingResultSet shardingResultSet = new DragonShardingResultSet(dragonShardingStatement, metaData,
+			      realResultSetList, mergeCursor);
+			mergeCursor.setShardingResultSet(shardingResultSet);
+			context.setOriginQueryCount(-1);// 流式合并，记录数在遍历之前无法得知
+			context.setMergedResultSet(shardingResultSet);
+			return;
+		}
+
+		// 设置了fetchSize时，分库的结果集是按需从数据库中读取的，能按照分库的顺序读取时不再加载到内存中
+		if (dragonShardingStatement.getFetchSize() != 0 && canSequentialMerge(selectQuery, realResultSetList)) {
+			SequentialMergeCursor mergeCursor = new SequentialMergeCursor(realResultSetList);
+			DragonShardingResultSet shardingResultSet = new DragonShardingResultSet(dragonShardingStatement, metaData,
+			      realResultSetList, mergeCursor);
+			mergeCursor.setShardingResultSet(shardingResultSet);
+			context.setOriginQueryCount(-1);// 流式读取，记录数在遍历之前无法得知
+			context.setMergedResultSet(shardingResultSet);
+			return;
+		}
+
 		// 合并查询结果集，将不同的ResultSet实例的结果都合并到totalRowRecords中
 		List<DragonShardingResultSet.RowRecord> totalRowRecords = new ArrayList<DragonShardingResultSet.RowRecord>();
 		DragonShardingResultSet shardingResultSet = new DragonShardingResultSet(dragonShardingStatement, metaData,
 		      realResultSetList, totalRowRecords);
-		mergeResultSets(shardingResultSet, totalRowRecords, realResultSetList);
-
-		context.setOriginQueryCount(totalRowRecords.size());
-		// 处理order by和limit 以及max、min、groupBy等函数
-		if (!CollectionUtils.isEmpty(totalRowRecords)// 没有查询到结果，不需要处理
-		      && realResultSetList.size() > 1) {// 只有一个statement，数据库已经排序好，不需要再次排序和解析limit
-			SQLSelectStatement parsedSqlStatement = (SQLSelectStatement) context.getParsedSqlStatement();
-			MySqlSelectQueryBlock selectQuery = (MySqlSelectQueryBlock) parsedSqlStatement.getSelect().getQuery();
-
-			// 处理order by
-			tackleOrderBy(selectQuery.getOrderBy(), totalRowRecords, context.getFullColumnNameAliasMap());
+		if (realResultSetList.size() == 1) {// 只有一个statement，数据库已经排序、聚合好，不需要再次处理
+			mergeResultSets(shardingResultSet, totalRowRecords, realResultSetList);
+			context.setOriginQueryCount(totalRowRecords.size());
+			context.setMergedResultSet(shardingResultSet);
+			return;
+		}
 
-			// 处理聚合函数与group by
-			tackleAggrAndGroupBy(metaData, totalRowRecords, selectQuery, context.getFullColumnNameAliasMap());
+		// 处理聚合函数与group by，读取的同时进行聚合，不需要保留所有分库的记录
+		GroupByAggregator aggregator = makeGroupByAggregator(metaData, selectQuery, context.getAggregateDecomposition(),
+		      context.getFullColumnNameAliasMap());
+		int maxInMemoryRows = context.getDragonShardingConfig().getMergeMaxInMemoryRows();
+		if (maxInMemoryRows > 0) {// 限制了内存中的记录数，超过时写入临时文件，外部排序之后按需读取
+			SpillableRowSorter sorter = spillMerge(context, metaData, selectQuery, aggregator, shardingResultSet,
+			      realResultSetList, maxInMemoryRows);
+			// 写入临时文件时所有分库的记录也已经读取完成，记录数是确定的
+			context.setOriginQueryCount(aggregator != null ? aggregator.getInputRowCount() : sorter.getRowCount());
+			if (sorter.isSpilled()) {
+				long offset = selectQuery.getLimit() == null ? 0 : Math.max(context.getOffset(), 0);
+				long rowCount = selectQuery.getLimit() == null ? -1 : context.getRowCount();
+				SpillableRowSorter.SortedCursor sortedCursor = sorter.sortedCursor(offset, rowCount);
+				DragonShardingResultSet spilledResultSet = new DragonShardingResultSet(dragonShardingStatement, metaData,
+				      realResultSetList, sortedCursor);
+				sortedCursor.setShardingResultSet(spilledResultSet);
+				context.setMergedResultSet(spilledResultSet);
+				return;
+			}
+			totalRowRecords.addAll(sorter.getInMemoryRows());
+		} else if (aggregator != null) {
+			for (ResultSet resultSet : realResultSetList) {
+				while (resultSet.next()) {
+					aggregator.add(OrderByMergeCursor.readRow(shardingResultSet, resultSet));
+				}
+			}
+			totalRowRecords.addAll(aggregator.getResult());
+			context.setOriginQueryCount(aggregator.getInputRowCount());
+		} else {
+			mergeResultSets(shardingResultSet, totalRowRecords, realResultSetList);
+			context.setOriginQueryCount(totalRowRecords.size());
+		}
 
-			// 处理limit
-			limit(selectQuery.getLimit(), context.getOffset(), context.getRowCount(), totalRowRecords);
+		// 处理order by和limit
+		if (!CollectionUtils.isEmpty(totalRowRecords)) {
+			tackleOrderByAndLimit(metaData, selectQuery, context, totalRowRecords);
 		}
 		context.setMergedResultSet(shardingResultSet);
 	}
@@ -72,18 +134,72 @@ public class MysqlSelectResultMerger implements ResultMerger {
 	private void mergeResultSets(DragonShardingResultSet shardingResultSet,
 	      List<DragonShardingResultSet.RowRecord> totalRowRecords, List<ResultSet> realResultSetList)
 	      throws SQLException {
-		ResultSetMetaData metaData = shardingResultSet.getMetaData();
 		for (ResultSet resultSet : realResultSetList) {
 			while (resultSet.next()) {
-				DragonShardingResultSet.RowRecord rowRecord = shardingResultSet.new RowRecord();
-				for (int i = 1; i <= metaData.getColumnCount(); i++) {
-					String columnName = metaData.getColumnName(i);
-					Object columnValue = resultSet.getObject(i);
-					rowRecord.putColumnValue(i, columnName, columnValue);
+				totalRowRecords.add(OrderByMergeCursor.readRow(shardingResultSet, resultSet));
+			}
+		}
+	}
+
+	/**
+	 * 读取所有分库的记录(有聚合函数时为聚合之后的记录)加入到sorter中，出现异常时删除已经写入的临时文件
+	 */
+	private SpillableRowSorter spillMerge(HandlerContext context, DragonResultSetMetaData metaData,
+	      MySqlSelectQueryBlock selectQuery, GroupByAggregator aggregator, DragonShardingResultSet shardingResultSet,
+	      List<ResultSet> realResultSetList, int maxInMemoryRows) throws SQLException {
+		Comparator<DragonShardingResultSet.RowRecord> comparator = null;
+		if (selectQuery.getOrderBy() != null) {
+			comparator = makeOrderByComparator(metaData, selectQuery.getOrderBy(), context.getFullColumnNameAliasMap());
+		}
+		SpillableRowSorter sorter = new SpillableRowSorter(comparator, maxInMemoryRows, metaData.getTotalColumnCount());
+		boolean success = false;
+		try {
+			if (aggregator != null) {
+				for (ResultSet resultSet : realResultSetList) {
+					while (resultSet.next()) {
+						aggregator.add(OrderByMergeCursor.readRow(shardingResultSet, resultSet));
+					}
 				}
-				totalRowRecords.add(rowRecord);
+				for (DragonShardingResultSet.RowRecord rowRecord : aggregator.getResult()) {
+					sorter.add(rowRecord);
+				}
+			} else {
+				for (ResultSet resultSet : realResultSetList) {
+					while (resultSet.next()) {
+						sorter.add(OrderByMergeCursor.readRow(shardingResultSet, resultSet));
+					}
+				}
+			}
+			success = true;
+		} finally {
+			if (!success) {
+				sorter.discard();
 			}
 		}
+		return sorter;
+	}
+
+	private boolean canStreamMerge(MySqlSelectQueryBlock selectQuery) {
+		return selectQuery.getOrderBy() != null && !hasAggregation(selectQuery);
+	}
+
+	/**
+	 * 只有一个分库时数据库已经处理好；多个分库时，不需要排序和聚合才能按照分库的顺序依次读取
+	 */
+	private boolean canSequentialMerge(MySqlSelectQueryBlock selectQuery, List<ResultSet> realResultSetList) {
+		return realResultSetList.size() == 1 || (selectQuery.getOrderBy() == null && !hasAggregation(selectQuery));
+	}
+
+	private boolean hasAggregation(MySqlSelectQueryBlock selectQuery) {
+		if (selectQuery.getGroupBy() != null) {
+			return true;
+		}
+		for (SQLSelectItem selectItem : selectQuery.getSelectList()) {
+			if (selectItem.getExpr() instanceof SQLAggregateExpr) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	private DragonResultSetMetaData makeResultSetMetaData(ResultSetMetaData metaData) throws SQLException {
@@ -127,25 +243,75 @@ public class MysqlSelectResultMerger implements ResultMerger {
 		return result;
 	}
 
-	private void tackleOrderBy(SQLOrderBy orderBy, List<DragonShardingResultSet.RowRecord> totalRowRecords,
-	      final Map<String, String> fullColumnNameAliasMap) {
+	private void tackleOrderByAndLimit(DragonResultSetMetaData metaData, MySqlSelectQueryBlock selectQuery,
+	      HandlerContext context, List<DragonShardingResultSet.RowRecord> totalRowRecords) {
+		SQLOrderBy orderBy = selectQuery.getOrderBy();
 		if (orderBy == null) {
+			limit(selectQuery.getLimit(), context.getOffset(), context.getRowCount(), totalRowRecords);
 			return;
 		}
-		final List<SQLSelectOrderByItem> items = orderBy.getItems();
+		Comparator<DragonShardingResultSet.RowRecord> comparator = makeOrderByComparator(metaData, orderBy,
+		      context.getFullColumnNameAliasMap());
+		if (selectQuery.getLimit() == null) {
+			Collections.sort(totalRowRecords, comparator);
+			return;
+		}
+		long offset = Math.max(context.getOffset(), 0);
+		long topN = offset + context.getRowCount();
+		if (topN < totalRowRecords.size()) {
+			// 只需要前offset+rowCount条，使用大小为topN的堆，不需要对所有记录排序
+			topN(totalRowRecords, comparator, (int) topN);
+		} else {
+			Collections.sort(totalRowRecords, comparator);
+		}
+		limit(selectQuery.getLimit(), offset, context.getRowCount(), totalRowRecords);
+	}
 
-		Comparator<DragonShardingResultSet.RowRecord> comparator = new Comparator<DragonShardingResultSet.RowRecord>() {
+	/**
+	 * 保留排序后的前n条记录：堆顶是当前保留的记录中最大的一条，新记录比堆顶小时替换堆顶
+	 */
+	private void topN(List<DragonShardingResultSet.RowRecord> totalRowRecords,
+	      Comparator<DragonShardingResultSet.RowRecord> comparator, int n) {
+		if (n <= 0) {
+			totalRowRecords.clear();
+			return;
+		}
+		PriorityQueue<DragonShardingResultSet.RowRecord> heap = new PriorityQueue<DragonShardingResultSet.RowRecord>(n,
+		      Collections.reverseOrder(comparator));
+		for (DragonShardingResultSet.RowRecord rowRecord : totalRowRecords) {
+			if (heap.size() < n) {
+				heap.add(rowRecord);
+			} else if (comparator.compare(rowRecord, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(rowRecord);
+			}
+		}
+		totalRowRecords.clear();
+		totalRowRecords.addAll(heap);
+		Collections.sort(totalRowRecords, comparator);
+	}
+
+	/**
+	 * 列的位置在创建comparator的时候确定，比较时直接按照位置取值
+	 */
+	private Comparator<DragonShardingResultSet.RowRecord> makeOrderByComparator(DragonResultSetMetaData metaData,
+	      SQLOrderBy orderBy, Map<String, String> fullColumnNameAliasMap) {
+		List<SQLSelectOrderByItem> items = orderBy.getItems();
+		final int[] columnIndexes = new int[items.size()];
+		final boolean[] ascs = new boolean[items.size()];
+		for (int i = 0; i < items.size(); i++) {
+			SQLSelectOrderByItem item = items.get(i);
+			columnIndexes[i] = resolveColumnIndex(metaData, item.getExpr(), fullColumnNameAliasMap);
+			ascs[i] = item.getType() == null || SQLOrderingSpecification.ASC == item.getType();
+		}
+
+		return new Comparator<DragonShardingResultSet.RowRecord>() {
 			@Override
 			public int compare(DragonShardingResultSet.RowRecord o1, DragonShardingResultSet.RowRecord o2) {
 				int result = 0;
-				for (SQLSelectOrderByItem item : items) {
-					boolean asc = true;
-					if (item.getType() != null) {
-						asc = SQLOrderingSpecification.ASC == item.getType();
-					}
-					String columnLabel = getColumnLabel(item.getExpr(), fullColumnNameAliasMap);
-					Object o1_value = o1.getValue(columnLabel);
-					Object o2_value = o2.getValue(columnLabel);
+				for (int i = 0; i < columnIndexes.length; i++) {
+					Object o1_value = o1.getValue(columnIndexes[i]);
+					Object o2_value = o2.getValue(columnIndexes[i]);
 					if (o1_value instanceof Comparable && o2_value instanceof Comparable) {
 						Comparable v1 = (Comparable) o1_value;
 						Comparable v2 = (Comparable) o2_value;
@@ -154,111 +320,85 @@ public class MysqlSelectResultMerger implements ResultMerger {
 							continue;
 						}
 						if (result > 0) {
-							return asc ? 1 : -1;
+							return ascs[i] ? 1 : -1;
 						}
 						if (result < 0) {
-							return asc ? -1 : 1;
+							return ascs[i] ? -1 : 1;
 						}
 					}
 				}
 				return result;
 			}
 		};
-		Collections.sort(totalRowRecords, comparator);
+	}
+
+	private int resolveColumnIndex(DragonResultSetMetaData metaData, SQLExpr sqlExpr,
+	      Map<String, String> fullColumnNameAliasMap) {
+		String columnLabel = getColumnLabel(sqlExpr, fullColumnNameAliasMap);
+		int columnIndex = metaData.getColumnIndex(columnLabel);
+		if (columnIndex == 0) {
+			throw new DragonShardException("column '" + sqlExpr + "' must be in select list!!!");
+		}
+		return columnIndex;
 	}
 
 	/**
-	 * 支持的聚合函数 SUM、MAX、MIN、AVG、COUNT 其中 SUM、MAX、MIN、COUNT四个可以组合使用
+	 * 支持的聚合函数 SUM、MAX、MIN、COUNT、AVG、COUNT(DISTINCT)，可以组合使用，group by支持多列
 	 * 
-	 * @param metaData
-	 * @param totalRowRecords
-	 * @param selectQuery
-	 * @throws SQLException
+	 * @return 没有聚合函数和group by时返回null
 	 */
-	private void tackleAggrAndGroupBy(DragonResultSetMetaData metaData,
-	      List<DragonShardingResultSet.RowRecord> totalRowRecords, MySqlSelectQueryBlock selectQuery,
-	      Map<String, String> fullColumnNameAliasMap) throws SQLException {
-
-		// 聚合函数位置与聚合函数的映射
-		Map<Integer, SQLAggregateExpr> clomunIndexAggrMap = null;
+	private GroupByAggregator makeGroupByAggregator(DragonResultSetMetaData metaData,
+	      MySqlSelectQueryBlock selectQuery, AggregateDecomposition decomposition,
+	      Map<String, String> fullColumnNameAliasMap) {
+		// 聚合函数的位置与类型
+		List<Integer> aggrColumnIndexList = new ArrayList<Integer>();
+		List<Integer> aggrTypeList = new ArrayList<Integer>();
 		for (int i = 0; i < selectQuery.getSelectList().size(); i++) {
 			SQLExpr expr = selectQuery.getSelectList().get(i).getExpr();
 			if (expr instanceof SQLAggregateExpr) {// 聚合函数
-				if (clomunIndexAggrMap == null) {
-					clomunIndexAggrMap = new HashMap<Integer, SQLAggregateExpr>();
+				int columnIndex = i + 1;
+				int aggrType = GroupByAggregator.getAggrType(((SQLAggregateExpr) expr).getMethodName());
+				if (decomposition != null && decomposition.isAvgColumn(columnIndex)) {// 分库返回的是SUM
+					aggrType = GroupByAggregator.SUM;
+				} else if (decomposition != null && decomposition.isDistinctCountColumn(columnIndex)) {
+					aggrType = GroupByAggregator.DISTINCT_COUNT;
 				}
-				clomunIndexAggrMap.put(i + 1, (SQLAggregateExpr) expr);
+				aggrColumnIndexList.add(columnIndex);
+				aggrTypeList.add(aggrType);
 			}
 		}
-		if (!MapUtils.isEmpty(clomunIndexAggrMap)) {
-			// 对分库的查询结果进行分组
-			SQLSelectGroupByClause groupBy = selectQuery.getGroupBy();
-			Map<Object/** group Key */
-			      , List<DragonShardingResultSet.RowRecord>> groupByMap = new HashMap<Object, List<DragonShardingResultSet.RowRecord>>();
-			if (groupBy == null) {// 如果没有group by，则所有都是同一组，key为任意值都可以，不一定要是*
-				groupByMap.put("*", totalRowRecords);
-			} else {
-				SQLExpr groupByColumnExpr = groupBy.getItems().get(0);
-				String groupByColumnLabel = getColumnLabel(groupByColumnExpr, fullColumnNameAliasMap);// group by只支持根据一个列，因此只取第一个
-				for (DragonShardingResultSet.RowRecord rowRecord : totalRowRecords) {
-					Object groupKey = rowRecord.getValue(groupByColumnLabel);// 把这一列当做group Key
-					List<DragonShardingResultSet.RowRecord> rowRecords = groupByMap.get(groupKey);
-					if (rowRecords == null) {
-						rowRecords = new ArrayList<DragonShardingResultSet.RowRecord>();
-						groupByMap.put(groupKey, rowRecords);
-					}
-					rowRecords.add(rowRecord);
-				}
-			}
-			// 针对各个分组应用聚合函数
-			List<DragonShardingResultSet.RowRecord> returnRecordList = new ArrayList<DragonShardingResultSet.RowRecord>();
-			for (List<DragonShardingResultSet.RowRecord> groupByList : groupByMap.values()) {
-				DragonShardingResultSet.RowRecord returnRecord = groupByList.get(0);// 以每个分组的第一条作为返回结果
-				for (Map.Entry<Integer, SQLAggregateExpr> aggregateExprEntry : clomunIndexAggrMap.entrySet()) {
-					Integer aggregateColumnIndex = aggregateExprEntry.getKey();
-					String columnLabel = metaData.getColumnLabel(aggregateColumnIndex);
-					SQLAggregateExpr sqlAggregateExpr = aggregateExprEntry.getValue();
-					final String methodName = sqlAggregateExpr.getMethodName();
-					for (int i = 1; i < groupByList.size(); i++) {
-						DragonShardingResultSet.RowRecord rowRecord = groupByList.get(i);
-						if ("COUNT".equals(methodName)) {
-							Long value = (Long) rowRecord.getValue(aggregateColumnIndex);
-							Long value1 = (Long) returnRecord.getValue(aggregateColumnIndex);
-							returnRecord.putColumnValue(aggregateColumnIndex, columnLabel, value1 + value);
-						}
-						if ("SUM".equals(methodName)) {
-							BigDecimal value = (BigDecimal) rowRecord.getValue(aggregateColumnIndex);
-							BigDecimal value1 = (BigDecimal) returnRecord.getValue(aggregateColumnIndex);
-							returnRecord.putColumnValue(aggregateColumnIndex, columnLabel, value1.add(value));
-						}
-						if ("MAX".equals(methodName)) {
-							Comparable value = (Comparable) rowRecord.getValue(aggregateColumnIndex);
-							Comparable value1 = (Comparable) returnRecord.getValue(aggregateColumnIndex);
-							if (value.compareTo(value1) > 0) {
-								returnRecord.putColumnValue(aggregateColumnIndex, columnLabel, value);
-							}
-						}
-						if ("MIN".equals(methodName)) {
-							Comparable value = (Comparable) rowRecord.getValue(aggregateColumnIndex);
-							Comparable value1 = (Comparable) returnRecord.getValue(aggregateColumnIndex);
-							if (value.compareTo(value1) < 0) {
-								returnRecord.putColumnValue(aggregateColumnIndex, columnLabel, value);
-							}
-						}
-						/*
-						 * if ("AVG".equals(methodName)){ Comparable value = (Comparable) rowRecord.getValue(aggregateColumnIndex);
-						 * Comparable value1 = (Comparable) returnRecord.getValue(aggregateColumnIndex); if(value.compareTo(value1)<0){
-						 * returnRecord.putColumnValue(aggregateColumnIndex,columnLabel,value); } }
-						 */
-					}
-
-				}
-				returnRecordList.add(returnRecord);
-				totalRowRecords.clear();
-				totalRowRecords.addAll(returnRecordList);
+		SQLSelectGroupByClause groupBy = selectQuery.getGroupBy();
+		if (aggrColumnIndexList.isEmpty() && groupBy == null) {
+			return null;
+		}
+		int[] avgColumnIndexes = new int[0];
+		int[] avgCountColumnIndexes = new int[0];
+		if (decomposition != null) {// AVG拆分出来的COUNT列
+			Map<Integer, Integer> avgCountColumnIndexMap = decomposition.getAvgCountColumnIndexMap();
+			avgColumnIndexes = new int[avgCountColumnIndexMap.size()];
+			avgCountColumnIndexes = new int[avgCountColumnIndexMap.size()];
+			int i = 0;
+			for (Map.Entry<Integer, Integer> entry : avgCountColumnIndexMap.entrySet()) {
+				avgColumnIndexes[i] = entry.getKey();
+				avgCountColumnIndexes[i] = entry.getValue();
+				aggrColumnIndexList.add(entry.getValue());
+				aggrTypeList.add(GroupByAggregator.COUNT);
+				i++;
 			}
-
 		}
+		int[] groupByColumnIndexes = new int[groupBy == null ? 0 : groupBy.getItems().size()];
+		for (int i = 0; i < groupByColumnIndexes.length; i++) {
+			groupByColumnIndexes[i] = resolveColumnIndex(metaData, groupBy.getItems().get(i), fullColumnNameAliasMap);
+		}
+		int[] aggrColumnIndexes = new int[aggrColumnIndexList.size()];
+		int[] aggrTypes = new int[aggrTypeList.size()];
+		for (int i = 0; i < aggrColumnIndexes.length; i++) {
+			aggrColumnIndexes[i] = aggrColumnIndexList.get(i);
+			aggrTypes[i] = aggrTypeList.get(i);
+		}
+		GroupByAggregator aggregator = new GroupByAggregator(groupByColumnIndexes, aggrColumnIndexes, aggrTypes);
+		aggregator.setAvgColumns(avgColumnIndexes, avgCountColumnIndexes);
+		return aggregator;
 	}
 
 	private void limit(MySqlSelectQueryBlock.Limit limit, long offset, long rowcount,
@@ -266,18 +406,12 @@ public class MysqlSelectResultMerger implements ResultMerger {
 		if (limit == null) {
 			return;
 		}
-		final long start = offset;
-		final long end = Math.min(offset + rowcount, totalRowRecords.size());
-		//// TODO: 2017/3/14 有什么更高效的方法，不需要这样频繁的拷贝 ，特别是在记录非常多的情况下
-		List<DragonShardingResultSet.RowRecord> resultList = new ArrayList<DragonShardingResultSet.RowRecord>();
-		for (int i = 0; i < totalRowRecords.size(); i++) {
-			if (i >= start && i < end) {
-				resultList.add(totalRowRecords.get(i));
-			}
-		}
-		totalRowRecords.clear();
-		totalRowRecords.addAll(resultList);
-
+		int size = totalRowRecords.size();
+		int start = (int) Math.min(Math.max(offset, 0), size);
+		int end = rowcount < 0 ? size : (int) Math.min(start + rowcount, size);
+		// 直接在原list上删除区间之外的记录，不需要拷贝
+		totalRowRecords.subList(end, size).clear();
+		totalRowRecords.subList(0, start).clear();
 	}
 
 	private String getColumnLabel(SQLExpr sqlExpr, Map<String, String> fullColumnNameAliasMap) {
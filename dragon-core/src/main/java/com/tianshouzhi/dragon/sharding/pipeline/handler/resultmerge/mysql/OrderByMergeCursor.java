@@ -0,0 +1,144 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonResultSetMetaData;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.RowRecordCursor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 多路归并：每个分库的结果集都已经按照order by排好序，使用小顶堆每次取出当前最小的一条记录，
+ * 内存中最多只保留每个分库的一条记录，不需要把所有结果加载到内存中再排序。
+ * 如果指定了limit，跳过前offset条记录，最多返回rowCount条
+ */
+public class OrderByMergeCursor implements RowRecordCursor {
+	private DragonShardingResultSet shardingResultSet;
+
+	private final List<ResultSet> realResultSetList;
+
+	private final Comparator<DragonShardingResultSet.RowRecord> comparator;
+
+	private PriorityQueue<ShardCursor> queue;
+
+	private long offset;
+
+	private long remaining;
+
+	/**
+	 * @param rowCount 小于0表示没有limit
+	 */
+	public OrderByMergeCursor(List<ResultSet> realResultSetList, Comparator<DragonShardingResultSet.RowRecord> comparator,
+	      long offset, long rowCount) {
+		this.realResultSetList = realResultSetList;
+		this.comparator = comparator;
+		this.offset = offset;
+		this.remaining = rowCount;
+	}
+
+	/**
+	 * RowRecord是DragonShardingResultSet的内部类，需要在DragonShardingResultSet创建之后设置
+	 */
+	public void setShardingResultSet(DragonShardingResultSet shardingResultSet) {
+		this.shardingResultSet = shardingResultSet;
+	}
+
+	@Override
+	public DragonShardingResultSet.RowRecord next() throws SQLException {
+		if (queue == null) {
+			init();
+		}
+		while (offset > 0) {
+			if (poll() == null) {
+				return null;
+			}
+			offset--;
+		}
+		if (remaining == 0) {
+			return null;
+		}
+		DragonShardingResultSet.RowRecord rowRecord = poll();
+		if (rowRecord != null && remaining > 0) {
+			remaining--;
+		}
+		return rowRecord;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		// 分库的结果集由DragonShardingResultSet负责关闭
+		if (queue != null) {
+			queue.clear();
+		}
+	}
+
+	// 读取每个分库的第一条记录
+	private void init() throws SQLException {
+		queue = new PriorityQueue<ShardCursor>(Math.max(realResultSetList.size(), 1), new Comparator<ShardCursor>() {
+			@Override
+			public int compare(ShardCursor o1, ShardCursor o2) {
+				int result = comparator.compare(o1.current, o2.current);
+				if (result != 0) {
+					return result;
+				}
+				return o1.shardIndex - o2.shardIndex;// 相等时按照分库顺序，保证每次的结果一致
+			}
+		});
+		for (int i = 0; i < realResultSetList.size(); i++) {
+			ShardCursor shardCursor = new ShardCursor(i, realResultSetList.get(i));
+			if (shardCursor.advance()) {
+				queue.add(shardCursor);
+			}
+		}
+	}
+
+	private DragonShardingResultSet.RowRecord poll() throws SQLException {
+		ShardCursor head = queue.poll();
+		if (head == null) {
+			return null;
+		}
+		DragonShardingResultSet.RowRecord rowRecord = head.current;
+		if (head.advance()) {
+			queue.add(head);
+		}
+		return rowRecord;
+	}
+
+	/**
+	 * 将真实结果集的当前行转换为RowRecord
+	 */
+	static DragonShardingResultSet.RowRecord readRow(DragonShardingResultSet shardingResultSet, ResultSet resultSet)
+	      throws SQLException {
+		int columnCount = ((DragonResultSetMetaData) shardingResultSet.getMetaData()).getTotalColumnCount();
+		DragonShardingResultSet.RowRecord rowRecord = shardingResultSet.new RowRecord();
+		for (int i = 1; i <= columnCount; i++) {
+			rowRecord.setValue(i, resultSet.getObject(i));
+		}
+		return rowRecord;
+	}
+
+	private class ShardCursor {
+		final int shardIndex;
+
+		final ResultSet resultSet;
+
+		DragonShardingResultSet.RowRecord current;
+
+		ShardCursor(int shardIndex, ResultSet resultSet) {
+			this.shardIndex = shardIndex;
+			this.resultSet = resultSet;
+		}
+
+		boolean advance() throws SQLException {
+			if (resultSet.next()) {
+				current = readRow(shardingResultSet, resultSet);
+				return true;
+			}
+			current = null;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.RowRecordCursor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 不需要排序和聚合时，按照分库的顺序依次读取每个分库的结果集，每次只从底层的结果集中读取一条记录。
+ * 配合fetchSize使用时，分库的记录按需从数据库中获取，不会在客户端缓存整个结果集
+ */
+public class SequentialMergeCursor implements RowRecordCursor {
+	private DragonShardingResultSet shardingResultSet;
+
+	private final List<ResultSet> realResultSetList;
+
+	private int currentIndex;
+
+	public SequentialMergeCursor(List<ResultSet> realResultSetList) {
+		this.realResultSetList = realResultSetList;
+	}
+
+	/**
+	 * RowRecord是DragonShardingResultSet的内部类，需要在DragonShardingResultSet创建之后设置
+	 */
+	public void setShardingResultSet(DragonShardingResultSet shardingResultSet) {
+		this.shardingResultSet = shardingResultSet;
+	}
+
+	@Override
+	public DragonShardingResultSet.RowRecord next() throws SQLException {
+		while (currentIndex < realResultSetList.size()) {
+			ResultSet resultSet = realResultSetList.get(currentIndex);
+			if (resultSet.next()) {
+				return OrderByMergeCursor.readRow(shardingResultSet, resultSet);
+			}
+			// 流式读取时，读完之后及时关闭，释放连接上的结果集
+			resultSet.close();
+			currentIndex++;
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		// 分库的结果集由DragonShardingResultSet负责关闭
+		currentIndex = realResultSetList.size();
+	}
+}
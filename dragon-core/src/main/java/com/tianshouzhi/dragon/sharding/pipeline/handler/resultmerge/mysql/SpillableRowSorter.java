@@ -0,0 +1,473 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.RowRecordCursor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 外部排序：内存中的记录超过maxInMemoryRows时，排序之后写入临时文件(一个有序的run)，
+ * 所有记录加入之后，对所有run和内存中剩余的记录做多路归并，读取时每个run只在内存中保留一条记录。
+ * run的数量超过maxMergeWays时，先把相邻的run归并为更大的run，避免同时打开过多的临时文件。
+ * comparator为null时不排序，按照加入的顺序依次读取。
+ * <p>
+ * 写入临时文件的列值需要能够序列化，Blob、Clob分别转换为byte[]、String，其他不能序列化的值直接报错
+ */
+public class SpillableRowSorter {
+	// ObjectOutputStream会缓存写过的对象，定期reset避免内存一直增长
+	private static final int RESET_INTERVAL = 1000;
+
+	// 多路归并时最多同时读取的run数(包括内存中剩余的记录)
+	private static final int MAX_MERGE_WAYS = 64;
+
+	private final Comparator<DragonShardingResultSet.RowRecord> comparator;
+
+	private final int maxInMemoryRows;
+
+	private final int columnCount;
+
+	private final int maxMergeWays;
+
+	private List<DragonShardingResultSet.RowRecord> buffer = new ArrayList<DragonShardingResultSet.RowRecord>();
+
+	private final List<Run> runs = new ArrayList<Run>();
+
+	private int rowCount;
+
+	/**
+	 * @param comparator 为null表示不需要排序
+	 * @param columnCount 每条记录的列数，包括对用户不可见的列
+	 */
+	public SpillableRowSorter(Comparator<DragonShardingResultSet.RowRecord> comparator, int maxInMemoryRows,
+	      int columnCount) {
+		this(comparator, maxInMemoryRows, columnCount, MAX_MERGE_WAYS);
+	}
+
+	SpillableRowSorter(Comparator<DragonShardingResultSet.RowRecord> comparator, int maxInMemoryRows, int columnCount,
+	      int maxMergeWays) {
+		if (maxInMemoryRows <= 0) {
+			throw new IllegalArgumentException("maxInMemoryRows must be positive");
+		}
+		if (maxMergeWays < 2) {
+			throw new IllegalArgumentException("maxMergeWays must be at least 2");
+		}
+		this.comparator = comparator;
+		this.maxInMemoryRows = maxInMemoryRows;
+		this.columnCount = columnCount;
+		this.maxMergeWays = maxMergeWays;
+	}
+
+	public void add(DragonShardingResultSet.RowRecord rowRecord) {
+		buffer.add(rowRecord);
+		rowCount++;
+		if (buffer.size() >= maxInMemoryRows) {
+			spill();
+		}
+	}
+
+	public boolean isSpilled() {
+		return !runs.isEmpty();
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * 没有写入临时文件时，直接返回内存中的记录(未排序)
+	 */
+	public List<DragonShardingResultSet.RowRecord> getInMemoryRows() {
+		return buffer;
+	}
+
+	/**
+	 * 出现异常，不再读取时删除临时文件
+	 */
+	public void discard() {
+		for (Run run : runs) {
+			run.close();
+		}
+		runs.clear();
+		buffer = null;
+	}
+
+	/**
+	 * 所有记录加入之后调用，返回按照comparator排好序的cursor，读取结束或者关闭时删除临时文件
+	 *
+	 * @param rowCount 小于0表示没有limit
+	 */
+	public SortedCursor sortedCursor(long offset, long rowCount) {
+		if (comparator != null) {
+			Collections.sort(buffer, comparator);
+		}
+		return new SortedCursor(offset, rowCount);
+	}
+
+	// 内存中的记录排好序之后写入一个新的临时文件
+	private void spill() {
+		if (comparator != null) {
+			Collections.sort(buffer, comparator);
+		}
+		Run run = Run.create(columnCount);
+		try {
+			for (DragonShardingResultSet.RowRecord rowRecord : buffer) {
+				run.write(rowRecord);
+			}
+			run.finishWrite();
+		} catch (IOException e) {
+			run.close();
+			throw new DragonShardException("spill merge result to temp file error", e);
+		} catch (RuntimeException e) {
+			run.close();
+			throw e;
+		}
+		runs.add(run);
+		buffer = new ArrayList<DragonShardingResultSet.RowRecord>();
+	}
+
+	/**
+	 * 最终归并时同时读取所有run和内存中的记录，run太多时，每maxMergeWays个相邻的run先归并为一个run，
+	 * 只归并相邻的run，不排序时也能保持加入的顺序
+	 */
+	private void mergeRuns(DragonShardingResultSet shardingResultSet) throws SQLException {
+		while (runs.size() + 1 > maxMergeWays) {
+			List<Run> mergedRuns = new ArrayList<Run>();
+			boolean success = false;
+			try {
+				for (int start = 0; start < runs.size(); start += maxMergeWays) {
+					List<Run> group = runs.subList(start, Math.min(start + maxMergeWays, runs.size()));
+					mergedRuns.add(group.size() == 1 ? group.get(0) : mergeRuns(group, shardingResultSet));
+				}
+				success = true;
+			} finally {
+				if (!success) {// 已经归并的run不在runs中，discard时不会被删除
+					for (Run mergedRun : mergedRuns) {
+						mergedRun.close();
+					}
+				}
+			}
+			runs.clear();
+			runs.addAll(mergedRuns);
+		}
+	}
+
+	private Run mergeRuns(List<Run> group, DragonShardingResultSet shardingResultSet) throws SQLException {
+		RunMerger merger = new RunMerger(group, null, shardingResultSet);
+		Run mergedRun = Run.create(columnCount);
+		try {
+			DragonShardingResultSet.RowRecord rowRecord;
+			while ((rowRecord = merger.poll()) != null) {
+				mergedRun.write(rowRecord);
+			}
+			mergedRun.finishWrite();
+		} catch (IOException e) {
+			mergedRun.close();
+			throw new SQLException("merge temp files error", e);
+		} catch (RuntimeException e) {
+			mergedRun.close();
+			throw e;
+		}
+		// 读取结束的run已经删除了临时文件，这里确保出现异常时也删除
+		for (Run run : group) {
+			run.close();
+		}
+		return mergedRun;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * 临时文件中的一个有序的run
+	 */
+	private static class Run {
+		final File file;
+
+		final int columnCount;
+
+		ObjectOutputStream out;
+
+		int rowCount;
+
+		ObjectInputStream in;
+
+		int readCount;
+
+		Run(File file, int columnCount) {
+			this.file = file;
+			this.columnCount = columnCount;
+		}
+
+		static Run create(int columnCount) {
+			Run run = null;
+			try {
+				run = new Run(File.createTempFile("dragon-merge-", ".run"), columnCount);
+				run.out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(run.file), 64 * 1024));
+				return run;
+			} catch (IOException e) {
+				if (run != null) {
+					run.close();
+				}
+				throw new DragonShardException("create merge temp file error", e);
+			}
+		}
+
+		void write(DragonShardingResultSet.RowRecord rowRecord) throws IOException {
+			for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
+				Object value = toSerializable(rowRecord.getValue(columnIndex), columnIndex);
+				try {
+					out.writeObject(value);
+				} catch (NotSerializableException e) {// 值本身实现了Serializable，但是包含不能序列化的字段
+					throw notSerializable(value, columnIndex, e);
+				}
+			}
+			rowCount++;
+			if (rowCount % RESET_INTERVAL == 0) {
+				out.reset();
+			}
+		}
+
+		void finishWrite() throws IOException {
+			ObjectOutputStream out = this.out;
+			this.out = null;
+			out.close();
+		}
+
+		/**
+		 * 读取结果集时getBlob、getClob都返回null，Blob、Clob的内容只能通过getBytes、getString读取，这里转换之后不影响读取
+		 */
+		private static Object toSerializable(Object value, int columnIndex) {
+			try {
+				if (value instanceof Blob) {
+					Blob blob = (Blob) value;
+					return blob.getBytes(1, (int) blob.length());
+				}
+				if (value instanceof Clob) {
+					Clob clob = (Clob) value;
+					return clob.getSubString(1, (int) clob.length());
+				}
+			} catch (SQLException e) {
+				throw new DragonShardException("read value of column " + columnIndex + " error", e);
+			}
+			if (value == null || value instanceof Serializable) {
+				return value;
+			}
+			throw notSerializable(value, columnIndex, null);
+		}
+
+		private static DragonShardException notSerializable(Object value, int columnIndex, Exception cause) {
+			return new DragonShardException("value of column " + columnIndex + " (" + value.getClass().getName()
+			      + ") can't be written to merge temp file, set dragon.merge.maxInMemoryRows to 0 to merge in memory",
+			      cause);
+		}
+
+		DragonShardingResultSet.RowRecord read(DragonShardingResultSet shardingResultSet) throws SQLException {
+			if (readCount == rowCount) {
+				close();
+				return null;
+			}
+			try {
+				if (in == null) {
+					in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+				}
+				DragonShardingResultSet.RowRecord rowRecord = shardingResultSet.new RowRecord();
+				for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
+					rowRecord.setValue(columnIndex, in.readObject());
+				}
+				readCount++;
+				return rowRecord;
+			} catch (IOException e) {
+				throw new SQLException("read merge result from temp file error:" + file, e);
+			} catch (ClassNotFoundException e) {
+				throw new SQLException("read merge result from temp file error:" + file, e);
+			}
+		}
+
+		void close() {
+			closeQuietly(out);
+			out = null;
+			closeQuietly(in);
+			in = null;
+			file.delete();
+		}
+	}
+
+	/**
+	 * 多个run(以及内存中剩余的记录)的多路归并，每个run只在内存中保留一条记录
+	 */
+	private class RunMerger {
+		private final PriorityQueue<RunCursor> queue;
+
+		private final DragonShardingResultSet shardingResultSet;
+
+		/**
+		 * @param inMemoryRows 内存中剩余的记录，在所有run之后，为null表示没有
+		 */
+		RunMerger(List<Run> runList, List<DragonShardingResultSet.RowRecord> inMemoryRows,
+		      DragonShardingResultSet shardingResultSet) throws SQLException {
+			this.shardingResultSet = shardingResultSet;
+			// 不排序时按照run的顺序读取，内存中的记录最后读取
+			this.queue = new PriorityQueue<RunCursor>(runList.size() + 1, new Comparator<RunCursor>() {
+				@Override
+				public int compare(RunCursor o1, RunCursor o2) {
+					if (comparator != null) {
+						int result = comparator.compare(o1.current, o2.current);
+						if (result != 0) {
+							return result;
+						}
+					}
+					return o1.runIndex - o2.runIndex;
+				}
+			});
+			for (int i = 0; i < runList.size(); i++) {
+				addCursor(new RunCursor(i, runList.get(i), null));
+			}
+			if (inMemoryRows != null) {
+				addCursor(new RunCursor(runList.size(), null, inMemoryRows));
+			}
+		}
+
+		private void addCursor(RunCursor runCursor) throws SQLException {
+			if (runCursor.advance()) {
+				queue.add(runCursor);
+			}
+		}
+
+		DragonShardingResultSet.RowRecord poll() throws SQLException {
+			RunCursor head = queue.poll();
+			if (head == null) {
+				return null;
+			}
+			DragonShardingResultSet.RowRecord rowRecord = head.current;
+			if (head.advance()) {
+				queue.add(head);
+			}
+			return rowRecord;
+		}
+
+		void clear() {
+			queue.clear();
+		}
+
+		private class RunCursor {
+			final int runIndex;
+
+			// 为null表示内存中剩余的记录
+			final Run run;
+
+			final List<DragonShardingResultSet.RowRecord> rows;
+
+			int rowIndex;
+
+			DragonShardingResultSet.RowRecord current;
+
+			RunCursor(int runIndex, Run run, List<DragonShardingResultSet.RowRecord> rows) {
+				this.runIndex = runIndex;
+				this.run = run;
+				this.rows = rows;
+			}
+
+			boolean advance() throws SQLException {
+				if (run != null) {
+					current = run.read(shardingResultSet);
+				} else {
+					current = rowIndex < rows.size() ? rows.get(rowIndex++) : null;
+				}
+				return current != null;
+			}
+		}
+	}
+
+	/**
+	 * 对所有run和内存中的记录做多路归并，跳过前offset条记录，最多返回rowCount条
+	 */
+	public class SortedCursor implements RowRecordCursor {
+		private DragonShardingResultSet shardingResultSet;
+
+		private RunMerger merger;
+
+		private long offset;
+
+		private long remaining;
+
+		private boolean closed;
+
+		private SortedCursor(long offset, long rowCount) {
+			this.offset = offset;
+			this.remaining = rowCount;
+		}
+
+		/**
+		 * 从临时文件中读取的RowRecord需要通过DragonShardingResultSet创建
+		 */
+		public void setShardingResultSet(DragonShardingResultSet shardingResultSet) {
+			this.shardingResultSet = shardingResultSet;
+		}
+
+		@Override
+		public DragonShardingResultSet.RowRecord next() throws SQLException {
+			if (closed) {
+				return null;
+			}
+			if (merger == null) {
+				mergeRuns(shardingResultSet);
+				merger = new RunMerger(runs, buffer, shardingResultSet);
+			}
+			while (offset > 0) {
+				if (poll() == null) {
+					return null;
+				}
+				offset--;
+			}
+			if (remaining == 0) {
+				close();
+				return null;
+			}
+			DragonShardingResultSet.RowRecord rowRecord = poll();
+			if (rowRecord != null && remaining > 0) {
+				remaining--;
+			}
+			return rowRecord;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			discard();
+			if (merger != null) {
+				merger.clear();
+			}
+		}
+
+		private DragonShardingResultSet.RowRecord poll() throws SQLException {
+			return merger.poll();
+		}
+	}
+}
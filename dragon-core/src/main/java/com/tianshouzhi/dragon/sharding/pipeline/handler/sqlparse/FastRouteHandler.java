@@ -0,0 +1,260 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+import com.tianshouzhi.dragon.common.util.CollectionUtils;
+import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
+import com.tianshouzhi.dragon.sharding.pipeline.Handler;
+import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 简单sql的快速路由，只做词法分析，不生成语法树，支持以下两种形式：<br/>
+ * 1、SELECT col1, col2 ... FROM table WHERE shard_col = ?<br/>
+ * 2、INSERT INTO table (col1, col2 ...) VALUES (?, ? ...)，只能插入一行<br/>
+ * 其中分区字段必须是逻辑表唯一的分区字段，值可以是占位符或者字面量。路由到的一定是一个真实表，生成真实sql时只需要替换表名，
+ * 执行结果也不需要合并。
+ * <p>
+ * 无法确定是这两种形式的sql(例如有函数、子查询、注释、表名带库名、批处理)，交给SqlParseHandler完整解析
+ */
+public class FastRouteHandler implements Handler {
+
+	@Override
+	public void invoke(HandlerContext context) throws SQLException {
+		if (MapUtils.isNotEmpty(context.getHintMap())) {
+			return;
+		}
+		DragonShardingStatement shardingStatement = context.getShardingStatement();
+		if (!CollectionUtils.isEmpty(shardingStatement.getBatchExecuteInfoList())) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		String sql = shardingStatement.getSql();
+		SimpleSqlLexer lexer = new SimpleSqlLexer(sql);
+		lexer.next();
+		FastRoute fastRoute = null;
+		if (lexer.isWord("SELECT")) {
+			fastRoute = matchSelect(context, lexer);
+		} else if (lexer.isWord("INSERT")) {
+			fastRoute = matchInsert(context, lexer);
+		}
+		if (fastRoute == null) {
+			return;
+		}
+		LogicTable logicTable = fastRoute.logicTable;
+		Map<String, Object> routeParams = Collections.singletonMap(fastRoute.shardColumn, fastRoute.shardValue);
+		String realDBName = logicTable.getRealDBName(routeParams);
+		String realTBName = logicTable.getRealTBName(routeParams);
+		SqlRouteInfo sqlRouteInfo = new SqlRouteInfo(logicTable, realDBName, realTBName);
+		sqlRouteInfo.setSql(sql.substring(0, fastRoute.tableStart) + realTBName + sql.substring(fastRoute.tableEnd));
+		if (context.isPrepare() && context.getParameters() != null) {
+			sqlRouteInfo.getParameters().putAll(context.getParameters());
+		}
+		Map<String, SqlRouteInfo> tbRouteMap = new HashMap<String, SqlRouteInfo>(1);
+		tbRouteMap.put(realTBName, sqlRouteInfo);
+		context.getSqlRouteMap().put(realDBName, tbRouteMap);
+		context.setIsQuery(fastRoute.isQuery);
+		context.setFastRouted(true);
+		context.setSqlParseTimeMillis(System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * SELECT item [, item] ... FROM table WHERE shard_col = value，item只能是*、列名、列名 [AS] 别名
+	 */
+	private FastRoute matchSelect(HandlerContext context, SimpleSqlLexer lexer) throws SQLException {
+		lexer.next();
+		while (true) {
+			if (lexer.isSymbol('*')) {
+				lexer.next();
+			} else if (lexer.getType() == SimpleSqlLexer.WORD && !lexer.isWord("FROM")) {
+				lexer.next();
+				if (lexer.isWord("AS")) {
+					lexer.next();
+					if (lexer.getType() != SimpleSqlLexer.WORD) {
+						return null;
+					}
+					lexer.next();
+				} else if (lexer.getType() == SimpleSqlLexer.WORD && !lexer.isWord("FROM")) {
+					lexer.next();
+				}
+			} else {
+				return null;
+			}
+			if (!lexer.isSymbol(',')) {
+				break;
+			}
+			lexer.next();
+		}
+		if (!lexer.isWord("FROM") || lexer.next() != SimpleSqlLexer.WORD) {
+			return null;
+		}
+		FastRoute fastRoute = new FastRoute(context.getLogicTable(lexer.getText()), lexer.getStart(), lexer.getEnd(), true);
+		if (fastRoute.logicTable == null) {
+			return null;
+		}
+		lexer.next();
+		if (!lexer.isWord("WHERE") || lexer.next() != SimpleSqlLexer.WORD) {
+			return null;
+		}
+		String column = lexer.getText();
+		lexer.next();
+		if (!lexer.isSymbol('=')) {
+			return null;
+		}
+		lexer.next();
+		if (!fastRoute.setShardValue(column, readValue(context, lexer, 0))) {
+			return null;
+		}
+		return lexer.next() == SimpleSqlLexer.EOF ? fastRoute : null;
+	}
+
+	/**
+	 * INSERT INTO table (col [, col] ...) VALUES (value [, value] ...)
+	 */
+	private FastRoute matchInsert(HandlerContext context, SimpleSqlLexer lexer) throws SQLException {
+		lexer.next();
+		if (!lexer.isWord("INTO") || lexer.next() != SimpleSqlLexer.WORD) {
+			return null;
+		}
+		FastRoute fastRoute = new FastRoute(context.getLogicTable(lexer.getText()), lexer.getStart(), lexer.getEnd(), false);
+		if (fastRoute.logicTable == null) {
+			return null;
+		}
+		lexer.next();
+		if (!lexer.isSymbol('(')) {
+			return null;
+		}
+		int shardColumnIndex = -1;
+		String shardColumn = null;
+		int columnCount = 0;
+		do {
+			if (lexer.next() != SimpleSqlLexer.WORD) {
+				return null;
+			}
+			if (fastRoute.logicTable.isShardColumn(lexer.getText())) {
+				if (shardColumn != null) {// 有多个分区字段
+					return null;
+				}
+				shardColumn = lexer.getText();
+				shardColumnIndex = columnCount;
+			}
+			columnCount++;
+			lexer.next();
+		} while (lexer.isSymbol(','));
+		if (!lexer.isSymbol(')') || shardColumn == null) {
+			return null;
+		}
+		lexer.next();
+		if (!lexer.isWord("VALUES") && !lexer.isWord("VALUE")) {
+			return null;
+		}
+		lexer.next();
+		if (!lexer.isSymbol('(')) {
+			return null;
+		}
+		int valueCount = 0;
+		int paramCount = 0;
+		do {
+			lexer.next();
+			if (valueCount == shardColumnIndex) {
+				if (!fastRoute.setShardValue(shardColumn, readValue(context, lexer, paramCount))) {
+					return null;
+				}
+			} else if (!isSimpleValue(context, lexer)) {
+				return null;
+			}
+			if (lexer.getType() == SimpleSqlLexer.PARAM) {
+				paramCount++;
+			}
+			valueCount++;
+			lexer.next();
+		} while (lexer.isSymbol(','));
+		if (!lexer.isSymbol(')') || valueCount != columnCount) {
+			return null;
+		}
+		return lexer.next() == SimpleSqlLexer.EOF ? fastRoute : null;
+	}
+
+	// 非分区字段的值只需要确定是简单的值，不需要读取
+	private boolean isSimpleValue(HandlerContext context, SimpleSqlLexer lexer) {
+		switch (lexer.getType()) {
+		case SimpleSqlLexer.PARAM:
+			return context.isPrepare();
+		case SimpleSqlLexer.NUMBER:
+		case SimpleSqlLexer.STRING:
+			return true;
+		case SimpleSqlLexer.WORD:
+			return lexer.isWord("NULL") || lexer.isWord("TRUE") || lexer.isWord("FALSE");
+		case SimpleSqlLexer.SYMBOL:
+			return lexer.isSymbol('-') && lexer.next() == SimpleSqlLexer.NUMBER;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 读取当前位置的值：占位符返回对应的参数值，字面量返回解析之后的值，其他情况返回null
+	 *
+	 * @param paramCount 当前位置之前占位符的数量
+	 */
+	private Object readValue(HandlerContext context, SimpleSqlLexer lexer, int paramCount) {
+		switch (lexer.getType()) {
+		case SimpleSqlLexer.PARAM:
+			Map<Integer, DragonPrepareStatement.ParamSetting> parameters = context.getParameters();
+			if (!context.isPrepare() || parameters == null) {
+				return null;
+			}
+			DragonPrepareStatement.ParamSetting paramSetting = parameters.get(paramCount + 1);
+			return paramSetting == null ? null : paramSetting.values[0];
+		case SimpleSqlLexer.NUMBER:
+			return SqlParameterizer.parseNumber(lexer.getText());
+		case SimpleSqlLexer.STRING:
+			return lexer.getStringValue();
+		case SimpleSqlLexer.SYMBOL:
+			if (lexer.isSymbol('-') && lexer.next() == SimpleSqlLexer.NUMBER) {
+				return SqlParameterizer.parseNumber("-" + lexer.getText());
+			}
+			return null;
+		default:
+			return null;
+		}
+	}
+
+	private static class FastRoute {
+		private final LogicTable logicTable;
+
+		// 逻辑表名在sql中的位置
+		private final int tableStart;
+
+		private final int tableEnd;
+
+		private final boolean isQuery;
+
+		private String shardColumn;
+
+		private Object shardValue;
+
+		FastRoute(LogicTable logicTable, int tableStart, int tableEnd, boolean isQuery) {
+			this.logicTable = logicTable;
+			this.tableStart = tableStart;
+			this.tableEnd = tableEnd;
+			this.isQuery = isQuery;
+		}
+
+		// 只有逻辑表的分库分表规则都只使用了这一个分区字段时，才能根据这一个值确定路由
+		boolean setShardValue(String column, Object value) {
+			if (value == null || !logicTable.isOnlyShardColumn(column)) {
+				return false;
+			}
+			this.shardColumn = column;
+			this.shardValue = value;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+/**
+ * FastRouteHandler使用的词法分析器，只识别简单sql中出现的token：标识符/关键字、数字、字符串、?占位符和单个字符的符号。
+ * 遇到注释、反引号、多字符运算符等无法识别的内容时返回UNSUPPORTED，由调用者交给完整的解析流程处理。
+ * 按需逐个读取token，不生成token列表
+ */
+class SimpleSqlLexer {
+	static final int EOF = 0;
+
+	static final int WORD = 1;
+
+	static final int NUMBER = 2;
+
+	static final int STRING = 3;
+
+	static final int PARAM = 4;
+
+	static final int SYMBOL = 5;
+
+	static final int UNSUPPORTED = 6;
+
+	private final String sql;
+
+	private int position;
+
+	private int type;
+
+	private int start;
+
+	private int end;
+
+	// STRING类型的token转义之后的值
+	private String stringValue;
+
+	SimpleSqlLexer(String sql) {
+		this.sql = sql;
+	}
+
+	int next() {
+		int length = sql.length();
+		while (position < length && Character.isWhitespace(sql.charAt(position))) {
+			position++;
+		}
+		start = position;
+		stringValue = null;
+		if (position >= length) {
+			return token(EOF, position);
+		}
+		char c = sql.charAt(position);
+		if (c == '\'' || c == '"') {
+			StringBuilder value = new StringBuilder();
+			int stringEnd = SqlParameterizer.readString(sql, position, value);
+			if (stringEnd < 0) {
+				return token(UNSUPPORTED, position);
+			}
+			stringValue = value.toString();
+			return token(STRING, stringEnd);
+		}
+		if (SqlParameterizer.isDigit(c)) {
+			int numberEnd = SqlParameterizer.readNumber(sql, position);
+			return numberEnd < 0 ? token(UNSUPPORTED, position) : token(NUMBER, numberEnd);
+		}
+		if (SqlParameterizer.isIdentifierPart(c)) {
+			int wordEnd = position + 1;
+			while (wordEnd < length && SqlParameterizer.isIdentifierPart(sql.charAt(wordEnd))) {
+				wordEnd++;
+			}
+			return token(WORD, wordEnd);
+		}
+		if (c == '?') {
+			return token(PARAM, position + 1);
+		}
+		if (c == ',' || c == '(' || c == ')' || c == '*' || c == '-') {
+			return token(SYMBOL, position + 1);
+		}
+		if (c == '=') {// 排除==、=>等
+			if (position + 1 < length && "=<>!".indexOf(sql.charAt(position + 1)) >= 0) {
+				return token(UNSUPPORTED, position);
+			}
+			return token(SYMBOL, position + 1);
+		}
+		return token(UNSUPPORTED, position);
+	}
+
+	private int token(int type, int end) {
+		this.type = type;
+		this.end = end;
+		this.position = end;
+		return type;
+	}
+
+	int getType() {
+		return type;
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	int getEnd() {
+		return end;
+	}
+
+	String getText() {
+		return sql.substring(start, end);
+	}
+
+	String getStringValue() {
+		return stringValue;
+	}
+
+	boolean isWord(String keyword) {
+		return type == WORD && end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+	}
+
+	boolean isSymbol(char symbol) {
+		return type == SYMBOL && sql.charAt(start) == symbol;
+	}
+}
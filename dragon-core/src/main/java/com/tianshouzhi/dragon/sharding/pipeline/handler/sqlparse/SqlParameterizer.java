@@ -0,0 +1,348 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 普通Statement的sql参数化：只做词法分析，把sql中的字符串与数字字面量替换为?，提取出来的字面量作为参数，
+ * 替换后的sql作为指纹，形状相同只是字面量不同的sql可以共用一个解析好的语法树，与PreparedStatement一样命中缓存。
+ * <p>
+ * 以下字面量不替换，保留在指纹中：select列表中的(会影响列名)，order by、group by中的(表示列的位置)，
+ * DATE '...'这类带类型的字面量。遇到无法安全替换的语法时(例如CAST、字符集前缀、sql中已经有?)返回null，不做参数化
+ */
+public abstract class SqlParameterizer {
+	// 这些关键字之后的+、-是正负号，而不是加减运算符
+	private static final Set<String> OPERATOR_KEYWORDS = new HashSet<String>(Arrays.asList("SELECT", "WHERE", "AND",
+	      "OR", "NOT", "XOR", "BETWEEN", "IN", "IS", "LIKE", "REGEXP", "RLIKE", "LIMIT", "OFFSET", "CASE", "WHEN",
+	      "THEN", "ELSE", "ON", "HAVING", "SET", "VALUES", "VALUE", "BY", "DIV", "MOD", "INTERVAL", "ESCAPE", "RETURN"));
+
+	// 这些关键字之后的字符串是带类型的字面量，不能替换为?
+	private static final Set<String> TYPED_LITERAL_KEYWORDS = new HashSet<String>(Arrays.asList("DATE", "TIME",
+	      "TIMESTAMP"));
+
+	// 出现这些关键字时，其中的数字是类型的长度、精度，不做参数化
+	private static final Set<String> UNSUPPORTED_KEYWORDS = new HashSet<String>(Arrays.asList("CAST", "CONVERT"));
+
+	// 遇到这些关键字时order by、group by结束
+	private static final Set<String> ORDER_BY_END_KEYWORDS = new HashSet<String>(Arrays.asList("LIMIT", "HAVING",
+	      "UNION", "FOR", "LOCK", "WITH", "PROCEDURE", "INTO"));
+
+	private static final int OPERATOR = 0;// 运算符、左括号、逗号，以及sql的开始
+
+	private static final int KEYWORD = 1;// OPERATOR_KEYWORDS中的关键字
+
+	private static final int OPERAND = 2;// 列名、字面量、右括号等
+
+	private static final int STRING = 3;// 字符串字面量
+
+	/**
+	 * @return 不能参数化时返回null
+	 */
+	public static ParameterizedSql parameterize(String sql) {
+		int length = sql.length();
+		StringBuilder builder = new StringBuilder(length);
+		Map<Integer, DragonPrepareStatement.ParamSetting> parameters = new HashMap<Integer, DragonPrepareStatement.ParamSetting>();
+		int lastToken = OPERATOR;
+		String lastWord = null;
+		int depth = 0;
+		// 还没有结束的select列表所在的括号深度，select列表中的子查询结束之后回到外层的select列表
+		Deque<Integer> selectListDepths = new ArrayDeque<Integer>();
+		int orderByDepth = -1;// 在order by、group by中时，为所在的括号深度
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {// 连续的空白字符合并为一个空格
+				if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+					builder.append(' ');
+				}
+				i++;
+				continue;
+			}
+			// 注释原样保留
+			if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+				int end = sql.indexOf("*/", i + 2);
+				end = end < 0 ? length : end + 2;
+				builder.append(sql, i, end);
+				i = end;
+				continue;
+			}
+			if (c == '#' || (c == '-' && i + 2 < length && sql.charAt(i + 1) == '-'
+			      && Character.isWhitespace(sql.charAt(i + 2)))) {
+				int end = sql.indexOf('\n', i);
+				end = end < 0 ? length : end;
+				builder.append(sql, i, end);
+				i = end;
+				continue;
+			}
+			if (c == '`') {
+				int end = sql.indexOf('`', i + 1);
+				end = end < 0 ? length : end + 1;
+				builder.append(sql, i, end);
+				i = end;
+				lastToken = OPERAND;
+				continue;
+			}
+			if (c == '\'' || c == '"') {
+				if (i > 0 && isIdentifierPart(sql.charAt(i - 1))) {// X'..'、N'..'、_utf8'..'
+					return null;
+				}
+				if (lastToken == STRING) {// 相邻的字符串会被mysql拼接
+					return null;
+				}
+				StringBuilder value = new StringBuilder();
+				int end = readString(sql, i, value);
+				if (end < 0) {
+					return null;
+				}
+				boolean typed = lastToken == OPERAND && lastWord != null && TYPED_LITERAL_KEYWORDS.contains(lastWord);
+				if (typed || !selectListDepths.isEmpty()) {
+					builder.append(sql, i, end);
+				} else {
+					addParameter(builder, parameters, DragonPrepareStatement.ParamType.setString, value.toString());
+				}
+				i = end;
+				lastToken = STRING;
+				lastWord = null;
+				continue;
+			}
+			boolean signed = (c == '-' || c == '+') && lastToken != OPERAND && lastToken != STRING
+			      && isNumberStart(sql, i + 1);
+			if (signed || ((c == '.' || isDigit(c)) && isNumberStart(sql, i))) {
+				int start = i;
+				int end = readNumber(sql, signed ? i + 1 : i);
+				if (end < 0) {
+					return null;
+				}
+				if (!selectListDepths.isEmpty() || orderByDepth >= 0) {
+					builder.append(sql, start, end);
+				} else {
+					Object value = parseNumber(sql.substring(start, end));
+					if (value == null) {
+						return null;
+					}
+					DragonPrepareStatement.ParamType paramType = value instanceof Long ? DragonPrepareStatement.ParamType.setLong
+					      : value instanceof Double ? DragonPrepareStatement.ParamType.setDouble
+					            : DragonPrepareStatement.ParamType.setBigDecimal;
+					addParameter(builder, parameters, paramType, value);
+				}
+				i = end;
+				lastToken = OPERAND;
+				lastWord = null;
+				continue;
+			}
+			if (isIdentifierPart(c) || c == '@') {
+				int end = i + 1;
+				while (end < length && (isIdentifierPart(sql.charAt(end)) || sql.charAt(end) == '@')) {
+					end++;
+				}
+				builder.append(sql, i, end);
+				String word = end - i <= 12 ? sql.substring(i, end).toUpperCase() : null;
+				i = end;
+				if (word != null && UNSUPPORTED_KEYWORDS.contains(word)) {
+					return null;
+				}
+				if ("SELECT".equals(word)) {
+					selectListDepths.push(depth);
+				} else if ("FROM".equals(word) && !selectListDepths.isEmpty() && selectListDepths.peek() == depth) {
+					selectListDepths.pop();
+				} else if ("BY".equals(word) && ("ORDER".equals(lastWord) || "GROUP".equals(lastWord))) {
+					orderByDepth = depth;
+				} else if (word != null && ORDER_BY_END_KEYWORDS.contains(word) && orderByDepth == depth) {
+					orderByDepth = -1;
+				}
+				lastWord = word;
+				lastToken = word != null && OPERATOR_KEYWORDS.contains(word) ? KEYWORD : OPERAND;
+				continue;
+			}
+			if (c == '?') {// 已经有占位符，参数的位置无法确定
+				return null;
+			}
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				while (!selectListDepths.isEmpty() && selectListDepths.peek() >= depth) {// 没有from的子查询
+					selectListDepths.pop();
+				}
+				if (orderByDepth == depth) {
+					orderByDepth = -1;
+				}
+				depth--;
+			}
+			builder.append(c);
+			i++;
+			lastToken = c == ')' ? OPERAND : OPERATOR;
+			lastWord = null;
+		}
+		return new ParameterizedSql(builder.toString(), parameters);
+	}
+
+	private static void addParameter(StringBuilder builder, Map<Integer, DragonPrepareStatement.ParamSetting> parameters,
+	      DragonPrepareStatement.ParamType paramType, Object value) {
+		builder.append('?');
+		parameters.put(parameters.size() + 1, new DragonPrepareStatement.ParamSetting(paramType, new Object[] { value }));
+	}
+
+	/**
+	 * 读取从start开始的字符串字面量，转义之后的值放入value
+	 *
+	 * @return 字符串结束之后的位置，没有结束的引号时返回-1
+	 */
+	static int readString(String sql, int start, StringBuilder value) {
+		char quote = sql.charAt(start);
+		int i = start + 1;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '\\' && i + 1 < sql.length()) {
+				char next = sql.charAt(i + 1);
+				switch (next) {
+				case '0':
+					value.append('\0');
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'Z':
+					value.append('\032');
+					break;
+				case '%':
+				case '_':// like中的通配符转义，mysql保留反斜杠
+					value.append('\\').append(next);
+					break;
+				default:
+					value.append(next);
+				}
+				i += 2;
+				continue;
+			}
+			if (c == quote) {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {// 两个连续的引号表示一个引号
+					value.append(quote);
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			value.append(c);
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return 数字结束之后的位置，数字之后紧跟着标识符的字符(例如0x1F、1abc)时返回-1
+	 */
+	static int readNumber(String sql, int start) {
+		int length = sql.length();
+		int i = start;
+		while (i < length && isDigit(sql.charAt(i))) {
+			i++;
+		}
+		if (i < length && sql.charAt(i) == '.') {
+			i++;
+			while (i < length && isDigit(sql.charAt(i))) {
+				i++;
+			}
+		}
+		if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+			int exponent = i + 1;
+			if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+				exponent++;
+			}
+			if (exponent < length && isDigit(sql.charAt(exponent))) {
+				i = exponent;
+				while (i < length && isDigit(sql.charAt(i))) {
+					i++;
+				}
+			}
+		}
+		if (i < length && isIdentifierPart(sql.charAt(i))) {
+			return -1;
+		}
+		return i;
+	}
+
+	// 整数返回Long，超出范围或者是小数时返回BigDecimal，科学计数法返回Double
+	public static Object parseNumber(String literal) {
+		String number = literal.startsWith("+") ? literal.substring(1) : literal;
+		try {
+			if (number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+				return Double.valueOf(number);
+			}
+			if (number.indexOf('.') >= 0) {
+				return new BigDecimal(number);
+			}
+			try {
+				return Long.valueOf(number);
+			} catch (NumberFormatException e) {
+				return new BigDecimal(number);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	// 数字的开始：数字，或者小数点之后是数字，且前面不是标识符(例如t1、a.1)
+	private static boolean isNumberStart(String sql, int index) {
+		if (index >= sql.length()) {
+			return false;
+		}
+		if (index > 0) {
+			char previous = sql.charAt(index - 1);
+			if (isIdentifierPart(previous) || previous == '.' || previous == '@') {
+				return false;
+			}
+		}
+		char c = sql.charAt(index);
+		if (isDigit(c)) {
+			return true;
+		}
+		return c == '.' && index + 1 < sql.length() && isDigit(sql.charAt(index + 1));
+	}
+
+	static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/**
+	 * 参数化之后的sql与提取出来的参数，参数的位置从1开始
+	 */
+	public static class ParameterizedSql {
+		private final String sql;
+
+		private final Map<Integer, DragonPrepareStatement.ParamSetting> parameters;
+
+		ParameterizedSql(String sql, Map<Integer, DragonPrepareStatement.ParamSetting> parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public Map<Integer, DragonPrepareStatement.ParamSetting> getParameters() {
+			return parameters;
+		}
+	}
+}
@@ -1,20 +1,14 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
 
-import com.alibaba.druid.sql.ast.SQLStatement;
-import com.alibaba.druid.sql.parser.SQLParserUtils;
-import com.alibaba.druid.sql.parser.SQLStatementParser;
-import com.alibaba.druid.util.JdbcConstants;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
 import com.tianshouzhi.dragon.common.util.MapUtils;
-import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.Handler;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
 
 import java.sql.SQLException;
-import java.util.List;
 
 /**
  * 解析出sql中的参数和参数值(主要是找出分区字段和分区字段的值)
@@ -24,40 +18,54 @@ public class SqlParseHandler implements Handler {
 
 	@Override
 	public void invoke(HandlerContext context) throws SQLException {
+		if (context.isFastRouted()) {// 简单sql已经快速路由，不需要解析
+			return;
+		}
 		if (MapUtils.isEmpty(context.getHintMap())) {// 说明没有hint
 			DragonShardingStatement dragonShardingStatement = context.getShardingStatement();
 			String sql = dragonShardingStatement.getSql();
 
+			boolean cacheable = dragonShardingStatement instanceof DragonShardingPrepareStatement;
+			if (!cacheable) {
+				// 普通Statement的sql中的字面量替换为?之后，与PreparedStatement一样缓存语法树，字面量作为参数
+				SqlParameterizer.ParameterizedSql parameterizedSql = SqlParameterizer.parameterize(sql);
+				if (parameterizedSql != null) {
+					cacheable = true;
+					sql = parameterizedSql.getSql();
+					if (!parameterizedSql.getParameters().isEmpty()) {
+						context.setParameterizedParameters(parameterizedSql.getParameters());
+					}
+				}
+			}
 			boolean hitCache = true;
-			SQLStatement sqlStatement = null;
-			if (dragonShardingStatement instanceof DragonShardingPrepareStatement) {
-				sqlStatement = context.getDragonShardingConfig().getCache(sql);// 先从cache中获取，如果没有，则解析
-				if (sqlStatement == null) {
+			SqlParsedResult sqlParsedResult = null;
+			if (cacheable) {
+				sqlParsedResult = context.getDragonShardingConfig().getCache(sql);// 先从cache中获取，如果没有，则解析
+				if (sqlParsedResult == null) {
 					hitCache = false;
-					sqlStatement = parseSqlAST(context, sql);
-					context.getDragonShardingConfig().putCache(sql, sqlStatement); // 解析完成之后，翻入cache中
+					sqlParsedResult = parseSql(context, sql);
+					// 解析完成之后，翻入cache中，之后多个线程共享，语法树不能再修改
+					context.getDragonShardingConfig().putCache(sql, sqlParsedResult);
 				}
-			} else {// 对于statement类型不做cache，因为每次构造的语法树都是不同的，cache效率低
+				context.setSqlCacheKey(sql);
+			} else {// 无法参数化的statement不做cache，因为每次构造的语法树都是不同的，cache效率低
 				hitCache = false;
-				sqlStatement = parseSqlAST(context, sql);
-				LOGGER.warn("sql:'{"+sql+"}' is not prepared,will not cache the parsed ast");
+				sqlParsedResult = parseSql(context, sql);
+				// 每次执行都会走到这里，只在debug时输出，并且开启debug才拼接日志
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("sql:'" + sql + "' can't be parameterized,will not cache the parsed ast");
+				}
 			}
 			context.setHitSqlParserCache(hitCache);
-			context.setParsedSqlStatement(sqlStatement);
+			context.setSqlParsedResult(sqlParsedResult);
+			context.setParsedSqlStatement(sqlParsedResult.getSqlStatement());
 		}
 	}
 
-	private SQLStatement parseSqlAST(HandlerContext context, String sql) {
-		SQLStatement sqlStatement;
+	private SqlParsedResult parseSql(HandlerContext context, String sql) {
 		long start = System.currentTimeMillis();
-		SQLStatementParser sqlStatementParser = SQLParserUtils.createSQLStatementParser(sql, JdbcConstants.MYSQL);
-		List<SQLStatement> sqlStatements = sqlStatementParser.parseStatementList();
-		if (sqlStatements.size() == 1) {
-			sqlStatement = sqlStatements.get(0);
-		} else {
-			throw new DragonShardException("only support one sql!!");
-		}
+		SqlParsedResult sqlParsedResult = SqlParsedResult.parse(sql);
 		context.setSqlParseTimeMillis(System.currentTimeMillis() - start);
-		return sqlStatement;
+		return sqlParsedResult;
 	}
 }
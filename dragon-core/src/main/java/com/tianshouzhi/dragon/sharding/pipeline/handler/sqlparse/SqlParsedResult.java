@@ -1,8 +1,256 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
 
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumberExpr;
+import com.alibaba.druid.sql.ast.statement.SQLExprTableSource;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
+import com.alibaba.druid.sql.dialect.mysql.visitor.MySqlASTVisitorAdapter;
+import com.alibaba.druid.sql.parser.SQLParserUtils;
+import com.alibaba.druid.sql.parser.SQLStatementParser;
+import com.alibaba.druid.util.JdbcConstants;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.AggregateDecomposition;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlTemplate;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
- * Created by tianshouzhi on 2017/11/6.
+ * 解析之后的sql：语法树、语法树输出的sql，以及sql中需要替换的token(逻辑表名、limit中的数字)的位置。
+ * <p>
+ * 对象创建之后不再修改(聚合函数的拆分结果除外，只是缓存)，语法树也只能读取，不能修改，所以可以放入缓存中被多个线程同时使用。
+ * 生成真实sql时，在sql中按照token的位置拼接上替换之后的内容即可，不需要修改语法树
  */
-public interface SqlParsedResult {
+public final class SqlParsedResult {
+	// sql中不会出现的字符，用于在输出的sql中标记token的位置
+	private static final String MARKER = "\u0000";
+
+	private final SQLStatement sqlStatement;
+
+	// 语法树输出的sql，与原始sql的格式可能不同
+	private final String sql;
+
+	// 按照在sql中的位置排序
+	private final List<Token> tokens;
+
+	// 路由到多个表时拆分聚合函数的结果，第一次需要拆分时生成，多个线程同时生成时结果相同，保留任意一个即可
+	private volatile AggregateDecomposition aggregateDecomposition;
+
+	private SqlParsedResult(SQLStatement sqlStatement, String sql, List<Token> tokens) {
+		this.sqlStatement = sqlStatement;
+		this.sql = sql;
+		this.tokens = Collections.unmodifiableList(tokens);
+	}
+
+	public static SqlParsedResult parse(String sql) {
+		SQLStatementParser sqlStatementParser = SQLParserUtils.createSQLStatementParser(sql, JdbcConstants.MYSQL);
+		List<SQLStatement> sqlStatements = sqlStatementParser.parseStatementList();
+		if (sqlStatements.size() != 1) {
+			throw new DragonShardException("only support one sql!!");
+		}
+		return parse(sqlStatements.get(0));
+	}
+
+	/**
+	 * 计算token的位置时会临时修改语法树，只能在语法树被共享之前调用
+	 */
+	public static SqlParsedResult parse(SQLStatement sqlStatement) {
+		final List<SQLIdentifierExpr> tableExprs = new ArrayList<SQLIdentifierExpr>();
+		sqlStatement.accept(new MySqlASTVisitorAdapter() {
+			@Override
+			public boolean visit(SQLExprTableSource x) {
+				if (x.getExpr() instanceof SQLIdentifierExpr) {
+					tableExprs.add((SQLIdentifierExpr) x.getExpr());
+				}
+				return true;
+			}
+		});
+		MySqlSelectQueryBlock.Limit limit = null;
+		if (sqlStatement instanceof SQLSelectStatement
+		      && ((SQLSelectStatement) sqlStatement).getSelect().getQuery() instanceof MySqlSelectQueryBlock) {
+			limit = ((MySqlSelectQueryBlock) ((SQLSelectStatement) sqlStatement).getSelect().getQuery()).getLimit();
+		}
+		SQLExpr offset = limit != null && isNumber(limit.getOffset()) ? limit.getOffset() : null;
+		SQLExpr rowCount = limit != null && isNumber(limit.getRowCount()) ? limit.getRowCount() : null;
+
+		List<Token> markedTokens = new ArrayList<Token>();
+		String markedSql;
+		try {
+			for (SQLIdentifierExpr tableExpr : tableExprs) {
+				String tableName = tableExpr.getName();
+				tableExpr.setName(mark(markedTokens, TokenType.TABLE, tableName));
+			}
+			if (offset != null) {
+				limit.setOffset(new SQLIdentifierExpr(mark(markedTokens, TokenType.LIMIT_OFFSET, offset.toString())));
+			}
+			if (rowCount != null) {
+				limit.setRowCount(new SQLIdentifierExpr(mark(markedTokens, TokenType.LIMIT_ROW_COUNT, rowCount.toString())));
+			}
+			markedSql = sqlStatement.toString();
+		} finally {
+			for (int i = 0; i < tableExprs.size() && i < markedTokens.size(); i++) {
+				tableExprs.get(i).setName(markedTokens.get(i).text);
+			}
+			if (offset != null) {
+				limit.setOffset(offset);
+			}
+			if (rowCount != null) {
+				limit.setRowCount(rowCount);
+			}
+		}
+		return unmark(sqlStatement, markedSql, markedTokens);
+	}
+
+	private static boolean isNumber(SQLExpr expr) {
+		return expr instanceof SQLIntegerExpr || expr instanceof SQLNumberExpr;
+	}
+
+	// 标记的内容为MARKER+序号+MARKER，text为token原来的内容
+	private static String mark(List<Token> markedTokens, TokenType type, String text) {
+		markedTokens.add(new Token(type, -1, -1, text));
+		return MARKER + (markedTokens.size() - 1) + MARKER;
+	}
+
+	// 将标记还原为token原来的内容，同时计算每个token在还原之后的sql中的位置
+	private static SqlParsedResult unmark(SQLStatement sqlStatement, String markedSql, List<Token> markedTokens) {
+		TreeMap<Integer, Integer> positionIndexMap = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < markedTokens.size(); i++) {
+			int position = markedSql.indexOf(MARKER + i + MARKER);
+			if (position < 0) {
+				throw new DragonShardException("can't find '" + markedTokens.get(i).text + "' in sql:" + markedSql);
+			}
+			positionIndexMap.put(position, i);
+		}
+		StringBuilder sql = new StringBuilder(markedSql.length());
+		List<Token> tokens = new ArrayList<Token>(markedTokens.size());
+		int segmentStart = 0;
+		for (Map.Entry<Integer, Integer> entry : positionIndexMap.entrySet()) {
+			int index = entry.getValue();
+			Token markedToken = markedTokens.get(index);
+			sql.append(markedSql, segmentStart, entry.getKey());
+			int start = sql.length();
+			sql.append(markedToken.text);
+			tokens.add(new Token(markedToken.type, start, sql.length(), markedToken.text));
+			segmentStart = entry.getKey() + (MARKER + index + MARKER).length();
+		}
+		sql.append(markedSql, segmentStart, markedSql.length());
+		return new SqlParsedResult(sqlStatement, sql.toString(), tokens);
+	}
+
+	/**
+	 * 生成分表sql的模板
+	 *
+	 * @param tableLogicTables 与{@link #getTableTokens()}一一对应，为null的表名保持不变
+	 * @param replacements 其他需要替换的token，例如修改limit中的数字，可以为null
+	 */
+	public SqlTemplate makeSqlTemplate(LogicTable[] tableLogicTables, Map<TokenType, String> replacements) {
+		List<String> segments = new ArrayList<String>();
+		List<LogicTable> logicTables = new ArrayList<LogicTable>();
+		StringBuilder segment = new StringBuilder(sql.length());
+		int segmentStart = 0;
+		int tableIndex = 0;
+		for (Token token : tokens) {
+			segment.append(sql, segmentStart, token.start);
+			segmentStart = token.end;
+			if (token.type == TokenType.TABLE) {
+				LogicTable logicTable = tableLogicTables[tableIndex++];
+				if (logicTable != null) {
+					segments.add(segment.toString());
+					logicTables.add(logicTable);
+					segment.setLength(0);
+					continue;
+				}
+			}
+			String replacement = replacements == null ? null : replacements.get(token.type);
+			segment.append(replacement != null ? replacement : token.text);
+		}
+		segment.append(sql, segmentStart, sql.length());
+		segments.add(segment.toString());
+		return new SqlTemplate(segments.toArray(new String[segments.size()]),
+		      logicTables.toArray(new LogicTable[logicTables.size()]));
+	}
+
+	/**
+	 * 只能读取，不能修改
+	 */
+	public SQLStatement getSqlStatement() {
+		return sqlStatement;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public AggregateDecomposition getAggregateDecomposition() {
+		return aggregateDecomposition;
+	}
+
+	public void setAggregateDecomposition(AggregateDecomposition aggregateDecomposition) {
+		this.aggregateDecomposition = aggregateDecomposition;
+	}
+
+	public List<Token> getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * sql中所有的表名，按照在sql中出现的顺序
+	 */
+	public List<Token> getTableTokens() {
+		List<Token> tableTokens = new ArrayList<Token>(tokens.size());
+		for (Token token : tokens) {
+			if (token.type == TokenType.TABLE) {
+				tableTokens.add(token);
+			}
+		}
+		return tableTokens;
+	}
+
+	public enum TokenType {
+		TABLE, LIMIT_OFFSET, LIMIT_ROW_COUNT
+	}
+
+	/**
+	 * sql中[start,end)位置的token
+	 */
+	public static final class Token {
+		private final TokenType type;
+
+		private final int start;
+
+		private final int end;
+
+		private final String text;
+
+		Token(TokenType type, int start, int end, String text) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+
+		public TokenType getType() {
+			return type;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
 
+		public String getText() {
+			return text;
+		}
+	}
 }
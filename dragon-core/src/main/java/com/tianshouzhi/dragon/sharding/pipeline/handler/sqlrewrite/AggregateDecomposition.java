@@ -0,0 +1,69 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParsedResult;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * sql路由到多个表时，不能直接合并的聚合函数在分库sql中被拆分，合并结果时需要根据这里的信息还原：
+ *
+ * <pre>
+ * AVG(x)            分库sql中改为SUM(x)，并在select列表最后追加COUNT(x)，合并时计算SUM/COUNT
+ * COUNT(DISTINCT x) 分库sql中改为x，并将x追加到group by中，每个分库返回去重后的值，合并时再去重计数
+ * </pre>
+ *
+ * 追加的列对用户不可见，列的位置都从1开始。拆分的结果只与sql有关，生成之后不再修改，缓存在原始sql的解析结果中
+ */
+public class AggregateDecomposition {
+	// AVG所在列的位置->追加的COUNT列的位置
+	private Map<Integer, Integer> avgCountColumnIndexMap = new TreeMap<Integer, Integer>();
+
+	// COUNT(DISTINCT x)所在列的位置
+	private Set<Integer> distinctCountColumnIndexes = new HashSet<Integer>();
+
+	// 追加的列数
+	private int hiddenColumnCount;
+
+	// 拆分之后的sql的解析结果，用于生成分库sql
+	private SqlParsedResult decomposedParsedResult;
+
+	public void addAvgColumn(int avgColumnIndex, int countColumnIndex) {
+		avgCountColumnIndexMap.put(avgColumnIndex, countColumnIndex);
+		hiddenColumnCount++;
+	}
+
+	public void addDistinctCountColumn(int columnIndex) {
+		distinctCountColumnIndexes.add(columnIndex);
+	}
+
+	public Map<Integer, Integer> getAvgCountColumnIndexMap() {
+		return avgCountColumnIndexMap;
+	}
+
+	public boolean isAvgColumn(int columnIndex) {
+		return avgCountColumnIndexMap.containsKey(columnIndex);
+	}
+
+	public boolean isDistinctCountColumn(int columnIndex) {
+		return distinctCountColumnIndexes.contains(columnIndex);
+	}
+
+	public int getHiddenColumnCount() {
+		return hiddenColumnCount;
+	}
+
+	public SqlParsedResult getDecomposedParsedResult() {
+		return decomposedParsedResult;
+	}
+
+	public void setDecomposedParsedResult(SqlParsedResult decomposedParsedResult) {
+		this.decomposedParsedResult = decomposedParsedResult;
+	}
+
+	public boolean isEmpty() {
+		return avgCountColumnIndexMap.isEmpty() && distinctCountColumnIndexes.isEmpty();
+	}
+}
@@ -9,6 +9,7 @@ import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.jdbc.datasource.DragonShardingConfig;
 import com.tianshouzhi.dragon.sharding.pipeline.Handler;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql.MysqlDeleteStatementRewriter;
@@ -29,22 +30,27 @@ public class SqlRewriteHandler implements Handler {
 
 	@Override
 	public void invoke(HandlerContext context) throws SQLException {
+		if (context.isFastRouted()) {// 快速路由时已经生成了真实sql
+			return;
+		}
 		long start = System.currentTimeMillis();
 		SQLStatement sqlStatement = context.getParsedSqlStatement();
 		boolean isQuery = false;
 		if (sqlStatement != null) {// 已经对SQLStatement进行过parse
-			if (sqlStatement instanceof SQLInsertStatement) {
-				new MysqlInsertStatementRewriter().rewrite(context);
-			} else if (sqlStatement instanceof SQLUpdateStatement) {
-				new MysqlUpdateStatementRewriter().rewrite(context);
-			} else if (sqlStatement instanceof SQLDeleteStatement) {
-				new MysqlDeleteStatementRewriter().rewrite(context);
-			} else if (sqlStatement instanceof SQLSelectStatement) {
-				new MysqlSelectStatementRewriter().rewrite(context);
-				isQuery = true;
+			isQuery = sqlStatement instanceof SQLSelectStatement;
+			// 语法树被缓存的sql，重写结果也可能被缓存了，直接根据参数值计算路由
+			String sqlCacheKey = context.getSqlCacheKey();
+			DragonShardingConfig dragonShardingConfig = context.getDragonShardingConfig();
+			SqlRewritePlan rewritePlan = sqlCacheKey == null ? null : dragonShardingConfig.getRewritePlan(sqlCacheKey);
+			if (rewritePlan != null && rewritePlan.isValid(context)) {
+				rewritePlan.rewrite(context);
 			} else {
-				throw new DragonShardException("only support insert、delete、update、select statement，current sql："
-				      + context.getShardingStatement().getSql());
+				SqlRewriter sqlRewriter = createSqlRewriter(context, sqlStatement);
+				sqlRewriter.rewrite(context);
+				rewritePlan = sqlRewriter.getRewritePlan();
+				if (sqlCacheKey != null && rewritePlan != null) {
+					dragonShardingConfig.putRewritePlan(sqlCacheKey, rewritePlan);
+				}
 			}
 		}
 		context.setIsQuery(isQuery);
@@ -58,6 +64,23 @@ public class SqlRewriteHandler implements Handler {
 		 */
 	}
 
+	private static SqlRewriter createSqlRewriter(HandlerContext context, SQLStatement sqlStatement) {
+		if (sqlStatement instanceof SQLInsertStatement) {
+			return new MysqlInsertStatementRewriter();
+		}
+		if (sqlStatement instanceof SQLUpdateStatement) {
+			return new MysqlUpdateStatementRewriter();
+		}
+		if (sqlStatement instanceof SQLDeleteStatement) {
+			return new MysqlDeleteStatementRewriter();
+		}
+		if (sqlStatement instanceof SQLSelectStatement) {
+			return new MysqlSelectStatementRewriter();
+		}
+		throw new DragonShardException("only support insert、delete、update、select statement，current sql："
+		      + context.getShardingStatement().getSql());
+	}
+
 	private static String makeRouteDebugInfo(Map<String, Map<String, SqlRouteInfo>> sqlRouteMap) {
 		StringBuilder sb = new StringBuilder();
 		Iterator<Map.Entry<String, Map<String, SqlRouteInfo>>> iterator = sqlRouteMap.entrySet().iterator();
@@ -0,0 +1,77 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一条预编译(或者参数化之后的)sql的重写结果：分区字段对应的参数位置、主维度表的路由规则，以及每个真实表的sql。
+ * 重写结果与参数值无关时才会生成，缓存之后再次执行这条sql只需要取出参数值计算路由，再根据真实表名取出sql，
+ * 不需要再遍历语法树
+ */
+public class SqlRewritePlan {
+	// sql中包含的所有逻辑表，逻辑表的配置通过DragonShardingConfig.replaceLogicTable被替换之后，这个plan就失效了
+	private final List<LogicTable> logicTables;
+
+	// 分区字段的值，占位符记录为参数的位置
+	private final SqlRouteParams routeParams;
+
+	private final SqlTemplate sqlTemplate;
+
+	private final Map<String, String> fullColumnNameAliasMap;
+
+	// 主维度表的真实表名->真实sql，第一次路由到这个表时生成
+	private final ConcurrentHashMap<String, String> realSqlMap = new ConcurrentHashMap<String, String>();
+
+	public SqlRewritePlan(List<LogicTable> logicTables, SqlRouteParams routeParams, SqlTemplate sqlTemplate,
+	      Map<String, String> fullColumnNameAliasMap) {
+		this.logicTables = new ArrayList<LogicTable>(logicTables);
+		this.routeParams = routeParams;
+		this.sqlTemplate = sqlTemplate;
+		this.fullColumnNameAliasMap = fullColumnNameAliasMap;
+	}
+
+	/**
+	 * sql中的逻辑表配置没有被替换时可以使用。替换配置时会清空plan的缓存，
+	 * 但是替换之前已经开始重写的sql仍然可能把引用旧配置的plan放入缓存，所以使用之前还需要检查
+	 */
+	public boolean isValid(HandlerContext context) throws SQLException {
+		for (LogicTable logicTable : logicTables) {
+			if (context.getLogicTable(logicTable.getLogicTableName()) != logicTable) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void rewrite(HandlerContext context) {
+		Map<Integer, DragonPrepareStatement.ParamSetting> parameters = context.getParameters();
+		Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = context.getSqlRouteMap();
+		routeParams.resolve(parameters).fillRouteMap(sqlRouteMap, logicTables, context.getShardingStatement().getSql());
+		context.setFullColumnNameAliasMap(fullColumnNameAliasMap);
+		for (Map<String, SqlRouteInfo> dbRouteMap : sqlRouteMap.values()) {
+			for (SqlRouteInfo sqlRouteInfo : dbRouteMap.values()) {
+				sqlRouteInfo.setSql(getRealSql(sqlRouteInfo));
+				if (parameters != null) {
+					sqlRouteInfo.getParameters().putAll(parameters);
+				}
+			}
+		}
+	}
+
+	private String getRealSql(SqlRouteInfo sqlRouteInfo) {
+		String primaryRealTBName = sqlRouteInfo.getPrimaryRealTBName();
+		String realSql = realSqlMap.get(primaryRealTBName);
+		if (realSql == null) {
+			realSql = sqlTemplate.render(sqlRouteInfo.getPrimaryLogicTable().parseRealTBIndex(primaryRealTBName));
+			realSqlMap.putIfAbsent(primaryRealTBName, realSql);
+		}
+		return realSql;
+	}
+}
@@ -9,4 +9,9 @@ import java.sql.SQLException;
  */
 public interface SqlRewriter {
 	public void rewrite(HandlerContext context) throws SQLException;
+
+	/**
+	 * rewrite之后调用，重写结果可以缓存时返回，否则返回null
+	 */
+	public SqlRewritePlan getRewritePlan();
 }
@@ -1,7 +1,11 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
 
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 import com.tianshouzhi.dragon.sharding.route.LogicTable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,7 +18,10 @@ import java.util.Map;
  * 上例中假设user.id是分区维度，那么user_account则不能指定分区条件，但是可以指定分区之外的其他条件，例如加上条件:<br/>
  * user_account.money>0<br/>
  *
- * 在sql重写时，主维度表确定的分表，也是其他表对应的分表，例如user确定分表为user_0000，则user_account表对应的分表就是user_account_0000
+ * 在sql重写时，主维度表确定的分表，也是其他表对应的分表，例如user确定分表为user_0000，则user_account表对应的分表就是user_account_0000<br/>
+ *
+ * 分区字段的值是占位符时，解析sql时记录为{@link ParamRef}，执行时通过{@link #resolve(Map)}替换为参数值，
+ * 这样解析的结果可以在{@link SqlRewritePlan}中缓存
  */
 public class SqlRouteParams {// 优化，只允许存在一个主维度表
 	private LogicTable primaryLogicTable;
@@ -54,6 +61,112 @@ public class SqlRouteParams {// 优化，只允许存在一个主维度表
 		}
 	}
 
+	/**
+	 * 将占位符替换为本次执行的参数值，返回新的路由参数，当前对象不会被修改
+	 */
+	public SqlRouteParams resolve(Map<Integer, DragonPrepareStatement.ParamSetting> parameters) {
+		SqlRouteParams resolved = new SqlRouteParams();
+		resolved.primaryLogicTable = primaryLogicTable;
+		if (binaryRouteParamsMap != null) {
+			resolved.binaryRouteParamsMap = new HashMap<String, Object>(binaryRouteParamsMap.size());
+			for (Map.Entry<String, Object> entry : binaryRouteParamsMap.entrySet()) {
+				resolved.binaryRouteParamsMap.put(entry.getKey(), resolveValue(entry.getValue(), parameters));
+			}
+		}
+		if (sqlInListRouteParamsMap != null) {
+			resolved.sqlInListRouteParamsMap = new HashMap<String, List<Object>>(sqlInListRouteParamsMap.size());
+			for (Map.Entry<String, List<Object>> entry : sqlInListRouteParamsMap.entrySet()) {
+				List<Object> values = new ArrayList<Object>(entry.getValue().size());
+				for (Object value : entry.getValue()) {
+					values.add(resolveValue(value, parameters));
+				}
+				resolved.sqlInListRouteParamsMap.put(entry.getKey(), values);
+			}
+		}
+		return resolved;
+	}
+
+	private static Object resolveValue(Object value, Map<Integer, DragonPrepareStatement.ParamSetting> parameters) {
+		if (!(value instanceof ParamRef)) {
+			return value;
+		}
+		int index = ((ParamRef) value).getIndex();
+		if (parameters == null) {
+			throw new DragonShardException("no params set for sql");
+		}
+		DragonPrepareStatement.ParamSetting paramSetting = parameters.get(index);
+		if (paramSetting == null) {
+			throw new DragonShardException("no param set for parameterIndex " + index);
+		}
+		return paramSetting.values[0];
+	}
+
+	/**
+	 * 根据路由参数生成路由表，没有路由参数时路由到所有分库分表
+	 *
+	 * @param logicTables sql中包含的所有逻辑表，没有路由参数时第一个作为主维度表
+	 */
+	public void fillRouteMap(Map<String, Map<String, SqlRouteInfo>> sqlRouteMap, List<LogicTable> logicTables,
+	      String sql) {
+		// where partition=xxx的情况
+		if (MapUtils.isNotEmpty(binaryRouteParamsMap) && MapUtils.isEmpty(sqlInListRouteParamsMap)) {
+			addRouteInfo(sqlRouteMap, binaryRouteParamsMap);
+		}
+		// where id in(x,x,x)的情况，支持与binary条件联合确定路由规则
+		if (MapUtils.isNotEmpty(sqlInListRouteParamsMap)) {
+			for (Map.Entry<String, List<Object>> entry : sqlInListRouteParamsMap.entrySet()) {
+				String shardColumn = entry.getKey();
+				for (Object value : entry.getValue()) {
+					HashMap<String, Object> routeConditionMap = new HashMap<String, Object>();
+					routeConditionMap.put(shardColumn, value);
+					if (MapUtils.isNotEmpty(binaryRouteParamsMap)) {
+						routeConditionMap.putAll(binaryRouteParamsMap);
+					}
+					addRouteInfo(sqlRouteMap, routeConditionMap);
+				}
+			}
+		}
+
+		// 没有路由参数，表示需要将sql分发到所有表，构造路由到所有分库的参数
+		if (MapUtils.isEmpty(sqlRouteMap)) {
+			fillRouteAllMap(sqlRouteMap, logicTables, sql);
+		}
+	}
+
+	// 根据主维度表生成路由规则
+	private void addRouteInfo(Map<String, Map<String, SqlRouteInfo>> sqlRouteMap, Map<String, Object> shardConditionMap) {
+		String realDBName = primaryLogicTable.getRealDBName(shardConditionMap);
+		String primaryTBName = primaryLogicTable.getRealTBName(shardConditionMap);
+		Map<String, SqlRouteInfo> dbRouteMap = sqlRouteMap.get(realDBName);
+		if (dbRouteMap == null) {
+			dbRouteMap = new HashMap<String, SqlRouteInfo>();
+			sqlRouteMap.put(realDBName, dbRouteMap);
+		}
+		// 主要用于处理id in (?,?,?)多个值路由到同一个real table的情况，只需要添加一次即可
+		if (!dbRouteMap.containsKey(primaryTBName)) {
+			dbRouteMap.put(primaryTBName, new SqlRouteInfo(primaryLogicTable, realDBName, primaryTBName));
+		}
+	}
+
+	private static void fillRouteAllMap(Map<String, Map<String, SqlRouteInfo>> sqlRouteMap,
+	      List<LogicTable> logicTables, String sql) {
+		for (LogicTable logicTable : logicTables) { // check每个逻辑表都应该配置了真实库与表的映射关系
+			if (MapUtils.isEmpty(logicTable.getRealDBTBMap())) {// 全局路由必须要配置 realDBTBMap
+				throw new DragonShardException("logic table '" + logicTable.getLogicTableName()
+				      + "' don't config realDBTBMap ,so sql '" + sql + "' must contains route condition!!!");
+			}
+		}
+		LogicTable primaryLogicTable = logicTables.get(0);// 因为没有分区条件，随机选择一个表作为主维度表，这里选择第一个
+		for (Map.Entry<String, List<String>> realDBTBListEntry : primaryLogicTable.getRealDBTBMap().entrySet()) {
+			String realDBName = realDBTBListEntry.getKey();
+			Map<String, SqlRouteInfo> realTbRouteInfoMap = new HashMap<String, SqlRouteInfo>();
+			for (String realTBName : realDBTBListEntry.getValue()) {
+				realTbRouteInfoMap.put(realTBName, new SqlRouteInfo(primaryLogicTable, realDBName, realTBName));
+			}
+			sqlRouteMap.put(realDBName, realTbRouteInfoMap);
+		}
+	}
+
 	public LogicTable getPrimaryLogicTable() {
 		return primaryLogicTable;
 	}
@@ -65,4 +178,24 @@ public class SqlRouteParams {// 优化，只允许存在一个主维度表
 	public Map<String, List<Object>> getSqlInListRouteParamsMap() {
 		return sqlInListRouteParamsMap;
 	}
+
+	/**
+	 * 分区字段的值是占位符，index为参数的位置(从1开始)
+	 */
+	public static final class ParamRef {
+		private final int index;
+
+		public ParamRef(int index) {
+			this.index = index;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public String toString() {
+			return "?" + index;
+		}
+	}
 }
@@ -0,0 +1,41 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+
+/**
+ * 分表sql的模板：sql按照其中的逻辑表名切分为多个片段，生成某个真实表的sql时，只需要在片段之间拼接上真实表名，
+ * 不需要再修改、遍历语法树。模板是不可变的，可以被多个线程同时使用
+ */
+public class SqlTemplate {
+	// segments.length == logicTables.length + 1，logicTables[i]位于segments[i]与segments[i+1]之间
+	private final String[] segments;
+
+	private final LogicTable[] logicTables;
+
+	private final int length;
+
+	public SqlTemplate(String[] segments, LogicTable[] logicTables) {
+		if (segments.length != logicTables.length + 1) {
+			throw new IllegalArgumentException("segments.length must be logicTables.length+1");
+		}
+		this.segments = segments;
+		this.logicTables = logicTables;
+		int length = 0;
+		for (String segment : segments) {
+			length += segment.length();
+		}
+		this.length = length;
+	}
+
+	/**
+	 * @param primaryTBIndex 主维度表的真实表的编号，sql中的每个逻辑表都替换为这个编号对应的真实表
+	 */
+	public String render(Long primaryTBIndex) {
+		StringBuilder sql = new StringBuilder(length + logicTables.length * 16);
+		sql.append(segments[0]);
+		for (int i = 0; i < logicTables.length; i++) {
+			sql.append(logicTables[i].format(primaryTBIndex)).append(segments[i + 1]);
+		}
+		return sql.toString();
+	}
+}
@@ -7,15 +7,17 @@ import com.alibaba.druid.sql.ast.statement.*;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.common.util.CollectionUtils;
-import com.tianshouzhi.dragon.common.util.MapUtils;
 import com.tianshouzhi.dragon.common.util.StringUtils;
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
-import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParameterizer;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParsedResult;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewritePlan;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewriter;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteParams;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlTemplate;
 import com.tianshouzhi.dragon.sharding.route.LogicTable;
 
 import java.sql.SQLException;
@@ -28,32 +30,51 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
     protected HandlerContext context;
     protected DragonShardingStatement dragonShardingStatement;
     protected SQLStatement sqlAst;
+    /**sqlAst对应的解析结果，用于生成真实sql*/
+    protected SqlParsedResult sqlParsedResult;
     protected String originSql;
     protected boolean isPrepare=false;//是否预编译,即是否实现了PreparedStatement接口
     protected  Map<Integer, DragonPrepareStatement.ParamSetting> originParameters;//isPrepare=true的情况下，传入的参数
-    protected int currentParamterIndex =0;
+    /**占位符在sql中的位置(从1开始)，第一次使用时从语法树中计算*/
+    private Map<SQLVariantRefExpr, Integer> placeholderIndexes;
     protected List<Object> batchExecuteInfoList;
     protected List<LogicTable> parsedLogicTableList;
     protected Map<String,String> aliasTableNameMap=new HashMap<String, String>();
-    protected List<SQLIdentifierExpr> sqlExprTableSourceList=new ArrayList<SQLIdentifierExpr>();
     /**这个list中会包含查询语句，或者子查询语句中的所有where条件*/
     protected List<SQLExpr> whereConditionList;
     protected SqlRouteParams sqlRouteParams=new SqlRouteParams();
+    /**需要覆盖原始参数的位置与参数，例如limit ?,? 下推到分库时需要修改参数值*/
+    protected Map<Integer, DragonPrepareStatement.ParamSetting> overrideParameters=new HashMap<Integer, DragonPrepareStatement.ParamSetting>();
+    /**生成真实sql时需要替换的token，例如limit中的数字下推到分库时需要修改*/
+    protected Map<SqlParsedResult.TokenType, String> tokenReplacements=new EnumMap<SqlParsedResult.TokenType, String>(SqlParsedResult.TokenType.class);
+    /**可以缓存的重写结果，在makeupSqlRouteInfoSqls中生成*/
+    private SqlRewritePlan rewritePlan;
     @Override
     public void rewrite(HandlerContext context) throws SQLException {
         this.context=context;
         this.dragonShardingStatement = context.getShardingStatement();
         this.sqlAst=context.getParsedSqlStatement();
+        this.sqlParsedResult=context.getSqlParsedResult();
         this.originSql=dragonShardingStatement.getSql();
         this.batchExecuteInfoList = dragonShardingStatement.getBatchExecuteInfoList();
-        SQLStatement parsedSqlStatement = context.getParsedSqlStatement();
-        if(dragonShardingStatement instanceof DragonShardingPrepareStatement){
-            this.isPrepare=true;
-            this.originParameters = ((DragonShardingPrepareStatement) dragonShardingStatement).getParameters();
-        }
+        //普通Statement的sql中的字面量被替换成了占位符时，也按照PreparedStatement处理
+        this.isPrepare=context.isPrepare();
+        this.originParameters = context.getParameters();
         doRewrite(context);
     }
 
+    @Override
+    public SqlRewritePlan getRewritePlan() {
+        return rewritePlan;
+    }
+
+    /**
+     * 重写的结果与参数值无关时，才能缓存重写结果，例如select中limit下推到分库时，需要根据路由到的表的数量修改sql
+     */
+    protected boolean isPlanable(){
+        return overrideParameters.isEmpty() && tokenReplacements.isEmpty();
+    }
+
     protected DragonPrepareStatement.ParamSetting getParamSetting(int paramterIndex){
         if(!isPrepare){
             throw new DragonShardException("current sql is not PreparedStatement!!!");
@@ -67,6 +88,20 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
         return originParameters.get(paramterIndex);
     }
 
+    /**
+     * 占位符对应的参数位置，根据占位符在语法树中出现的顺序确定，不受其他位置(例如函数参数、having)中的占位符影响
+     */
+    protected int getParamIndex(SQLExpr placeholder){
+        if(placeholderIndexes==null){
+            placeholderIndexes=DragonDruidASTUtil.getPlaceholderIndexes(sqlAst);
+        }
+        Integer index = placeholderIndexes.get(placeholder);
+        if(index==null){
+            throw new DragonShardException("can't find placeholder '"+placeholder+"' in sql:"+originSql);
+        }
+        return index;
+    }
+
     protected abstract void doRewrite(HandlerContext context)  throws SQLException;
 
     protected void parseLogicTableList(SQLTableSource tableSource) throws SQLException {
@@ -80,7 +115,6 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
             if(StringUtils.isBlank(alias)){
                 alias=((SQLExprTableSource) tableSource).getExpr().toString();
             }
-            sqlExprTableSourceList.add((SQLIdentifierExpr) ((SQLExprTableSource) tableSource).getExpr());
             aliasTableNameMap.put(alias,logicTableName);
             return;
         }
@@ -91,8 +125,6 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
                 //join 查询的两个表，不能是其他类型的表
                 throw new UnsupportedOperationException("join query only support simple table!");
             }
-            sqlExprTableSourceList.add((SQLIdentifierExpr) ((SQLExprTableSource) left).getExpr());
-            sqlExprTableSourceList.add((SQLIdentifierExpr) ((SQLExprTableSource) right).getExpr());
 
             String leftLogicTableName = ((SQLExprTableSource) left).getExpr().toString();
             LogicTable leftLogicTable = context.getLogicTable(leftLogicTableName);
@@ -121,6 +153,23 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
         throw new DragonShardException("don't support sql:"+originSql);
 
     }
+    /**
+     * 分区字段的字面量值，与FastRouteHandler读取的值一致：字符串去掉引号，数字解析为Long/BigDecimal，
+     * 同一条sql不管是否快速路由，路由规则拿到的值都相同
+     */
+    protected Object getLiteralValue(SQLExpr valueExpr){
+        if(valueExpr instanceof SQLCharExpr){
+            return ((SQLCharExpr) valueExpr).getText();
+        }
+        if(valueExpr instanceof SQLNumericLiteralExpr
+                || (valueExpr instanceof SQLUnaryExpr && ((SQLUnaryExpr) valueExpr).getExpr() instanceof SQLNumericLiteralExpr)){
+            Object number = SqlParameterizer.parseNumber(valueExpr.toString());
+            if(number != null){
+                return number;
+            }
+        }
+        return valueExpr.toString();
+    }
     //判断是否是jdbc ？占位符
     protected boolean isJdbcPlaceHolder(SQLExpr sqlExpr){
         if(sqlExpr==null){
@@ -206,14 +255,14 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
         context.setFullColumnNameAliasMap(fullColumnAliasMap);
     }
     /**
-     * 二元运算符条件解析 只有=号可作为分区条件，只会把currentParamterIndex增加。
+     * 二元运算符条件解析 只有=号可作为分区条件
      * 所有二元操作符参见：SQLBinaryOperator
      * @param conditionItemExpr
      */
     private void parseBinaryRouteConditionExpr(SQLBinaryOpExpr conditionItemExpr) throws SQLException {
             SQLExpr valueExpr = conditionItemExpr.getRight();
             if(valueExpr instanceof SQLIdentifierExpr || valueExpr instanceof SQLPropertyExpr){
-                //处理a.id=b.id情况，这种条件不能路由路由条件，且currentParamterIndex也不需要改变
+                //处理a.id=b.id情况，这种条件不能路由路由条件
                 return;
             }
             SQLBinaryOperator operator = conditionItemExpr.getOperator();
@@ -241,20 +290,16 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
                     ){
                 throw new RuntimeException("unsupported binary operator :"+operator+" in sql :"+originSql);
             }*/
-            //以上二元操作符，虽然不能作为路由条件，但是有可能有占位符，所以将currentParamterIndex+1；
-            if(isJdbcPlaceHolder(valueExpr)) {
-               ++currentParamterIndex;
-            }
              //只将=号作为路由条件，其他二进制操作符不可作为路由条件
              if(SQLBinaryOperator.Equality==operator){
-                 DragonPrepareStatement.ParamSetting paramSetting = getParamSetting(currentParamterIndex);
                  if(logicTable.isShardColumn(columnName)){
                      if(valueExpr instanceof SQLQueryExpr){//如果值为子查询，直接返回
                          return ;
                      }
-                     Object shardColumnValue=valueExpr.toString();
+                     //占位符只记录参数的位置，路由时再取参数值，这样解析结果可以缓存
+                     Object shardColumnValue=getLiteralValue(valueExpr);
                      if(isJdbcPlaceHolder(valueExpr)){
-                         shardColumnValue=  paramSetting.values[0];
+                         shardColumnValue= new SqlRouteParams.ParamRef(getParamIndex(valueExpr));
                      }
                      sqlRouteParams.putBinaryRouteParams(logicTable,columnName,shardColumnValue);
                  }
@@ -271,10 +316,9 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
         if(logicTable.isShardColumn(columnName)){
             List<SQLExpr> targetList = conditionItemExpr.getTargetList();
             for (SQLExpr sqlExpr : targetList) {
-                Object shardColumnValue=sqlExpr.toString();
+                Object shardColumnValue=getLiteralValue(sqlExpr);
                 if(isJdbcPlaceHolder(sqlExpr)){
-                    DragonPrepareStatement.ParamSetting paramSetting = getParamSetting(++currentParamterIndex);
-                    shardColumnValue= paramSetting.values[0];
+                    shardColumnValue= new SqlRouteParams.ParamRef(getParamIndex(sqlExpr));
                 }
                 valueList.add(shardColumnValue);
             }
@@ -305,68 +349,14 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
     }
 
 
-    //根据主维度表生成路由规则
-    private void addRouteInfo(LogicTable primaryLogicTable ,Map<String, Object> binaryShardConditionMap) {
-        String realDBName = primaryLogicTable.getRealDBName(binaryShardConditionMap);
-        String primaryTBName = primaryLogicTable.getRealTBName(binaryShardConditionMap);
-        Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = context.getSqlRouteMap();
-        if(sqlRouteMap.containsKey(realDBName)){//这个分库的分表sql已经有了，主要用于处理id in (?,?,?)多个值路由到同一个real db的情况，只需要添加一次即可
-            Map<String, SqlRouteInfo> tableRouteMap = sqlRouteMap.get(realDBName);
-            if(tableRouteMap !=null&&tableRouteMap.containsKey(primaryTBName)){
-                return ;
-            }
-        }
-        Map<String, SqlRouteInfo> dbRouteMap = sqlRouteMap.get(realDBName);
-        if(dbRouteMap==null){
-            dbRouteMap=new HashMap<String, SqlRouteInfo>();
-            sqlRouteMap.put(realDBName,dbRouteMap);
-        }
-//        if(StringUtils.isNoneBlank(realDBName,primaryTBName)){
-        SqlRouteInfo tbSqlRouteInfo = dbRouteMap.get(primaryTBName);
-        if (tbSqlRouteInfo == null) {
-            tbSqlRouteInfo = new SqlRouteInfo(primaryLogicTable, realDBName, primaryTBName);
-        }
-        dbRouteMap.put(primaryTBName, tbSqlRouteInfo);
-//        }
-
-    }
-
     protected void makeRouteMap(){
-        //如果sql中只包含一个表，则可以执行
-        //主维度表
-        LogicTable primaryLogicTable = sqlRouteParams.getPrimaryLogicTable();
-        Map<String, Object> binaryRouteParamsMap = sqlRouteParams.getBinaryRouteParamsMap();
-        Map<String, List<Object>> sqlInListParamsMap = sqlRouteParams.getSqlInListRouteParamsMap();
-        //where partition=xxx的情况
-        if (MapUtils.isNotEmpty(binaryRouteParamsMap) && MapUtils.isEmpty(sqlInListParamsMap)) {
-            addRouteInfo(primaryLogicTable,binaryRouteParamsMap);
-        }
-        //where id in(x,x,x)的情况，支持与binary条件联合确定路由规则
-        if (MapUtils.isNotEmpty(sqlInListParamsMap)) {
-            for (Map.Entry<String, List<Object>> entry : sqlInListParamsMap.entrySet()) {
-                String shardColumn = entry.getKey();
-                List<Object> valueList = entry.getValue();
-                for (Object value : valueList) {
-                    HashMap<String, Object> routeConditionMap = new HashMap<String, Object>();
-                    routeConditionMap.put(shardColumn, value);
-                    if (MapUtils.isNotEmpty(binaryRouteParamsMap)) {
-                        routeConditionMap.putAll(binaryRouteParamsMap);
-                    }
-                    addRouteInfo(primaryLogicTable,routeConditionMap);
-                }
-            }
-        }
-
-        //没有路由参数，表示需要将sql分发到所有表，构造路由到所有分库的参数
-        if(MapUtils.isEmpty(context.getSqlRouteMap())){
-            makeRouteAllParamsMap();
-        }
+        sqlRouteParams.resolve(originParameters).fillRouteMap(context.getSqlRouteMap(), parsedLogicTableList, originSql);
     }
 
     /**
      * whereConditionList中包含了所有的条件，只有部分能够作为路由参数
      * 需要过滤出id = ？、in (?，?，?)类似这两种类型作为路由参数
-     * 对于其他的条件，例如like ，> ，not in (？？？)等，只需要根据实际情况，确定是否将currentParamterIndex++即可
+     * 对于其他的条件，例如like ，> ，not in (？？？)等，不作为路由参数
      */
     protected void fillSqlRouteParams() throws SQLException {
             if(CollectionUtils.isEmpty(whereConditionList)){
@@ -386,20 +376,9 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
                     continue;
                 }
 
-                //对between...and 进行处理，肯定不能作为路由条件，判断是否将currentParamterIndex++即可
+                //between...and 肯定不能作为路由条件
                 if(conditionItemExpr instanceof SQLBetweenExpr){
-                     //column名
-//                    SQLExpr columnExpr = ((SQLBetweenExpr) conditionItemExpr).getTestExpr();
-                    //分别表示开始，结束的值
-                    SQLExpr beginExpr = ((SQLBetweenExpr) conditionItemExpr).getBeginExpr();
-                    SQLExpr endExpr = ((SQLBetweenExpr) conditionItemExpr).getEndExpr();
-                    if(beginExpr instanceof SQLVariantRefExpr){
-                        currentParamterIndex++;
-                    }
-                    if(endExpr instanceof SQLVariantRefExpr){
-                        currentParamterIndex++;
-                    }
-                    return ;
+                    continue;
                 }
 
                 //没有考虑到其他的条件操作符类型
@@ -409,58 +388,35 @@ public abstract class AbstractMysqlSqlRewriter implements SqlRewriter {
     }
     /**生成更新(U)、删除(D)，查询语句的真实sql*/
     protected void makeupSqlRouteInfoSqls() throws SQLException {
+        //不能直接使用originSql，因为Mysql Select需要对orderBy limit部分做修改
+        SqlTemplate sqlTemplate = makeSqlTemplate();
         Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = context.getSqlRouteMap();
-        //根据路由表进行重写sql
         for (Map<String, SqlRouteInfo> dbRouteMap :   sqlRouteMap.values()) {
             for (SqlRouteInfo tbSqlRouteInfo : dbRouteMap.values()) {
                 /**主维度表的真实表名*/
                 String primaryRealTBName = tbSqlRouteInfo.getPrimaryRealTBName();
                 Long primaryTBIndex = tbSqlRouteInfo.getPrimaryLogicTable().parseRealTBIndex(primaryRealTBName);
-                //修改AST中每一个逻辑表名为真实表名
-                for (SQLIdentifierExpr sqlIdentifierExpr : sqlExprTableSourceList) {
-                    String tableName = sqlIdentifierExpr.getSimpleName();
-                    sqlIdentifierExpr.putAttribute("originName",tableName);
-                    sqlIdentifierExpr.setName(context.getLogicTable(tableName).format(primaryTBIndex));
-                }
-                //不能直接使用originSql，因为Mysql Select需要对orderBy limit部分做修改
-                String newSql = sqlAst.toString();
-                tbSqlRouteInfo.setSql(newSql);
-                if (isPrepare) {
+                tbSqlRouteInfo.setSql(sqlTemplate.render(primaryTBIndex));
+                if (isPrepare && originParameters != null) {
                     tbSqlRouteInfo.getParameters().putAll(originParameters);
-                }
-                for (SQLIdentifierExpr sqlIdentifierExpr : sqlExprTableSourceList) {
-                    String originName = (String) sqlIdentifierExpr.getAttribute("originName");
-                    if(originName!=null){
-                        sqlIdentifierExpr.setName(originName);
-                    }
+                    tbSqlRouteInfo.getParameters().putAll(overrideParameters);
                 }
             }
         }
-
-    }
-
-    private void makeRouteAllParamsMap(){
-        Map<String, Map<String, SqlRouteInfo>> sqlRouteMap=new HashMap<String, Map<String, SqlRouteInfo>>();
-        for (LogicTable logicTable : parsedLogicTableList) { //check每个逻辑表都应该配置了真实库与表的映射关系
-            Map<String, List<String>> realDBTBMap = logicTable.getRealDBTBMap();
-            if(MapUtils.isEmpty(realDBTBMap)){//全局路由必须要配置 realDBTBMap
-                throw new DragonShardException("logic table '"+logicTable.getLogicTableName()+"' don't config realDBTBMap ,so sql '"+originSql+"' must contains route condition!!!");
-            }
+        if(isPlanable()){
+            rewritePlan=new SqlRewritePlan(parsedLogicTableList,sqlRouteParams,sqlTemplate,context.getFullColumnNameAliasMap());
         }
-        LogicTable primaryLogicTable = parsedLogicTableList.get(0);//因为没有分区条件，随机选择一个表作为主维度表，这里选择第一个
-
-        Map<String, List<String>> realDBTBMap = primaryLogicTable.getRealDBTBMap();
+    }
 
-        for (Map.Entry<String, List<String>> realDBTBListEntry : realDBTBMap.entrySet()) {
-            String realDBName = realDBTBListEntry.getKey();
-            List<String> realTBNameList = realDBTBListEntry.getValue();
-            Map<String, SqlRouteInfo> realTbRouteInfoMap=new HashMap<String, SqlRouteInfo>();
-            for (String realTBName : realTBNameList) {
-                SqlRouteInfo routeInfo=new SqlRouteInfo(primaryLogicTable,realDBName, realTBName);
-                realTbRouteInfoMap.put(realTBName,routeInfo);
-            }
-            sqlRouteMap.put(realDBName,realTbRouteInfoMap);
+    /**
+     * 根据解析结果中表名的位置生成模板，不修改AST，AST可能被多个线程共享
+     */
+    private SqlTemplate makeSqlTemplate() throws SQLException {
+        List<SqlParsedResult.Token> tableTokens = sqlParsedResult.getTableTokens();
+        LogicTable[] tableLogicTables = new LogicTable[tableTokens.size()];
+        for (int i = 0; i < tableTokens.size(); i++) {
+            tableLogicTables[i] = context.getLogicTable(tableTokens.get(i).getText());
         }
-        context.getSqlRouteMap().putAll(sqlRouteMap);
+        return sqlParsedResult.makeSqlTemplate(tableLogicTables, tokenReplacements);
     }
 }
@@ -1,8 +1,16 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLObject;
 import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
 import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.dialect.mysql.visitor.MySqlASTVisitorAdapter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by TIANSHOUZHI336 on 2017/3/14.
@@ -18,4 +26,33 @@ public abstract class DragonDruidASTUtil {
         }
         return columnName;
     }
+
+    /**
+     * 按照在sql中出现的顺序，返回sqlObject中所有的?占位符
+     */
+    public static List<SQLVariantRefExpr> getPlaceholders(SQLObject sqlObject) {
+        final List<SQLVariantRefExpr> placeholders=new ArrayList<SQLVariantRefExpr>();
+        sqlObject.accept(new MySqlASTVisitorAdapter(){
+            @Override
+            public boolean visit(SQLVariantRefExpr x) {
+                if("?".equals(x.getName())){
+                    placeholders.add(x);
+                }
+                return false;
+            }
+        });
+        return placeholders;
+    }
+
+    /**
+     * 占位符与其参数位置(从1开始)的映射，占位符之间用引用比较
+     */
+    public static Map<SQLVariantRefExpr, Integer> getPlaceholderIndexes(SQLObject sqlObject) {
+        List<SQLVariantRefExpr> placeholders = getPlaceholders(sqlObject);
+        Map<SQLVariantRefExpr, Integer> placeholderIndexes=new IdentityHashMap<SQLVariantRefExpr, Integer>(placeholders.size());
+        for (int i = 0; i < placeholders.size(); i++) {
+            placeholderIndexes.put(placeholders.get(i),i+1);
+        }
+        return placeholderIndexes;
+    }
 }
@@ -1,13 +1,12 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
 import com.alibaba.druid.sql.ast.statement.SQLInsertStatement;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.common.util.CollectionUtils;
 import com.tianshouzhi.dragon.common.util.StringUtils;
-import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
-import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 import com.tianshouzhi.dragon.sharding.route.LogicTable;
@@ -87,7 +86,6 @@ public class MysqlInsertStatementRewriter extends AbstractMysqlSqlRewriter {
 
         if(CollectionUtils.isEmpty(context.getShardingStatement().getBatchExecuteInfoList())){//非批处理
             List<SQLInsertStatement.ValuesClause> valuesList = sqlStatement.getValuesList();
-            DragonShardingStatement dragonShardingStatement = context.getShardingStatement();
             Map<String,List<SQLInsertStatement.ValuesClause>> valueListMapByTable=new HashMap<String, List<SQLInsertStatement.ValuesClause>>();
             Map<String,Map<String,SqlRouteInfo>> dbIndexSplitMap=context.getSqlRouteMap();
             for (int i = 0; i < valuesList.size(); i++) {
@@ -100,16 +98,12 @@ public class MysqlInsertStatementRewriter extends AbstractMysqlSqlRewriter {
                     Map.Entry<Integer, String> next = iterator.next();
                     Integer shardColumnIndex = next.getKey();
                     String shardColumnName = next.getValue();
-                    String shardColumnValue = values.get(shardColumnIndex).toString();
-                    if(dragonShardingStatement instanceof DragonShardingPrepareStatement
-                            &&"?".equals(shardColumnValue)){
-                        DragonShardingPrepareStatement shardingPrepareStatement= (DragonShardingPrepareStatement) dragonShardingStatement;
-                        Map<Integer, DragonPrepareStatement.ParamSetting> parameters = shardingPrepareStatement.getParameters();
-                        if(parameters!=null&&!parameters.isEmpty()){
-                            shardColumnValue= parameters.get(i * (parameters.size()/valuesList.size()) + shardColumnIndex+1).values[0].toString();
-                        }
+                    SQLExpr shardColumnExpr = values.get(shardColumnIndex);
+                    Object shardColumnValue = getLiteralValue(shardColumnExpr);
+                    if(isPrepare&&isJdbcPlaceHolder(shardColumnExpr)){
+                        shardColumnValue= getParamSetting(getParamIndex(shardColumnExpr)).values[0];
                     }
-                    if(StringUtils.isBlank(shardColumnValue)){
+                    if(shardColumnValue==null||StringUtils.isBlank(String.valueOf(shardColumnValue))){
                         continue;
                     }
                     routeParams.put(shardColumnName,shardColumnValue);
@@ -139,12 +133,11 @@ public class MysqlInsertStatementRewriter extends AbstractMysqlSqlRewriter {
                 }
                 valuesClauses.add(valuesClause);
 //            appendValues(valuesClause.getValues(),sqlSplitInfo.sql);
-                DragonShardingPrepareStatement shardingPrepareStatement= (DragonShardingPrepareStatement) dragonShardingStatement;
-                Map<Integer, DragonPrepareStatement.ParamSetting> parameters = shardingPrepareStatement.getParameters();
-                int paramStartIndex=parameters.size()/valuesList.size()*i+1;
-                int paramEndIndex=paramStartIndex+parameters.size()/valuesList.size();
-                for ( ;paramStartIndex<paramEndIndex;paramStartIndex++){
-                    sqlSplitInfo.addParam(parameters.get(paramStartIndex));
+                //这一行中的占位符，按出现的顺序作为分表sql的参数
+                if(isPrepare){
+                    for (SQLVariantRefExpr placeholder : DragonDruidASTUtil.getPlaceholders(valuesClause)) {
+                        sqlSplitInfo.addParam(getParamSetting(getParamIndex(placeholder)));
+                    }
                 }
 
                 tbIndexSpitMap.put(realTBName,sqlSplitInfo);
@@ -152,15 +145,22 @@ public class MysqlInsertStatementRewriter extends AbstractMysqlSqlRewriter {
             }
             //on duplicate key update语法
             StringBuilder duplicateKeyUpdateStr=null;
+            //on duplicate key update中的占位符在所有的values之后
+            List<DragonPrepareStatement.ParamSetting> duplicateKeyUpdateParams=new ArrayList<DragonPrepareStatement.ParamSetting>();
             List<SQLExpr> duplicateKeyUpdate = sqlStatement.getDuplicateKeyUpdate();
             if(duplicateKeyUpdate != null && duplicateKeyUpdate.size() > 0){
-                duplicateKeyUpdateStr.append(" on duplicate key update ");
+                duplicateKeyUpdateStr=new StringBuilder(" on duplicate key update ");
                 for(int i=0; i<duplicateKeyUpdate.size(); i++){
                     SQLExpr exp = duplicateKeyUpdate.get(i);
                     if(exp != null){
                         duplicateKeyUpdateStr.append(exp.toString());
                         if(i < duplicateKeyUpdate.size() - 1)
                             duplicateKeyUpdateStr.append(",");
+                        if(isPrepare){
+                            for (SQLVariantRefExpr placeholder : DragonDruidASTUtil.getPlaceholders(exp)) {
+                                duplicateKeyUpdateParams.add(getParamSetting(getParamIndex(placeholder)));
+                            }
+                        }
                     }
                 }
             }
@@ -170,6 +170,9 @@ public class MysqlInsertStatementRewriter extends AbstractMysqlSqlRewriter {
                 for (SqlRouteInfo sqlRouteInfo : tbSqlEntryMap.values()) {
                     List<SQLInsertStatement.ValuesClause> valuesClauses = valueListMapByTable.get(sqlRouteInfo.getRealDBName() + "-" + sqlRouteInfo.getPrimaryRealTBName());
                     makeInsertSql(sqlRouteInfo,insertClause,valuesClauses,columnClause,duplicateKeyUpdateStr);
+                    for (DragonPrepareStatement.ParamSetting paramSetting : duplicateKeyUpdateParams) {
+                        sqlRouteInfo.addParam(paramSetting);
+                    }
                 }
             }
 
@@ -1,18 +1,24 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
 import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
 import com.alibaba.druid.sql.ast.expr.SQLNumberExpr;
 import com.alibaba.druid.sql.ast.statement.SQLSelect;
+import com.alibaba.druid.sql.ast.statement.SQLSelectGroupByClause;
+import com.alibaba.druid.sql.ast.statement.SQLSelectItem;
 import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
 import com.alibaba.druid.sql.ast.statement.SQLTableSource;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse.SqlParsedResult;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.AggregateDecomposition;
 import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
 
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -44,6 +50,8 @@ import java.util.Map;
  </pre>
  */
 public class MysqlSelectStatementRewriter extends AbstractMysqlSqlRewriter {
+    //limit和聚合函数的重写与路由到的表的数量有关，这时不能缓存重写结果
+    private boolean planable;
 
     @Override
     protected void doRewrite(HandlerContext context) throws SQLException {
@@ -63,59 +71,228 @@ public class MysqlSelectStatementRewriter extends AbstractMysqlSqlRewriter {
         parseWhereRouteConditionList(where);
         fillSqlRouteParams();
         makeRouteMap();
+        planable = query.getLimit() == null && !hasDecomposableAggregate(query) && findUnmergeableAggregate(query) == null;
+
+        //AST可能被多个线程共享，不能修改，limit中的数字通过tokenReplacements在生成sql时替换
+        boolean hasGroupBy = query.getGroupBy() != null;
+        if (getRealSqlNum(context.getSqlRouteMap()) > 1) {
+            SQLAggregateExpr unmergeableAggregate = findUnmergeableAggregate(query);
+            if (unmergeableAggregate != null) {
+                throw new DragonShardException("aggregate function '" + unmergeableAggregate
+                        + "' can't be merged when sql route to multiple tables,sql:" + originSql);
+            }
+        }
+        //路由到多个表时，拆分不能直接合并的聚合函数
+        if (getRealSqlNum(context.getSqlRouteMap()) > 1 && hasDecomposableAggregate(query)) {
+            //拆分的结果只与sql有关，缓存在解析结果中，只有第一次需要拆分
+            AggregateDecomposition decomposition = sqlParsedResult.getAggregateDecomposition();
+            if (decomposition == null) {
+                decomposition = makeAggregateDecomposition();
+                sqlParsedResult.setAggregateDecomposition(decomposition);
+            }
+            context.setAggregateDecomposition(decomposition);
+            sqlParsedResult = decomposition.getDecomposedParsedResult();
+            hasGroupBy = ((MySqlSelectQueryBlock) ((SQLSelectStatement) sqlParsedResult.getSqlStatement()).getSelect()
+                    .getQuery()).getGroupBy() != null;
+        }
 
         //如果同时不为空，说明需要对limit语句进行修改 ,特别的，如果只分到一个库，不需要设置limit为0，查询结果的limit就是正确的
         //需要在merge的时候配合，单库的情况不考虑order by和limit
         if(needAlterLimit(query, context.getSqlRouteMap())){
-            alterLimit(context, query);
+            //分组之后才能确定哪些记录在limit范围之内，每个分库需要返回所有分组
+            alterLimit(context, query, hasGroupBy);
         }
         makeupSqlRouteInfoSqls();
     }
 
+    //拆分需要修改select列表和group by，在重新解析出来的私有AST上修改，再用它生成真实sql
+    private AggregateDecomposition makeAggregateDecomposition() {
+        SqlParsedResult privateParsedResult = SqlParsedResult.parse(sqlParsedResult.getSql());
+        MySqlSelectQueryBlock privateQuery = (MySqlSelectQueryBlock) ((SQLSelectStatement) privateParsedResult
+                .getSqlStatement()).getSelect().getQuery();
+        AggregateDecomposition decomposition = decomposeAggregates(privateQuery);
+        decomposition.setDecomposedParsedResult(SqlParsedResult.parse(privateParsedResult.getSqlStatement()));
+        return decomposition;
+    }
+
+    /**
+     * AVG(x)改为SUM(x)，并追加COUNT(x)；COUNT(DISTINCT x)改为x，并追加到group by中，每个分库返回去重后的x，
+     * 如果x是唯一的分区字段，相同的值一定在同一个表中，各个表的结果直接相加即可，不需要拆分
+     */
+    private AggregateDecomposition decomposeAggregates(MySqlSelectQueryBlock query) {
+        AggregateDecomposition decomposition = new AggregateDecomposition();
+        List<SQLSelectItem> selectList = query.getSelectList();
+        int originColumnCount = selectList.size();
+        for (int i = 0; i < originColumnCount; i++) {
+            SQLSelectItem selectItem = selectList.get(i);
+            if (!(selectItem.getExpr() instanceof SQLAggregateExpr)) {
+                continue;
+            }
+            SQLAggregateExpr aggregateExpr = (SQLAggregateExpr) selectItem.getExpr();
+            boolean distinct = "DISTINCT".equalsIgnoreCase(String.valueOf(aggregateExpr.getOption()));
+            //保持列名与原始sql一致
+            String alias = selectItem.getAlias() != null ? selectItem.getAlias() : "`" + aggregateExpr + "`";
+            if ("AVG".equalsIgnoreCase(aggregateExpr.getMethodName()) && !distinct) {
+                selectList.set(i, new SQLSelectItem(newAggregateExpr("SUM", aggregateExpr), alias));
+                selectList.add(new SQLSelectItem(newAggregateExpr("COUNT", aggregateExpr), "dragon_avg_count_" + (i + 1)));
+                decomposition.addAvgColumn(i + 1, selectList.size());
+            } else if ("COUNT".equalsIgnoreCase(aggregateExpr.getMethodName()) && distinct) {
+                if (aggregateExpr.getArguments().size() != 1) {
+                    throw new DragonShardException("count(distinct) only support one column,sql:" + originSql);
+                }
+                SQLExpr distinctExpr = aggregateExpr.getArguments().get(0);
+                if (isOnlyShardColumn(distinctExpr)) {
+                    continue;
+                }
+                selectList.set(i, new SQLSelectItem(distinctExpr, alias));
+                if (query.getGroupBy() == null) {
+                    query.setGroupBy(new SQLSelectGroupByClause());
+                }
+                query.getGroupBy().addItem(distinctExpr);
+                decomposition.addDistinctCountColumn(i + 1);
+            }
+        }
+        return decomposition;
+    }
+
+    @Override
+    protected boolean isPlanable() {
+        return planable && super.isPlanable();
+    }
+
+    //是否有路由到多个表时需要拆分的聚合函数，与decomposeAggregates的判断一致
+    private boolean hasDecomposableAggregate(MySqlSelectQueryBlock query) {
+        for (SQLSelectItem selectItem : query.getSelectList()) {
+            if (!(selectItem.getExpr() instanceof SQLAggregateExpr)) {
+                continue;
+            }
+            SQLAggregateExpr aggregateExpr = (SQLAggregateExpr) selectItem.getExpr();
+            boolean distinct = "DISTINCT".equalsIgnoreCase(String.valueOf(aggregateExpr.getOption()));
+            if ("AVG".equalsIgnoreCase(aggregateExpr.getMethodName()) && !distinct) {
+                return true;
+            }
+            if ("COUNT".equalsIgnoreCase(aggregateExpr.getMethodName()) && distinct
+                    && (aggregateExpr.getArguments().size() != 1 || !isOnlyShardColumn(aggregateExpr.getArguments().get(0)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 路由到多个表时结果不能合并的聚合函数，例如GROUP_CONCAT、AVG(DISTINCT x)，合并时只能保留第一个表的值，结果是错误的。
+     * 如果group by中有唯一的分区字段，每个分组只在一个表中，不需要合并
+     * @return 不能合并的聚合函数，没有时返回null
+     */
+    private SQLAggregateExpr findUnmergeableAggregate(MySqlSelectQueryBlock query) {
+        if (query.getGroupBy() != null) {
+            for (SQLExpr groupByItem : query.getGroupBy().getItems()) {
+                if (isOnlyShardColumn(groupByItem)) {
+                    return null;
+                }
+            }
+        }
+        for (SQLSelectItem selectItem : query.getSelectList()) {
+            if (!(selectItem.getExpr() instanceof SQLAggregateExpr)) {
+                continue;
+            }
+            SQLAggregateExpr aggregateExpr = (SQLAggregateExpr) selectItem.getExpr();
+            String methodName = aggregateExpr.getMethodName();
+            boolean distinct = "DISTINCT".equalsIgnoreCase(String.valueOf(aggregateExpr.getOption()));
+            if ("COUNT".equalsIgnoreCase(methodName) || "MAX".equalsIgnoreCase(methodName)
+                    || "MIN".equalsIgnoreCase(methodName)) {
+                continue;
+            }
+            //AVG(x)会被拆分；SUM(DISTINCT x)只有x是唯一的分区字段时，各个表的值才不会重复，可以直接相加
+            if ("AVG".equalsIgnoreCase(methodName) && !distinct) {
+                continue;
+            }
+            if ("SUM".equalsIgnoreCase(methodName) && (!distinct || (aggregateExpr.getArguments().size() == 1
+                    && isOnlyShardColumn(aggregateExpr.getArguments().get(0))))) {
+                continue;
+            }
+            return aggregateExpr;
+        }
+        return null;
+    }
+
+    private SQLAggregateExpr newAggregateExpr(String methodName, SQLAggregateExpr origin) {
+        SQLAggregateExpr aggregateExpr = new SQLAggregateExpr(methodName);
+        aggregateExpr.getArguments().addAll(origin.getArguments());
+        return aggregateExpr;
+    }
+
+    private boolean isOnlyShardColumn(SQLExpr columnExpr) {
+        String columnName = DragonDruidASTUtil.getColumnName(columnExpr);
+        if (columnName == null || parsedLogicTableList.size() != 1) {
+            return false;
+        }
+        return parsedLogicTableList.get(0).isOnlyShardColumn(columnName);
+    }
+
+    private int getRealSqlNum(Map<String, Map<String, SqlRouteInfo>> sqlRouteMap) {
+        int realSqlNum = 0;
+        for (Map<String, SqlRouteInfo> sqlRouteInfoMap : sqlRouteMap.values()) {
+            realSqlNum += sqlRouteInfoMap.size();
+        }
+        return realSqlNum;
+    }
+
     //修改limit起始语句：limt 2,2 从第二位开始，查询2个 也就是 2、3两条记录，originOffset要改为0，rowCount要改为originOffset+rowCount
-    private void alterLimit(HandlerContext context, MySqlSelectQueryBlock query) {
+    //每个分库最多只返回originOffset+rowCount条记录，合并时再跳过前originOffset条；fetchAll为true时每个分库返回所有记录
+    private void alterLimit(HandlerContext context, MySqlSelectQueryBlock query, boolean fetchAll) {
         MySqlSelectQueryBlock.Limit limit = query.getLimit();
         //记录原始的offset和rowcount
         SQLExpr offset = limit.getOffset();
-        Number originOffset=null;
+        long originOffset = 0;//limit n 的形式没有offset
+        int offsetParamIndex = -1;
         if(isJdbcPlaceHolder(offset)){
-            DragonPrepareStatement.ParamSetting paramSetting = getParamSetting(++currentParamterIndex);
-            originOffset= (Number) paramSetting.values[0];
-        }else{
-            if(offset instanceof SQLIntegerExpr){
-                originOffset = ((SQLIntegerExpr) offset).getNumber();
-            }else{
-                originOffset = ((SQLNumberExpr)offset).getNumber();
-            }
-            limit.setOffset(new SQLNumberExpr(0));
+            offsetParamIndex = getParamIndex(offset);
+            originOffset = ((Number) getParamSetting(offsetParamIndex).values[0]).longValue();
+        }else if(offset != null){
+            originOffset = getNumber(offset).longValue();
         }
-        context.setOffset(originOffset.longValue());
+        context.setOffset(originOffset);
 
         SQLExpr rowCount = limit.getRowCount();
-        Number originRowCount=null;
-        if(isJdbcPlaceHolder(offset)){
-            DragonPrepareStatement.ParamSetting paramSetting = getParamSetting(++currentParamterIndex);
-            originRowCount= (Number) paramSetting.values[0];
+        long originRowCount;
+        long pushDownRowCount;
+        if(isJdbcPlaceHolder(rowCount)){
+            int rowCountParamIndex = getParamIndex(rowCount);
+            originRowCount = ((Number) getParamSetting(rowCountParamIndex).values[0]).longValue();
+            pushDownRowCount = fetchAll ? Long.MAX_VALUE : originOffset + originRowCount;
+            overrideParameters.put(rowCountParamIndex, longParam(pushDownRowCount));
         }else{
-            if(rowCount instanceof SQLIntegerExpr){
-                originRowCount=((SQLIntegerExpr) rowCount).getNumber();
-            }else{
-                originRowCount = ((SQLNumberExpr)rowCount).getNumber();
-            }
-            limit.setRowCount(new SQLNumberExpr(originOffset.longValue()+originRowCount.longValue()));
+            originRowCount = getNumber(rowCount).longValue();
+            pushDownRowCount = fetchAll ? Long.MAX_VALUE : originOffset + originRowCount;
+            tokenReplacements.put(SqlParsedResult.TokenType.LIMIT_ROW_COUNT, String.valueOf(pushDownRowCount));
+        }
+        context.setRowCount(originRowCount);
+
+        //offset是占位符时不能修改为常量，否则参数个数对不上，改为将参数值设置为0
+        if(offsetParamIndex != -1){
+            overrideParameters.put(offsetParamIndex, longParam(0));
+        }else if(offset != null){
+            tokenReplacements.put(SqlParsedResult.TokenType.LIMIT_OFFSET, "0");
         }
-        context.setRowCount(originRowCount.longValue());
+    }
+
+    private Number getNumber(SQLExpr expr) {
+        if(expr instanceof SQLIntegerExpr){
+            return ((SQLIntegerExpr) expr).getNumber();
+        }
+        return ((SQLNumberExpr) expr).getNumber();
+    }
+
+    private DragonPrepareStatement.ParamSetting longParam(long value) {
+        return new DragonPrepareStatement.ParamSetting(DragonPrepareStatement.ParamType.setLong, new Object[]{value});
     }
 
     private boolean needAlterLimit(MySqlSelectQueryBlock query, Map<String, Map<String, SqlRouteInfo>> sqlRouteMap){
         if(query.getLimit()==null){
             return false;
         }
-        int realSqlNum=0;
-        for (Map<String, SqlRouteInfo> sqlRouteInfoMap : sqlRouteMap.values()) {
-            realSqlNum+=sqlRouteInfoMap.size();
-        }
-        if(realSqlNum==1){//只有一条sql要路由，数据库直接完成，不需要，可以不修改
+        if(getRealSqlNum(sqlRouteMap)==1){//只有一条sql要路由，数据库直接完成，不需要，可以不修改
             return false;
         }
         //realSqlSize>1 ,需要到多个表查询，order by应该是必须指定的，否则只指定limit，因为多个表查出来的结果是随机合并的，会导致每次显示的结果不同
@@ -1,15 +1,12 @@
 package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.mysql;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
-import com.alibaba.druid.sql.ast.expr.SQLCaseExpr;
 import com.alibaba.druid.sql.ast.statement.SQLTableSource;
-import com.alibaba.druid.sql.ast.statement.SQLUpdateSetItem;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
 
 import java.sql.SQLException;
-import java.util.List;
 
 /**
  * <pre>
@@ -41,17 +38,6 @@ public class MysqlUpdateStatementRewriter extends AbstractMysqlSqlRewriter {
 
         parseLogicTableList(tableSource);
         SQLExpr where = update.getWhere();
-        List<SQLUpdateSetItem> items = update.getItems();
-        for (SQLUpdateSetItem sqlUpdateSetItem : items) {
-            SQLExpr value = sqlUpdateSetItem.getValue();
-            if (isJdbcPlaceHolder(value)) {
-                currentParamterIndex++;
-            }
-            //如果是case when更新
-            if(value instanceof SQLCaseExpr){
-                parseCaseWhen((SQLCaseExpr) value);
-            }
-        }
         parseWhereRouteConditionList(where);
         //二元操作符的分区条件
         fillSqlRouteParams();
@@ -60,22 +46,4 @@ public class MysqlUpdateStatementRewriter extends AbstractMysqlSqlRewriter {
         makeupSqlRouteInfoSqls();
 
     }
-
-    private void parseCaseWhen(SQLCaseExpr value) {
-        List<SQLCaseExpr.Item> itemList = value.getItems();
-        for (SQLCaseExpr.Item item : itemList) {
-            SQLExpr conditionExpr = item.getConditionExpr();
-            if(isJdbcPlaceHolder(conditionExpr)){
-                currentParamterIndex++;
-            }
-            SQLExpr valueExpr = item.getValueExpr();
-            if(isJdbcPlaceHolder(valueExpr)){
-                currentParamterIndex++;
-            }
-        }
-        SQLExpr elseExpr = value.getElseExpr();
-        if(isJdbcPlaceHolder(elseExpr)){
-            currentParamterIndex++;
-        }
-    }
 }
@@ -42,6 +42,11 @@ public class SqlExecutionStatics {
 
 	private long parallelExecutionTimeMillis;
 
+	private boolean executeInCallerThread;
+
+	// 是否因为分库sql执行超时而失败
+	private boolean timeout;
+
 	private long resultMergeTimeMillis;
 
 	private Map<String, List<SqlRouteDetail>> routeDetailMap;
@@ -186,6 +191,22 @@ public class SqlExecutionStatics {
 		return parallelExecutionTimeMillis;
 	}
 
+	public void setExecuteInCallerThread(boolean executeInCallerThread) {
+		this.executeInCallerThread = executeInCallerThread;
+	}
+
+	public boolean isExecuteInCallerThread() {
+		return executeInCallerThread;
+	}
+
+	public void setTimeout(boolean timeout) {
+		this.timeout = timeout;
+	}
+
+	public boolean isTimeout() {
+		return timeout;
+	}
+
 	public void setResultMergeTimeMillis(long resultMergeTimeMillis) {
 		this.resultMergeTimeMillis = resultMergeTimeMillis;
 	}
@@ -4,6 +4,7 @@ import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
 import com.tianshouzhi.dragon.common.log.Log;
 import com.tianshouzhi.dragon.common.log.LoggerFactory;
 import com.tianshouzhi.dragon.common.util.MapUtils;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardTimeoutException;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
 import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
 import com.tianshouzhi.dragon.sharding.pipeline.Handler;
@@ -29,9 +30,11 @@ public class StaticsHandler implements Handler {
 		// 是否是查询
 		boolean query = context.isQuery();
 		boolean success = true;
+		boolean timeout = false;
 		String exception = null;
 		if (context.getThrowable() != null) {
 			success = false;
+			timeout = context.getThrowable() instanceof DragonShardTimeoutException;
 			StringWriter out = new StringWriter();
 			context.getThrowable().printStackTrace(new PrintWriter(out));
 			exception = out.toString();
@@ -80,6 +83,8 @@ public class StaticsHandler implements Handler {
 		int parallelExecutionTaskNum = context.getParallelExecutionTaskNum();
 		// 并行执行花费的时间
 		long parallelExecutionTimeMillis = context.getParallelExecutionTimeMillis();
+		// 是否只有一个执行任务，直接在调用线程中执行
+		boolean executeInCallerThread = context.isExecuteInCallerThread();
 		// 合并结果集花费的时间
 		long resultMergeTimeMillis = context.getResultMergeTimeMillis();
 		// 路由后sql的个数
@@ -116,6 +121,7 @@ public class StaticsHandler implements Handler {
 		sqlExecutionStatics.setPrepare(isPrepare);
 		sqlExecutionStatics.setSuccess(success);
 		sqlExecutionStatics.setException(exception);
+		sqlExecutionStatics.setTimeout(timeout);
 		sqlExecutionStatics.setTotalUpdateCount(totalUpdateCount);
 		sqlExecutionStatics.setReturnRowCount(returnRowCount);
 		sqlExecutionStatics.setQueryRowCount(originQueryCount);
@@ -127,6 +133,7 @@ public class StaticsHandler implements Handler {
 		sqlExecutionStatics.setSqlRewriteTimeMillis(sqlRewriteTimeMillis);
 		sqlExecutionStatics.setParallelExecutionTaskNum(parallelExecutionTaskNum);
 		sqlExecutionStatics.setParallelExecutionTimeMillis(parallelExecutionTimeMillis);
+		sqlExecutionStatics.setExecuteInCallerThread(executeInCallerThread);
 		sqlExecutionStatics.setResultMergeTimeMillis(parallelExecutionTimeMillis);
 		sqlExecutionStatics.setRouteDetailMap(routeDetailMap);
 		sqlExecutionStatics.setAppName(context.getDragonShardingConfig().getAppName());
@@ -0,0 +1,12 @@
+package com.tianshouzhi.dragon.sharding.route;
+
+/**
+ * 编译后的路由规则，在配置加载时生成，运行时直接以分区字段的值作为参数调用，不再经过ScriptEngine
+ */
+public interface CompiledRouteRule {
+	/**
+	 * @param shardColumnValues 分区字段的值，顺序与{@link LogicTable.RouteRule#getShardColumns()}一致
+	 * @return 计算出的真实库/表编号
+	 */
+	Object eval(Object[] shardColumnValues);
+}
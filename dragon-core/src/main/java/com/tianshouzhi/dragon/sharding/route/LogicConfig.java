@@ -5,6 +5,11 @@ import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 
 import java.text.MessageFormat;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
@@ -18,6 +23,16 @@ public abstract class LogicConfig {
 
 	protected MessageFormat messageFormat;// eg table_{00}
 
+	/**
+	 * 启动时根据配置的真实库名/表名构造的不可变映射，运行时 编号->名称、名称->编号 都不需要再使用MessageFormat。
+	 * realIndexes升序排列，与realNames一一对应
+	 */
+	private long[] realIndexes = new long[0];
+
+	private String[] realNames = new String[0];
+
+	private Map<String, Long> realNameIndexMap = new HashMap<String, Long>();
+
 	public LogicConfig(String namePattern) throws DragonShardException {
 		if (StringUtils.isBlank(namePattern)) {
 			throw new DragonShardException("namePattern can't be blank!!!");
@@ -26,18 +41,64 @@ public abstract class LogicConfig {
 		this.messageFormat = new MessageFormat(namePattern);
 	}
 
+	/**
+	 * 子类在构造方法中调用，传入所有已知的真实名称
+	 */
+	protected void initRealNames(Collection<String> names) {
+		TreeMap<Long, String> sortedIndexNameMap = new TreeMap<Long, String>();
+		Map<String, Long> nameIndexMap = new HashMap<String, Long>();
+		for (String name : names) {
+			Long index = parseByMessageFormat(name);
+			String internedName = name.intern();
+			sortedIndexNameMap.put(index, internedName);
+			nameIndexMap.put(internedName, index);
+		}
+		long[] indexes = new long[sortedIndexNameMap.size()];
+		String[] sortedNames = new String[sortedIndexNameMap.size()];
+		int i = 0;
+		for (Map.Entry<Long, String> entry : sortedIndexNameMap.entrySet()) {
+			indexes[i] = entry.getKey();
+			sortedNames[i] = entry.getValue();
+			i++;
+		}
+		this.realIndexes = indexes;
+		this.realNames = sortedNames;
+		this.realNameIndexMap = nameIndexMap;
+	}
+
 	public String getNamePattern() {
 		return namePattern;
 	}
 
 	public String format(Long caculatedIndex) {
-		return messageFormat.format(new Object[] { caculatedIndex });
+		return format(caculatedIndex.longValue());
 	}
 
-	public Long parseIndex(String realName){
-		try {
+	public String format(long caculatedIndex) {
+		int pos = Arrays.binarySearch(realIndexes, caculatedIndex);
+		if (pos >= 0) {
+			return realNames[pos];
+		}
+		// 没有配置的编号，MessageFormat不是线程安全的
+		synchronized (messageFormat) {
+			return messageFormat.format(new Object[] { caculatedIndex });
+		}
+	}
+
+	public Long parseIndex(String realName) {
+		Long index = realNameIndexMap.get(realName);
+		if (index != null) {
+			return index;
+		}
+		return parseByMessageFormat(realName);
+	}
 
-			Object o = messageFormat.parse(realName)[0];
+	private Long parseByMessageFormat(String realName) {
+		try {
+			Object o;
+			synchronized (messageFormat) {
+				o = messageFormat.parse(realName)[0];
+			}
 			if (o instanceof Long) {
 				return (Long) o;
 			} else {
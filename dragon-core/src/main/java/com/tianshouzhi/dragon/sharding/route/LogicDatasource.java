@@ -37,7 +37,8 @@ public class LogicDatasource extends LogicConfig {
 				this.defaultDSName = dsNameDatasourceMap.keySet().iterator().next();
 			}
 		}
-		// todo 检查dbIndex(即map的key)和namePattern是否匹配
+		// 同时会检查dbIndex(即map的key)和namePattern是否匹配
+		initRealNames(this.dsNameDatasourceMap.keySet());
 	}
 
 	public DataSource getDatasource(String dbIndex) {
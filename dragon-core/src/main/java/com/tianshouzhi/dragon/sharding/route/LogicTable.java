@@ -1,17 +1,24 @@
 package com.tianshouzhi.dragon.sharding.route;
 
+import com.tianshouzhi.dragon.common.cache.DragonCache;
+import com.tianshouzhi.dragon.common.cache.DragonCacheBuilder;
 import com.tianshouzhi.dragon.common.exception.DragonException;
 import com.tianshouzhi.dragon.common.util.CollectionUtils;
 import com.tianshouzhi.dragon.common.util.StringUtils;
 import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 
 /**
  * 每个逻辑表 管理了 物理表 ，每个物理表 对应一个读写分离数据源编号
  */
 public class LogicTable extends LogicConfig {
+	// 路由规则的计算结果范围不超过这个值时，在启动时预先生成所有真实库名/表名，需要能覆盖常见的%10000分表规则
+	private static final int MAX_PRECOMPUTED_NAMES = 16384;
+
 	private LogicDatasource logicDatasource;
 
 	private final Set<RouteRule> dbRouteRules;
@@ -23,17 +30,32 @@ public class LogicTable extends LogicConfig {
 	/** 真实库和表的对应关系，可以不设置，但是如果不设置的话，无法从所有分库进行查询 */
 	private Map<String, List<String>> realDBTBMap;
 
+	/** 分区字段的值->真实库名/表名 的缓存大小，0表示不缓存 */
+	private final int routeCacheSize;
+
+	private final AtomicLong routeCacheHitCount = new AtomicLong();
+
+	private final AtomicLong routeCacheMissCount = new AtomicLong();
+
+	public LogicTable(String logicTableName, String tableNameFormat, Set<String> tbRouteRuleStrs,
+	      Set<String> dbRouteRuleStrs, LogicDatasource logicDatasource, Map<String, List<String>> realDBTBMap)
+	      throws DragonException {
+		this(logicTableName, tableNameFormat, tbRouteRuleStrs, dbRouteRuleStrs, logicDatasource, realDBTBMap, 0);
+	}
+
 	/**
 	 * @param logicTableName
 	 * @param tableNameFormat
 	 * @param tbRouteRuleStrs
 	 * @param logicDatasource
 	 * @param realDBTBMap
+	 * @param routeCacheSize
 	 */
 	public LogicTable(String logicTableName, String tableNameFormat, Set<String> tbRouteRuleStrs,
-	      Set<String> dbRouteRuleStrs, LogicDatasource logicDatasource, Map<String, List<String>> realDBTBMap)
-	      throws DragonException {
+	      Set<String> dbRouteRuleStrs, LogicDatasource logicDatasource, Map<String, List<String>> realDBTBMap,
+	      int routeCacheSize) throws DragonException {
 		super(tableNameFormat);
+		this.routeCacheSize = routeCacheSize;
 		this.logicTableName = logicTableName;
 		this.logicDatasource = logicDatasource;
 		this.realDBTBMap = realDBTBMap;
@@ -43,15 +65,22 @@ public class LogicTable extends LogicConfig {
 		if (logicDatasource == null) {
 			throw new NullPointerException();
 		}
+		if (realDBTBMap != null) {
+			List<String> realTBNames = new ArrayList<String>();
+			for (List<String> eachDBRealTBNames : realDBTBMap.values()) {
+				realTBNames.addAll(eachDBRealTBNames);
+			}
+			initRealNames(realTBNames);
+		}
 
 		this.tbRouteRules = new HashSet<RouteRule>();
 		for (String tbRouteRule : tbRouteRuleStrs) {
-			RouteRule routeRule = new RouteRule(tbRouteRule);
+			RouteRule routeRule = new RouteRule(tbRouteRule, this);
 			this.tbRouteRules.add(routeRule);
 		}
 		this.dbRouteRules = new HashSet<RouteRule>();
 		for (String dbRouteRule : dbRouteRuleStrs) {
-			RouteRule routeRule = new RouteRule(dbRouteRule);
+			RouteRule routeRule = new RouteRule(dbRouteRule, logicDatasource);
 			this.dbRouteRules.add(routeRule);
 		}
 
@@ -64,13 +93,11 @@ public class LogicTable extends LogicConfig {
 	 * @return
 	 */
 	public String getRealDBName(Map<String, Object> shardColumnValuesMap) {
-		Long realDBIndex = getRealIndex(shardColumnValuesMap, dbRouteRules);
-		return logicDatasource.format(realDBIndex);
+		return selectRouteRule(shardColumnValuesMap, dbRouteRules).getRealName(shardColumnValuesMap);
 	}
 
 	public String getRealTBName(Map<String, Object> shardColumnValuesMap) {
-		Long realTBIndex = getRealIndex(shardColumnValuesMap, tbRouteRules);
-		return format(realTBIndex);
+		return selectRouteRule(shardColumnValuesMap, tbRouteRules).getRealName(shardColumnValuesMap);
 	}
 
 	/**
@@ -106,6 +133,23 @@ public class LogicTable extends LogicConfig {
 		return false;
 	}
 
+	/**
+	 * 分库分表规则是否都只使用了这一个分区字段，如果是，这个字段值相同的记录一定位于同一个真实表中
+	 */
+	public boolean isOnlyShardColumn(String column) {
+		for (RouteRule tbRouteRule : tbRouteRules) {
+			if (tbRouteRule.getShardColumns().size() != 1 || !tbRouteRule.getShardColumns().contains(column)) {
+				return false;
+			}
+		}
+		for (RouteRule dbRouteRule : dbRouteRules) {
+			if (dbRouteRule.getShardColumns().size() != 1 || !dbRouteRule.getShardColumns().contains(column)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public String getLogicTableName() {
 		return logicTableName;
 	}
@@ -114,6 +158,26 @@ public class LogicTable extends LogicConfig {
 		return realDBTBMap;
 	}
 
+	public long getRouteCacheHitCount() {
+		return routeCacheHitCount.get();
+	}
+
+	public long getRouteCacheMissCount() {
+		return routeCacheMissCount.get();
+	}
+
+	/**
+	 * 逻辑表配置被替换时调用，清空路由结果缓存
+	 */
+	public void invalidateRouteCache() {
+		for (RouteRule routeRule : tbRouteRules) {
+			routeRule.invalidateCache();
+		}
+		for (RouteRule routeRule : dbRouteRules) {
+			routeRule.invalidateCache();
+		}
+	}
+
 	/**
 	 * 根据路由参数计算真实编号
 	 * 
@@ -121,6 +185,10 @@ public class LogicTable extends LogicConfig {
 	 * @return
 	 */
 	protected Long getRealIndex(Map<String, Object> params, Set<RouteRule> routeRules) {
+		return selectRouteRule(params, routeRules).eval(params);
+	}
+
+	private RouteRule selectRouteRule(Map<String, Object> params, Set<RouteRule> routeRules) {
 		if (params == null) {
 			throw new NullPointerException();
 		}
@@ -134,9 +202,7 @@ public class LogicTable extends LogicConfig {
 		if (selectedRouteRule == null) {
 			throw new DragonShardException("no matched route rule found !!!");
 		}
-
-		Object eval = DragonGroovyEngine.eval(selectedRouteRule.getReplacedRouteRuleStr(), params);
-		return (Long) eval;
+		return selectedRouteRule;
 	}
 
 	protected class RouteRule {
@@ -146,7 +212,22 @@ public class LogicTable extends LogicConfig {
 
 		private List<String> shardColumns;
 
-		public RouteRule(String originRouteRuleStr) throws DragonShardException {
+		private CompiledRouteRule compiledRouteRule;
+
+		private NativeRouteRule nativeRouteRule;// 内置规则，不为null时不再编译groovy
+
+		// 用于将计算出的编号格式化为真实库名或者表名
+		private LogicConfig nameConfig;
+
+		// 计算结果范围有限时，预先生成的真实名称，下标为 编号-minIndex
+		private String[] precomputedNames;
+
+		private long minIndex;
+
+		// groovy规则的计算结果缓存，key为分区字段的值
+		private DragonCache<Object, String> realNameCache;
+
+		public RouteRule(String originRouteRuleStr, LogicConfig nameConfig) throws DragonShardException {
 			if (StringUtils.isBlank(originRouteRuleStr)) {
 				throw new IllegalArgumentException("'originRouteRuleStr' can't be blank");
 			}
@@ -158,7 +239,9 @@ public class LogicTable extends LogicConfig {
 			while (matcher.find()) {
 				String varible = matcher.group(1);// 脚本中的变量名${xxx}
 				String column = varible.substring(varible.indexOf("{") + 1, varible.indexOf("}"));// 变量名：xxx
-				shardColumns.add(column);
+				if (!shardColumns.contains(column)) {// 同一个字段在规则中可能出现多次
+					shardColumns.add(column);
+				}
 				matcher.appendReplacement(sb, column);
 			}
 			if (CollectionUtils.isEmpty(shardColumns)) {
@@ -167,6 +250,96 @@ public class LogicTable extends LogicConfig {
 			}
 			matcher.appendTail(sb);
 			this.replacedRouteRuleStr = sb.toString();
+			this.nativeRouteRule = NativeRouteRule.parse(originRouteRuleStr);
+			if (nativeRouteRule == null) {
+				this.compiledRouteRule = RouteRuleCompiler.compile(replacedRouteRuleStr, shardColumns);
+			}
+			this.nameConfig = nameConfig;
+			precomputeNames();
+			// 内置规则的计算比查询缓存更快，只缓存groovy规则
+			if (routeCacheSize > 0 && compiledRouteRule != null) {
+				this.realNameCache = DragonCacheBuilder.build(Math.min(16, routeCacheSize), routeCacheSize, 16, 1,
+				      TimeUnit.HOURS);
+			}
+		}
+
+		private void precomputeNames() {
+			if (nativeRouteRule == null) {// groovy规则无法确定计算结果的范围
+				return;
+			}
+			long[] indexRange = nativeRouteRule.getIndexRange();
+			if (indexRange == null || indexRange[1] - indexRange[0] >= MAX_PRECOMPUTED_NAMES) {
+				return;
+			}
+			String[] names = new String[(int) (indexRange[1] - indexRange[0] + 1)];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = nameConfig.format(indexRange[0] + i);
+			}
+			this.minIndex = indexRange[0];
+			this.precomputedNames = names;
+		}
+
+		/**
+		 * 计算真实库名或者表名，如果已经预先生成，直接通过数组下标获取
+		 */
+		public String getRealName(Map<String, Object> params) {
+			if (realNameCache == null) {
+				return computeRealName(params);
+			}
+			Object cacheKey = makeCacheKey(params);
+			if (cacheKey == null) {
+				return computeRealName(params);
+			}
+			String realName = realNameCache.get(cacheKey);
+			if (realName != null) {
+				routeCacheHitCount.incrementAndGet();
+				return realName;
+			}
+			routeCacheMissCount.incrementAndGet();
+			realName = computeRealName(params);
+			realNameCache.put(cacheKey, realName);
+			return realName;
+		}
+
+		// 只有一个分区字段时直接使用值作为key
+		private Object makeCacheKey(Map<String, Object> params) {
+			if (shardColumns.size() == 1) {
+				return params.get(shardColumns.get(0));
+			}
+			Object[] values = new Object[shardColumns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = params.get(shardColumns.get(i));
+			}
+			return Arrays.asList(values);
+		}
+
+		private void invalidateCache() {
+			if (realNameCache != null) {
+				realNameCache.invalidateAll();
+			}
+		}
+
+		private String computeRealName(Map<String, Object> params) {
+			long index = eval(params);
+			if (precomputedNames != null) {
+				long offset = index - minIndex;
+				if (offset >= 0 && offset < precomputedNames.length) {
+					return precomputedNames[(int) offset];
+				}
+			}
+			return nameConfig.format(index);
+		}
+
+		public long eval(Map<String, Object> params) {
+			if (nativeRouteRule != null) {
+				return nativeRouteRule.eval(params.get(nativeRouteRule.getShardColumn()));
+			}
+			Object[] shardColumnValues = new Object[shardColumns.size()];
+			for (int i = 0; i < shardColumnValues.length; i++) {
+				shardColumnValues[i] = params.get(shardColumns.get(i));
+			}
+			Object eval = compiledRouteRule.eval(shardColumnValues);
+			return ((Number) eval).longValue();
 		}
 
 		public String getOriginRouteRuleStr() {
@@ -180,5 +353,13 @@ public class LogicTable extends LogicConfig {
 		public List<String> getShardColumns() {
 			return shardColumns;
 		}
+
+		public CompiledRouteRule getCompiledRouteRule() {
+			return compiledRouteRule;
+		}
+
+		public NativeRouteRule getNativeRouteRule() {
+			return nativeRouteRule;
+		}
 	}
 }
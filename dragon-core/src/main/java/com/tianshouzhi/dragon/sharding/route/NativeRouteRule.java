@@ -0,0 +1,328 @@
+package com.tianshouzhi.dragon.sharding.route;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 内置的路由规则，直接使用java计算，不经过groovy。能识别的规则如下(不能识别的规则仍然编译成groovy执行)：
+ *
+ * <pre>
+ * 取模：        ${id}%16、${id}.toLong()%16、${id}.toLong().intdiv(100)%100，计算结果与groovy完全一致
+ * 哈希取模：    ${id}.murmurHashMod(16)
+ * 范围：        ${id}.range(0:0;1000:1;2000:2)，每一项为 下界(包含):编号，value>=2000时路由到2，小于第一个下界时报错
+ * 日期：        ${create_time}.yearMonth()、${create_time}.yearMonthDay()、${create_time}.month()，
+ *               分别计算出yyyyMM、yyyyMMdd、1~12
+ * </pre>
+ *
+ * 因为配置文件中多个规则使用","分割，所以规则本身不使用","
+ */
+public abstract class NativeRouteRule {
+	private static final Pattern MOD_PATTERN = Pattern
+	      .compile("^\\$\\{(\\w+)\\}(\\.toLong\\(\\))?(\\.intdiv\\((\\d+)\\))?(%(\\d+))?$");
+
+	private static final Pattern HASH_MOD_PATTERN = Pattern.compile("^\\$\\{(\\w+)\\}\\.murmurHashMod\\((\\d+)\\)$");
+
+	private static final Pattern RANGE_PATTERN = Pattern.compile("^\\$\\{(\\w+)\\}\\.range\\(([-\\d:;]+)\\)$");
+
+	private static final Pattern DATE_PATTERN = Pattern
+	      .compile("^\\$\\{(\\w+)\\}\\.(yearMonth|yearMonthDay|month)\\(\\)$");
+
+	private final String shardColumn;
+
+	protected NativeRouteRule(String shardColumn) {
+		this.shardColumn = shardColumn;
+	}
+
+	/**
+	 * @param originRouteRuleStr 配置的原始规则，例如${user_id}.toLong().intdiv(100)%100
+	 * @return 不能识别返回null
+	 */
+	public static NativeRouteRule parse(String originRouteRuleStr) throws DragonShardException {
+		String rule = originRouteRuleStr.replaceAll("\\s+", "");
+		Matcher matcher = MOD_PATTERN.matcher(rule);
+		if (matcher.matches()) {
+			long divisor = matcher.group(4) == null ? 1 : parsePositive(matcher.group(4), originRouteRuleStr);
+			long modulus = matcher.group(6) == null ? 0 : parsePositive(matcher.group(6), originRouteRuleStr);
+			return new ModRouteRule(matcher.group(1), matcher.group(2) != null, divisor, modulus);
+		}
+		matcher = HASH_MOD_PATTERN.matcher(rule);
+		if (matcher.matches()) {
+			return new HashModRouteRule(matcher.group(1), parsePositive(matcher.group(2), originRouteRuleStr));
+		}
+		matcher = RANGE_PATTERN.matcher(rule);
+		if (matcher.matches()) {
+			return new RangeRouteRule(matcher.group(1), matcher.group(2), originRouteRuleStr);
+		}
+		matcher = DATE_PATTERN.matcher(rule);
+		if (matcher.matches()) {
+			return new DateRouteRule(matcher.group(1), matcher.group(2));
+		}
+		return null;
+	}
+
+	public String getShardColumn() {
+		return shardColumn;
+	}
+
+	/**
+	 * @param shardColumnValue 分区字段的值
+	 * @return 真实库/表编号
+	 */
+	public abstract long eval(Object shardColumnValue);
+
+	/**
+	 * @return 计算结果的范围[min,max]，用于预先生成真实名称，无法确定时返回null。范围之外的结果(例如负数取模)照常格式化
+	 */
+	public long[] getIndexRange() {
+		return null;
+	}
+
+	private static long parsePositive(String number, String originRouteRuleStr) {
+		long value = Long.parseLong(number);
+		if (value <= 0) {
+			throw new DragonShardException("route rule '" + originRouteRuleStr + "' contains illegal number:" + number);
+		}
+		return value;
+	}
+
+	/**
+	 * 与groovy中的toLong()语义一致：数字直接取longValue，字符串trim之后解析
+	 */
+	protected long toLong(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof String) {
+			return Long.parseLong(((String) value).trim());
+		}
+		throw new DragonShardException("shard column '" + shardColumn + "' value '" + value + "' can't convert to long");
+	}
+
+	private static class ModRouteRule extends NativeRouteRule {
+		private final boolean toLong;
+
+		private final long divisor;
+
+		private final long modulus;// 0表示不取模
+
+		ModRouteRule(String shardColumn, boolean toLong, long divisor, long modulus) {
+			super(shardColumn);
+			this.toLong = toLong;
+			this.divisor = divisor;
+			this.modulus = modulus;
+		}
+
+		@Override
+		public long eval(Object shardColumnValue) {
+			long value;
+			if (toLong) {
+				value = toLong(shardColumnValue);
+			} else if (shardColumnValue instanceof Integer || shardColumnValue instanceof Long
+			      || shardColumnValue instanceof Short || shardColumnValue instanceof Byte) {
+				value = ((Number) shardColumnValue).longValue();
+			} else {// 其他类型在groovy中的运算结果不是Long，之前也无法路由
+				throw new DragonShardException("shard column '" + getShardColumn() + "' value '" + shardColumnValue
+				      + "' is not integer,use ${" + getShardColumn() + "}.toLong() in route rule");
+			}
+			if (divisor != 1) {
+				value = value / divisor;
+			}
+			if (modulus != 0) {
+				value = value % modulus;
+			}
+			return value;
+		}
+
+		@Override
+		public long[] getIndexRange() {
+			if (modulus == 0) {
+				return null;
+			}
+			// 与java一样，负数取模结果为负数，但是真实库表的编号不会是负数，只包含非负的结果
+			return new long[] { 0, modulus - 1 };
+		}
+	}
+
+	/**
+	 * 整数或者可以解析为整数的字符串按照long计算hash，保证同一个值不管以字符串还是数字传入，路由结果都相同；其他按照字符串计算hash
+	 */
+	private static class HashModRouteRule extends NativeRouteRule {
+		private static final HashFunction MURMUR3 = Hashing.murmur3_32();
+
+		private final long modulus;
+
+		HashModRouteRule(String shardColumn, long modulus) {
+			super(shardColumn);
+			this.modulus = modulus;
+		}
+
+		@Override
+		public long eval(Object shardColumnValue) {
+			if (shardColumnValue == null) {
+				throw new DragonShardException("shard column '" + getShardColumn() + "' value can't be null");
+			}
+			int hash;
+			if (shardColumnValue instanceof Integer || shardColumnValue instanceof Long
+			      || shardColumnValue instanceof Short || shardColumnValue instanceof Byte
+			      || shardColumnValue instanceof BigInteger) {
+				hash = MURMUR3.hashLong(((Number) shardColumnValue).longValue()).asInt();
+			} else {
+				String str = shardColumnValue.toString().trim();
+				if (isLong(str)) {
+					hash = MURMUR3.hashLong(Long.parseLong(str)).asInt();
+				} else {
+					hash = MURMUR3.hashUnencodedChars(str).asInt();
+				}
+			}
+			return (hash & Integer.MAX_VALUE) % modulus;
+		}
+
+		@Override
+		public long[] getIndexRange() {
+			return new long[] { 0, modulus - 1 };
+		}
+
+		private static boolean isLong(String str) {
+			int length = str.length();
+			if (length == 0 || length > 19) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				char c = str.charAt(i);
+				if ((c < '0' || c > '9') && !(i == 0 && c == '-' && length > 1)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static class RangeRouteRule extends NativeRouteRule {
+		// 升序排列的下界，与indexes一一对应
+		private final long[] lowerBounds;
+
+		private final long[] indexes;
+
+		RangeRouteRule(String shardColumn, String rangeStr, String originRouteRuleStr) {
+			super(shardColumn);
+			String[] ranges = rangeStr.split(";");
+			this.lowerBounds = new long[ranges.length];
+			this.indexes = new long[ranges.length];
+			for (int i = 0; i < ranges.length; i++) {
+				String[] range = ranges[i].split(":");
+				if (range.length != 2) {
+					throw new DragonShardException("illegal range '" + ranges[i] + "' in route rule:" + originRouteRuleStr);
+				}
+				lowerBounds[i] = Long.parseLong(range[0]);
+				indexes[i] = Long.parseLong(range[1]);
+				if (i > 0 && lowerBounds[i] <= lowerBounds[i - 1]) {
+					throw new DragonShardException("range lower bounds must be ascending in route rule:" + originRouteRuleStr);
+				}
+			}
+		}
+
+		@Override
+		public long eval(Object shardColumnValue) {
+			long value = toLong(shardColumnValue);
+			int pos = Arrays.binarySearch(lowerBounds, value);
+			if (pos < 0) {
+				pos = -pos - 2;// 插入点的前一个位置，即最后一个<=value的下界
+			}
+			if (pos < 0) {
+				throw new DragonShardException("shard column '" + getShardColumn() + "' value " + value
+				      + " is less than min range lower bound " + lowerBounds[0]);
+			}
+			return indexes[pos];
+		}
+
+		@Override
+		public long[] getIndexRange() {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for (long index : indexes) {
+				min = Math.min(min, index);
+				max = Math.max(max, index);
+			}
+			return new long[] { min, max };
+		}
+	}
+
+	/**
+	 * 支持java.util.Date及其子类、毫秒数、以及yyyy-MM-dd开头的字符串
+	 */
+	private static class DateRouteRule extends NativeRouteRule {
+		private static final int YEAR_MONTH = 0;
+
+		private static final int YEAR_MONTH_DAY = 1;
+
+		private static final int MONTH = 2;
+
+		private final int unit;
+
+		DateRouteRule(String shardColumn, String unit) {
+			super(shardColumn);
+			if ("yearMonth".equals(unit)) {
+				this.unit = YEAR_MONTH;
+			} else if ("yearMonthDay".equals(unit)) {
+				this.unit = YEAR_MONTH_DAY;
+			} else {
+				this.unit = MONTH;
+			}
+		}
+
+		@Override
+		public long eval(Object shardColumnValue) {
+			int year;
+			int month;// 1~12
+			int day;
+			if (shardColumnValue instanceof Date || shardColumnValue instanceof Long) {
+				Calendar calendar = Calendar.getInstance();
+				calendar.setTimeInMillis(shardColumnValue instanceof Date ? ((Date) shardColumnValue).getTime()
+				      : (Long) shardColumnValue);
+				year = calendar.get(Calendar.YEAR);
+				month = calendar.get(Calendar.MONTH) + 1;
+				day = calendar.get(Calendar.DAY_OF_MONTH);
+			} else if (shardColumnValue instanceof String) {
+				String str = ((String) shardColumnValue).trim();
+				if (str.startsWith("'") || str.startsWith("\"")) {// sql中的字符串常量带有引号
+					str = str.substring(1);
+				}
+				try {
+					year = Integer.parseInt(str.substring(0, 4));
+					month = Integer.parseInt(str.substring(5, 7));
+					day = Integer.parseInt(str.substring(8, 10));
+				} catch (RuntimeException e) {
+					throw new DragonShardException("shard column '" + getShardColumn() + "' value '" + shardColumnValue
+					      + "' is not yyyy-MM-dd format", e);
+				}
+			} else {
+				throw new DragonShardException(
+				      "shard column '" + getShardColumn() + "' value '" + shardColumnValue + "' is not a date");
+			}
+			switch (unit) {
+			case YEAR_MONTH:
+				return year * 100L + month;
+			case YEAR_MONTH_DAY:
+				return year * 10000L + month * 100L + day;
+			default:
+				return month;
+			}
+		}
+
+		@Override
+		public long[] getIndexRange() {
+			if (unit == MONTH) {
+				return new long[] { 1, 12 };
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.tianshouzhi.dragon.sharding.route;
+
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import groovy.lang.GroovyClassLoader;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将路由规则编译成groovy class，例如规则：${user_id}.toLong().intdiv(100)%100，会生成如下类：
+ * 
+ * <pre>
+ * class DragonRouteRule_0 implements CompiledRouteRule {
+ *     Object eval(Object[] args) {
+ *         def user_id = args[0]
+ *         user_id.toLong().intdiv(100)%100
+ *     }
+ * }
+ * </pre>
+ * 
+ * 每个规则只在配置加载时编译一次，相比{@link DragonGroovyEngine#eval}，避免了每次调用都创建ScriptContext以及绑定变量的开销
+ */
+public abstract class RouteRuleCompiler {
+	private static final GroovyClassLoader classLoader = new GroovyClassLoader(
+	      RouteRuleCompiler.class.getClassLoader());
+
+	private static final AtomicInteger classIndex = new AtomicInteger();
+
+	/**
+	 * @param script 替换掉变量占位符之后的规则，例如：user_id.toLong().intdiv(100)%100
+	 * @param shardColumns 规则中用到的分区字段，生成的类按照这个顺序接收参数
+	 */
+	public static CompiledRouteRule compile(String script, List<String> shardColumns) throws DragonShardException {
+		String className = "DragonRouteRule_" + classIndex.getAndIncrement();
+		StringBuilder source = new StringBuilder();
+		source.append("class ").append(className).append(" implements ").append(CompiledRouteRule.class.getName())
+		      .append(" {\n");
+		source.append("\tObject eval(Object[] args) {\n");
+		for (int i = 0; i < shardColumns.size(); i++) {
+			source.append("\t\tdef ").append(shardColumns.get(i)).append(" = args[").append(i).append("]\n");
+		}
+		source.append("\t\t").append(script).append("\n");
+		source.append("\t}\n");
+		source.append("}");
+		try {
+			Class<?> clazz = classLoader.parseClass(source.toString(), className + ".groovy");
+			return (CompiledRouteRule) clazz.newInstance();
+		} catch (Exception e) {
+			throw new DragonShardException("compile route rule '" + script + "' error,source:\n" + source, e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.tianshouzhi.dragon.common.jdbc.sqltype;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlTypeUtilTest {
+    @Test
+    public void readAndWrite() throws Exception {
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where id = 1", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("  \n SHOW tables", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("/* comment */ explain select 1", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("# comment\nselect 1", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("update user set name = 'select' where id = 1", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("insert into user(id) values (1)", false));
+        //关键字之后必须是单词的边界
+        Assert.assertFalse(SqlTypeUtil.isQuery("selectx from user", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery(" /* comment */ ", false));
+    }
+
+    @Test
+    public void forceMasterHint() throws Exception {
+        Assert.assertFalse(SqlTypeUtil.isQuery("/*master*/select * from user", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("select /*master*/ * from user", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("select * from user where id = 1 /*master*/", false));
+        //字符串中的不是hint
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = '/*master*/'", false));
+    }
+
+    @Test
+    public void forUpdate() throws Exception {
+        Assert.assertFalse(SqlTypeUtil.isQuery("select * from user where id = 1 for update", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("SELECT * FROM user FOR\n\tUPDATE", false));
+        //for和update之间可以有注释
+        Assert.assertFalse(SqlTypeUtil.isQuery("select * from user FOR /*x*/ UPDATE", false));
+        //字符串、标识符和注释中的for update不算
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = 'for update'", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = \"for\" update_time", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select `for` from user /* for update */", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select for_update from user # for update", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = 'it\\'s for update'", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = 'it''s for update'", false));
+        //show中的for update不影响
+        Assert.assertTrue(SqlTypeUtil.isQuery("show grants for update", false));
+    }
+
+    @Test
+    public void lineComment() throws Exception {
+        //--之后是空白才是注释
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user -- for update", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("-- comment\nselect * from user", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("select * from user --for update", false));
+        Assert.assertFalse(SqlTypeUtil.isQuery("--comment\nselect * from user", false));
+    }
+
+    @Test
+    public void unterminatedQuote() throws Exception {
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = 'abc for update", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user where name = 'abc\\", false));
+        Assert.assertTrue(SqlTypeUtil.isQuery("select * from user /* for update", false));
+    }
+
+    @Test
+    public void useCache() throws Exception {
+        String sql = "select * from user where id = 2 for update";
+        Assert.assertFalse(SqlTypeUtil.isQuery(sql, true));
+        Assert.assertFalse(SqlTypeUtil.isQuery(sql, true));
+    }
+
+    @Test
+    public void parseSqlType() throws Exception {
+        Assert.assertEquals(SqlType.SELECT, SqlTypeUtil.parseSqlType("/* x */ Select 1"));
+        Assert.assertEquals(SqlType.DEBUG, SqlTypeUtil.parseSqlType("debug"));
+        Assert.assertNull(SqlTypeUtil.parseSqlType("delete from user"));
+        Assert.assertNull(SqlTypeUtil.parseSqlType("-- x"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.tianshouzhi.dragon.ha.exception;
+
+import com.tianshouzhi.dragon.ha.config.CircuitBreakerConfig;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CircuitBreakerTest {
+    private DataSourceAvailability availability;
+
+    private RealDataSourceWrapper dataSourceWrapper;
+
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() throws Exception {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumRequests(5);
+        config.setFailureRateThreshold(50);
+        config.setInitialBackoffMillis(1000);
+        config.setMaxBackoffMillis(4000);
+        config.setHalfOpenRequests(3);
+        availability = new DataSourceAvailability("ha");
+        dataSourceWrapper = new RealDataSourceWrapper("ha", "slave", 1, 0, null, null);
+        circuitBreaker = new CircuitBreaker(availability, dataSourceWrapper, config);
+        dataSourceWrapper.setCircuitBreaker(circuitBreaker);
+    }
+
+    @Test
+    public void openOnConsecutiveFailures() throws Exception {
+        //请求数没有达到minimumRequests时不熔断
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(availability.getSnapshot().isAvailable("slave"));
+
+        circuitBreaker.onFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(dataSourceWrapper.isAvailable());
+        Assert.assertFalse(availability.getSnapshot().isAvailable("slave"));
+        Assert.assertArrayEquals(new RealDataSourceWrapper[]{dataSourceWrapper},
+                availability.getSnapshot().getInvalidDataSources());
+        //熔断之后不放行请求
+        Assert.assertFalse(circuitBreaker.tryAcquireTrial());
+    }
+
+    @Test
+    public void stayClosedUnderThreshold() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.onSuccess();
+            if (i % 2 == 0) {
+                circuitBreaker.onSuccess();
+                circuitBreaker.onFailure();
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void backoffGrowth() throws Exception {
+        long before = System.currentTimeMillis();
+        open();
+        assertNextProbe(before, 1000);
+
+        //每次探测失败等待时间加倍，不超过maxBackoffMillis
+        long[] backoffs = {2000, 4000, 4000};
+        for (long backoff : backoffs) {
+            before = System.currentTimeMillis();
+            circuitBreaker.onProbeFailure();
+            Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+            assertNextProbe(before, backoff);
+        }
+
+        //恢复之后重新从initialBackoffMillis开始
+        circuitBreaker.onProbeSuccess();
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onSuccess();
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        before = System.currentTimeMillis();
+        open();
+        assertNextProbe(before, 1000);
+    }
+
+    @Test
+    public void halfOpenTrialPermits() throws Exception {
+        open();
+        circuitBreaker.onProbeSuccess();
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        //半开状态下仍然是不可用的，只通过tryAcquireTrial放行
+        Assert.assertFalse(availability.getSnapshot().isAvailable("slave"));
+
+        //多个线程同时获取，每个许可只能被一个线程拿到
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger acquired = new AtomicInteger();
+        long second = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 10; j++) {
+                            if (circuitBreaker.tryAcquireTrial()) {
+                                acquired.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        if (System.currentTimeMillis() / 1000 == second) {// 跨秒时许可会重新计数
+            Assert.assertEquals(3, acquired.get());
+            Assert.assertFalse(circuitBreaker.tryAcquireTrial());
+        } else {
+            Assert.assertTrue(acquired.get() >= 3);
+        }
+    }
+
+    @Test
+    public void halfOpenToClosed() throws Exception {
+        open();
+        circuitBreaker.onProbeSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(dataSourceWrapper.isAvailable());
+        Assert.assertTrue(availability.getSnapshot().getInvalidRealDSNames().isEmpty());
+        Assert.assertEquals(0, availability.getSnapshot().getInvalidDataSources().length);
+        Assert.assertFalse(circuitBreaker.tryAcquireTrial());
+    }
+
+    @Test
+    public void halfOpenToOpen() throws Exception {
+        open();
+        circuitBreaker.onProbeSuccess();
+        circuitBreaker.onSuccess();
+        long before = System.currentTimeMillis();
+        circuitBreaker.onFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(availability.getSnapshot().isAvailable("slave"));
+        //重新熔断，等待时间继续增长
+        assertNextProbe(before, 2000);
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onFailure();
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    // 下一次探测的时间在[before + backoff, now + backoff]之间
+    private void assertNextProbe(long before, long backoff) {
+        long after = System.currentTimeMillis();
+        Assert.assertFalse(circuitBreaker.needProbe(before + backoff - 1));
+        Assert.assertTrue(circuitBreaker.needProbe(after + backoff));
+    }
+}
@@ -0,0 +1,99 @@
+package com.tianshouzhi.dragon.ha.router;
+
+import com.tianshouzhi.dragon.ha.hint.DragonHAHintUtil;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.DragonHADatasource;
+import com.tianshouzhi.dragon.ha.jdbc.datasource.RealDataSourceWrapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class RouterManagerTest {
+    private DragonHADatasource dragonHADatasource;
+
+    private RouterManager routerManager;
+
+    @Before
+    public void setUp() throws Exception {
+        dragonHADatasource = new DragonHADatasource();
+        dragonHADatasource.setDsName("router_manager_test");
+        dragonHADatasource.setRouterStrategy(RouterStrategy.WEIGHT);
+        dragonHADatasource.addRealDatasource("router_manager_test", "master", 0, 10, null, null);
+        dragonHADatasource.addRealDatasource("router_manager_test", "slave1", 10, 0, null, null);
+        dragonHADatasource.addRealDatasource("router_manager_test", "slave2", 10, 0, null, null);
+        //从库允许的最大延迟为10秒
+        getRealDS("slave1").setMaxReplicationLag(10);
+        getRealDS("slave2").setMaxReplicationLag(10);
+        routerManager = new RouterManager(dragonHADatasource);
+    }
+
+    @Test
+    public void routeReadToAllReplicas() throws Exception {
+        getRealDS("slave1").setReplicationLag(1);
+        getRealDS("slave2").setReplicationLag(2);
+        Set<String> routed = routeRead(-1);
+        Assert.assertEquals(2, routed.size());
+        Assert.assertTrue(routed.contains("slave1"));
+        Assert.assertTrue(routed.contains("slave2"));
+    }
+
+    @Test
+    public void laggingReplicaSkipped() throws Exception {
+        getRealDS("slave1").setReplicationLag(30);
+        getRealDS("slave2").setReplicationLag(2);
+        Set<String> routed = routeRead(-1);
+        Assert.assertEquals(1, routed.size());
+        Assert.assertTrue(routed.contains("slave2"));
+    }
+
+    @Test
+    public void fallbackToMasterWhenAllReplicasLagging() throws Exception {
+        getRealDS("slave1").setReplicationLag(30);
+        getRealDS("slave2").setReplicationLag(20);
+        Set<String> routed = routeRead(-1);
+        Assert.assertEquals(1, routed.size());
+        Assert.assertTrue(routed.contains("master"));
+    }
+
+    @Test
+    public void hintOverridesConfiguredBudget() throws Exception {
+        getRealDS("slave1").setReplicationLag(30);
+        getRealDS("slave2").setReplicationLag(5);
+        //放宽到60秒，两个从库都可以读
+        Assert.assertEquals(2, routeRead(60).size());
+        //收紧到3秒，两个从库都超过，读主库
+        Set<String> routed = routeRead(3);
+        Assert.assertEquals(1, routed.size());
+        Assert.assertTrue(routed.contains("master"));
+    }
+
+    @Test
+    public void unknownLagNotSkipped() throws Exception {
+        //没有采样到延迟时，不认为从库延迟过大
+        Set<String> routed = routeRead(3);
+        Assert.assertEquals(2, routed.size());
+    }
+
+    @Test
+    public void hintConsumedOnce() throws Exception {
+        DragonHAHintUtil.maxReplicationLag(5);
+        Assert.assertEquals(5, DragonHAHintUtil.consumeMaxReplicationLag());
+        //清除之后使用数据源的配置
+        Assert.assertEquals(-1, DragonHAHintUtil.getMaxReplicationLag());
+        Assert.assertEquals(-1, DragonHAHintUtil.consumeMaxReplicationLag());
+    }
+
+    private Set<String> routeRead(long maxReplicationLag) {
+        Set<String> routed = new HashSet<String>();
+        for (int i = 0; i < 200; i++) {
+            routed.add(routerManager.routeRead(maxReplicationLag));
+        }
+        return routed;
+    }
+
+    private RealDataSourceWrapper getRealDS(String realDSName) {
+        return dragonHADatasource.getRealDSMap().get(realDSName);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tianshouzhi.dragon.ha.router.impl;
+
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class RandomRouterTest {
+    private static final int TIMES = 90000;
+
+    private final RandomRouter router = new RandomRouter("random_router_test", Arrays.asList("a", "b", "c"));
+
+    @Test
+    public void distributeEvenly() throws Exception {
+        Map<String, Integer> counts = route(Collections.<String>emptySet());
+        Assert.assertEquals(3, counts.size());
+        for (Integer count : counts.values()) {
+            Assert.assertEquals(1 / 3.0, count / (double) TIMES, 0.02);
+        }
+    }
+
+    @Test
+    public void distributeEvenlyWithExcludes() throws Exception {
+        Map<String, Integer> counts = route(Collections.singleton("b"));
+        Assert.assertNull(counts.get("b"));
+        Assert.assertEquals(0.5, counts.get("a") / (double) TIMES, 0.02);
+        Assert.assertEquals(0.5, counts.get("c") / (double) TIMES, 0.02);
+
+        counts = route(new HashSet<String>(Arrays.asList("a", "b")));
+        Assert.assertEquals(Collections.singletonMap("c", TIMES), counts);
+    }
+
+    @Test
+    public void alternatingExcludes() throws Exception {
+        Set<String> excludeA = Collections.singleton("a");
+        Set<String> excludeB = Collections.singleton("b");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse("a".equals(router.doRoute(excludeA)));
+            Assert.assertFalse("b".equals(router.doRoute(excludeB)));
+        }
+    }
+
+    @Test(expected = DragonException.class)
+    public void allExcluded() throws Exception {
+        router.doRoute(new HashSet<String>(Arrays.asList("a", "b", "c")));
+    }
+
+    private Map<String, Integer> route(Set<String> excludes) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < TIMES; i++) {
+            String realDSName = router.doRoute(excludes);
+            Integer count = counts.get(realDSName);
+            counts.put(realDSName, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+}
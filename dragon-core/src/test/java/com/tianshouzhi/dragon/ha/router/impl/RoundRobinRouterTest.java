@@ -0,0 +1,79 @@
+package com.tianshouzhi.dragon.ha.router.impl;
+
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RoundRobinRouterTest {
+    private final RoundRobinRouter router = new RoundRobinRouter("round_robin_router_test", weights());
+
+    @Test
+    public void smoothWeightedOrder() throws Exception {
+        //一个周期内权重大的数据源分散开，而不是连续选择
+        Assert.assertEquals(Arrays.asList("a", "a", "b", "a", "c", "a", "a"), route(Collections.<String>emptySet(), 7));
+        Assert.assertEquals(Arrays.asList("a", "a", "b", "a", "c", "a", "a"), route(Collections.<String>emptySet(), 7));
+    }
+
+    @Test
+    public void distributeWithExcludes() throws Exception {
+        List<String> routed = route(Collections.singleton("a"), 100);
+        Assert.assertEquals(50, Collections.frequency(routed, "b"));
+        Assert.assertEquals(50, Collections.frequency(routed, "c"));
+
+        routed = route(new HashSet<String>(Arrays.asList("a", "b")), 10);
+        Assert.assertEquals(Collections.nCopies(10, "c"), routed);
+    }
+
+    @Test
+    public void alternatingExcludes() throws Exception {
+        Set<String> excludeA = Collections.singleton("a");
+        Set<String> excludeB = Collections.singleton("b");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse("a".equals(router.doRoute(excludeA)));
+            Assert.assertFalse("b".equals(router.doRoute(excludeB)));
+        }
+    }
+
+    @Test
+    public void divideByGreatestCommonDivisor() throws Exception {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        weights.put("a", 10);
+        weights.put("b", 20);
+        RoundRobinRouter router = new RoundRobinRouter("round_robin_router_test", weights);
+        List<String> routed = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            routed.add(router.doRoute(Collections.<String>emptySet()));
+        }
+        Assert.assertEquals(Arrays.asList("b", "a", "b"), routed);
+    }
+
+    @Test(expected = DragonException.class)
+    public void allExcluded() throws Exception {
+        router.doRoute(new HashSet<String>(Arrays.asList("a", "b", "c")));
+    }
+
+    private List<String> route(Set<String> excludes, int times) {
+        List<String> routed = new ArrayList<String>();
+        for (int i = 0; i < times; i++) {
+            routed.add(router.doRoute(excludes));
+        }
+        return routed;
+    }
+
+    private static Map<String, Integer> weights() {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        weights.put("a", 5);
+        weights.put("b", 1);
+        weights.put("c", 1);
+        return weights;
+    }
+}
@@ -0,0 +1,103 @@
+package com.tianshouzhi.dragon.ha.router.impl;
+
+import com.tianshouzhi.dragon.common.exception.DragonException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class WeightRouterTest {
+    private static final int TIMES = 100000;
+
+    private final WeightRouter router = new WeightRouter("weight_router_test", weights());
+
+    @Test
+    public void distributeByWeight() throws Exception {
+        Map<String, Integer> counts = route(Collections.<String>emptySet());
+        assertRatio(0.5, counts.get("a"));
+        assertRatio(0.3, counts.get("b"));
+        assertRatio(0.2, counts.get("c"));
+        //权重为0的数据源不会被选中
+        Assert.assertNull(counts.get("d"));
+    }
+
+    @Test
+    public void distributeByWeightWithExcludes() throws Exception {
+        Map<String, Integer> counts = route(Collections.singleton("a"));
+        Assert.assertNull(counts.get("a"));
+        assertRatio(0.6, counts.get("b"));
+        assertRatio(0.4, counts.get("c"));
+
+        counts = route(new HashSet<String>(Arrays.asList("a", "b")));
+        Assert.assertEquals(Collections.singletonMap("c", TIMES), counts);
+    }
+
+    @Test
+    public void alternatingExcludesCached() throws Exception {
+        Set<String> excludeA = Collections.singleton("a");
+        Set<String> excludeB = Collections.singleton("b");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse("a".equals(router.doRoute(excludeA)));
+            Assert.assertFalse("b".equals(router.doRoute(excludeB)));
+        }
+        //交替排除不同的数据源时，两种排除结果都被缓存
+        Assert.assertSame(cachedSelector(excludeA), cachedSelector(new HashSet<String>(excludeA)));
+        Assert.assertSame(cachedSelector(excludeB), cachedSelector(new HashSet<String>(excludeB)));
+    }
+
+    @Test(expected = DragonException.class)
+    public void allExcluded() throws Exception {
+        router.doRoute(new HashSet<String>(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void excludedCacheBounded() throws Exception {
+        ExcludedCache<String> cache = new ExcludedCache<String>() {
+            @Override
+            protected String create(Set<String> excludes) {
+                return excludes.toString();
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("[ds" + i + "]", cache.get(Collections.singleton("ds" + i)));
+        }
+        Assert.assertTrue(cache.size() <= 16);
+    }
+
+    private Object cachedSelector(Set<String> excludes) throws Exception {
+        Field field = WeightRouter.class.getDeclaredField("excludedSelectors");
+        field.setAccessible(true);
+        return ((ExcludedCache<?>) field.get(router)).get(excludes);
+    }
+
+    private Map<String, Integer> route(Set<String> excludes) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < TIMES; i++) {
+            String realDSName = router.doRoute(excludes);
+            Integer count = counts.get(realDSName);
+            counts.put(realDSName, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private static void assertRatio(double expected, Integer count) {
+        Assert.assertNotNull(count);
+        Assert.assertEquals(expected, count / (double) TIMES, 0.02);
+    }
+
+    private static Map<String, Integer> weights() {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        weights.put("a", 5);
+        weights.put("b", 3);
+        weights.put("c", 2);
+        weights.put("d", 0);
+        return weights;
+    }
+}
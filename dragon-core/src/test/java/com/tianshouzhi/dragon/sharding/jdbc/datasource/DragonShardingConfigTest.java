@@ -0,0 +1,58 @@
+package com.tianshouzhi.dragon.sharding.jdbc.datasource;
+
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewritePlan;
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DragonShardingConfigTest {
+    private LogicDatasource logicDatasource;
+
+    private LogicTable logicTable;
+
+    private DragonShardingConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        logicTable = newLogicTable();
+        config = new DragonShardingConfig("test", logicDatasource, Collections.singletonMap("user", logicTable),
+                null, 0, 0);
+    }
+
+    @Test
+    public void replaceLogicTable() throws Exception {
+        Map<String, Object> params = Collections.<String, Object>singletonMap("id", 5L);
+        Assert.assertEquals("user_1", logicTable.getRealTBName(params));
+        Assert.assertEquals("user_1", logicTable.getRealTBName(params));
+        Assert.assertEquals(1, logicTable.getRouteCacheMissCount());
+        Assert.assertEquals(1, logicTable.getRouteCacheHitCount());
+        config.putCache("select * from user where id = ?", new Object());
+        config.putRewritePlan("select * from user where id = ?", new SqlRewritePlan(
+                Collections.singletonList(logicTable), null, null, null));
+
+        LogicTable newLogicTable = newLogicTable();
+        config.replaceLogicTable(newLogicTable);
+        Assert.assertSame(newLogicTable, config.getLogicTableMap().get("user"));
+        //旧配置的路由结果缓存、sql的解析结果与重写结果都失效
+        Assert.assertEquals("user_1", logicTable.getRealTBName(params));
+        Assert.assertEquals(2, logicTable.getRouteCacheMissCount());
+        Assert.assertNull(config.getCache("select * from user where id = ?"));
+        Assert.assertNull(config.getRewritePlan("select * from user where id = ?"));
+    }
+
+    //groovy规则才会缓存路由结果
+    private LogicTable newLogicTable() throws Exception {
+        return new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong().abs()%4"),
+                Collections.singleton("${id}.toLong().abs()%1"), logicDatasource, null, 16);
+    }
+}
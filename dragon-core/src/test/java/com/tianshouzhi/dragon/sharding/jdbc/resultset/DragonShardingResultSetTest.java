@@ -0,0 +1,80 @@
+package com.tianshouzhi.dragon.sharding.jdbc.resultset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql.MergeTestSupport.*;
+
+public class DragonShardingResultSetTest {
+    @Test
+    public void bufferedRowsAdvance() throws Exception {
+        List<DragonShardingResultSet.RowRecord> rowRecords = new ArrayList<DragonShardingResultSet.RowRecord>();
+        DragonShardingResultSet shardingResultSet = newShardingResultSet(2, new ArrayList<ResultSet>(), rowRecords);
+        rowRecords.add(row(shardingResultSet, 1L, "a"));
+        rowRecords.add(row(shardingResultSet, 2L, "b"));
+
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(1L, shardingResultSet.getLong(1));
+        Assert.assertEquals("a", shardingResultSet.getString("c2"));
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(2L, shardingResultSet.getLong("c1"));
+        Assert.assertEquals("b", shardingResultSet.getString(2));
+        Assert.assertFalse(shardingResultSet.next());
+    }
+
+    @Test
+    public void wasNullReflectsLastReadColumn() throws Exception {
+        List<DragonShardingResultSet.RowRecord> rowRecords = new ArrayList<DragonShardingResultSet.RowRecord>();
+        DragonShardingResultSet shardingResultSet = newShardingResultSet(2, new ArrayList<ResultSet>(), rowRecords);
+        rowRecords.add(row(shardingResultSet, 1, null));
+
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(1, shardingResultSet.getInt(1));
+        Assert.assertFalse(shardingResultSet.wasNull());
+        Assert.assertNull(shardingResultSet.getString("c2"));
+        Assert.assertTrue(shardingResultSet.wasNull());
+        Assert.assertEquals(1, shardingResultSet.getObject(1));
+        Assert.assertFalse(shardingResultSet.wasNull());
+    }
+
+    @Test
+    public void wasNullInCursorMode() throws Exception {
+        final List<DragonShardingResultSet.RowRecord> rowRecords = new ArrayList<DragonShardingResultSet.RowRecord>();
+        DragonShardingResultSet shardingResultSet = newShardingResultSet(2, new ArrayList<ResultSet>(),
+                new RowRecordCursor() {
+                    private Iterator<DragonShardingResultSet.RowRecord> it;
+
+                    @Override
+                    public DragonShardingResultSet.RowRecord next() throws SQLException {
+                        if (it == null) {
+                            it = rowRecords.iterator();
+                        }
+                        return it.hasNext() ? it.next() : null;
+                    }
+
+                    @Override
+                    public void close() throws SQLException {
+                    }
+                });
+        rowRecords.addAll(Arrays.asList(row(shardingResultSet, null, "a"), row(shardingResultSet, 2L, null)));
+
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(0L, shardingResultSet.getLong(1));
+        Assert.assertTrue(shardingResultSet.wasNull());
+        Assert.assertEquals("a", shardingResultSet.getString(2));
+        Assert.assertFalse(shardingResultSet.wasNull());
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(2L, shardingResultSet.getLong(1));
+        Assert.assertFalse(shardingResultSet.wasNull());
+        Assert.assertNull(shardingResultSet.getString(2));
+        Assert.assertTrue(shardingResultSet.wasNull());
+        Assert.assertFalse(shardingResultSet.next());
+    }
+}
@@ -0,0 +1,123 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql.MergeTestSupport.*;
+
+public class GroupByAggregatorTest {
+    private final DragonShardingResultSet rs = newShardingResultSet(5);
+
+    @Test
+    public void aggregateByGroup() throws Exception {
+        //select dept, count(*), sum(salary), max(age), min(age) from emp group by dept
+        GroupByAggregator aggregator = new GroupByAggregator(new int[]{1}, new int[]{2, 3, 4, 5},
+                new int[]{GroupByAggregator.COUNT, GroupByAggregator.SUM, GroupByAggregator.MAX, GroupByAggregator.MIN});
+        //分库1
+        aggregator.add(row(rs, "b", 2L, new BigDecimal("10.5"), 30, 20));
+        aggregator.add(row(rs, "a", 1L, new BigDecimal("1"), 40, 40));
+        //分库2
+        aggregator.add(row(rs, "a", 3L, new BigDecimal("2.25"), 35, 18));
+        aggregator.add(row(rs, "b", 1L, new BigDecimal("0.5"), 50, 25));
+        //分库3
+        aggregator.add(row(rs, "a", 2L, new BigDecimal("3"), 20, 19));
+
+        List<DragonShardingResultSet.RowRecord> result = aggregator.getResult();
+        Assert.assertEquals(5, aggregator.getInputRowCount());
+        Assert.assertEquals(2, result.size());
+        //保持分组第一次出现的顺序
+        Assert.assertArrayEquals(new Object[]{"b", 3L, new BigDecimal("11.0"), 50, 20}, values(result.get(0), 5));
+        Assert.assertArrayEquals(new Object[]{"a", 6L, new BigDecimal("6.25"), 40, 18}, values(result.get(1), 5));
+    }
+
+    @Test
+    public void multipleGroupByColumns() throws Exception {
+        //select dept, sex, count(*) from emp group by dept, sex
+        GroupByAggregator aggregator = new GroupByAggregator(new int[]{1, 2}, new int[]{3},
+                new int[]{GroupByAggregator.COUNT});
+        aggregator.add(row(rs, "a", "m", 1L));
+        aggregator.add(row(rs, "a", "f", 2L));
+        aggregator.add(row(rs, "a", "m", 3L));
+        aggregator.add(row(rs, "b", "m", 4L));
+
+        List<DragonShardingResultSet.RowRecord> result = aggregator.getResult();
+        Assert.assertEquals(3, result.size());
+        Assert.assertArrayEquals(new Object[]{"a", "m", 4L}, values(result.get(0), 3));
+        Assert.assertArrayEquals(new Object[]{"a", "f", 2L}, values(result.get(1), 3));
+        Assert.assertArrayEquals(new Object[]{"b", "m", 4L}, values(result.get(2), 3));
+    }
+
+    @Test
+    public void noGroupBy() throws Exception {
+        //select count(*), sum(x), max(x), min(x) from t，没有记录的分库返回0和null
+        GroupByAggregator aggregator = new GroupByAggregator(new int[0], new int[]{1, 2, 3, 4},
+                new int[]{GroupByAggregator.COUNT, GroupByAggregator.SUM, GroupByAggregator.MAX, GroupByAggregator.MIN});
+        aggregator.add(row(rs, 0L, null, null, null));
+        aggregator.add(row(rs, 2L, 7.5, 5L, 2L));
+        aggregator.add(row(rs, 0L, null, null, null));
+        aggregator.add(row(rs, 1L, 1.0, 9L, 9L));
+
+        List<DragonShardingResultSet.RowRecord> result = aggregator.getResult();
+        Assert.assertEquals(1, result.size());
+        Assert.assertArrayEquals(new Object[]{3L, 8.5, 9L, 2L}, values(result.get(0), 4));
+    }
+
+    @Test
+    public void avgAndDistinctCount() throws Exception {
+        //select dept, avg(salary), count(distinct city) from emp group by dept
+        //分库sql：select dept, sum(salary), city, count(salary) from emp group by dept, city
+        GroupByAggregator aggregator = new GroupByAggregator(new int[]{1}, new int[]{2, 3, 4},
+                new int[]{GroupByAggregator.SUM, GroupByAggregator.DISTINCT_COUNT, GroupByAggregator.COUNT});
+        aggregator.setAvgColumns(new int[]{2}, new int[]{4});
+        //分库1
+        aggregator.add(row(rs, "a", new BigDecimal("300"), "bj", 2L));
+        aggregator.add(row(rs, "a", new BigDecimal("100"), "sh", 1L));
+        aggregator.add(row(rs, "b", new BigDecimal("50"), "bj", 1L));
+        //分库2，city为null不参与去重计数
+        aggregator.add(row(rs, "a", new BigDecimal("200"), "bj", 1L));
+        aggregator.add(row(rs, "b", new BigDecimal("70"), null, 2L));
+
+        List<DragonShardingResultSet.RowRecord> result = aggregator.getResult();
+        Assert.assertEquals(2, result.size());
+        //avg为600/4，decimal比sum多4位小数
+        Assert.assertArrayEquals(new Object[]{"a", new BigDecimal("150.0000"), 2L, 4L}, values(result.get(0), 4));
+        Assert.assertArrayEquals(new Object[]{"b", new BigDecimal("40.0000"), 1L, 3L}, values(result.get(1), 4));
+    }
+
+    @Test
+    public void avgOfIntegerAndDouble() throws Exception {
+        //没有group by，sum是整数或者浮点数
+        GroupByAggregator aggregator = new GroupByAggregator(new int[0], new int[]{1, 2, 3},
+                new int[]{GroupByAggregator.SUM, GroupByAggregator.SUM, GroupByAggregator.COUNT});
+        aggregator.setAvgColumns(new int[]{1, 2}, new int[]{3, 3});
+        aggregator.add(row(rs, 10L, 1.5, 2L));
+        aggregator.add(row(rs, null, null, 0L));
+        aggregator.add(row(rs, 1L, 2.5, 1L));
+        Assert.assertArrayEquals(new Object[]{new BigDecimal("3.6667"), 4.0 / 3, 3L},
+                values(aggregator.getResult().get(0), 3));
+
+        //所有分库都没有记录时avg为null
+        aggregator = new GroupByAggregator(new int[0], new int[]{1, 2}, new int[]{GroupByAggregator.SUM,
+                GroupByAggregator.COUNT});
+        aggregator.setAvgColumns(new int[]{1}, new int[]{2});
+        aggregator.add(row(rs, null, 0L));
+        aggregator.add(row(rs, null, 0L));
+        Assert.assertArrayEquals(new Object[]{null, 0L}, values(aggregator.getResult().get(0), 2));
+    }
+
+    @Test
+    public void unsupportedKeepsFirstValue() throws Exception {
+        Assert.assertEquals(GroupByAggregator.UNSUPPORTED, GroupByAggregator.getAggrType("GROUP_CONCAT"));
+        Assert.assertEquals(GroupByAggregator.SUM, GroupByAggregator.getAggrType("sum"));
+
+        GroupByAggregator aggregator = new GroupByAggregator(new int[]{1}, new int[]{2},
+                new int[]{GroupByAggregator.UNSUPPORTED});
+        aggregator.add(row(rs, "a", "x,y"));
+        aggregator.add(row(rs, "a", "z"));
+        Assert.assertArrayEquals(new Object[]{"a", "x,y"}, values(aggregator.getResult().get(0), 2));
+    }
+}
@@ -0,0 +1,144 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.ColumnMetaData;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonResultSetMetaData;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.RowRecordCursor;
+import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingStatement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 合并结果相关测试使用的内存结果集，不需要连接数据库
+ */
+public class MergeTestSupport {
+
+    /**
+     * 列名为c1、c2...的结果集，只用于创建RowRecord
+     */
+    public static DragonShardingResultSet newShardingResultSet(int columnCount) {
+        return new DragonShardingResultSet(new DragonShardingStatement(null), newMetaData(columnCount),
+                new ArrayList<ResultSet>(), new ArrayList<DragonShardingResultSet.RowRecord>());
+    }
+
+    public static DragonShardingResultSet newShardingResultSet(int columnCount, List<ResultSet> realResultSetList,
+            List<DragonShardingResultSet.RowRecord> rowRecords) {
+        return new DragonShardingResultSet(new DragonShardingStatement(null), newMetaData(columnCount),
+                realResultSetList, rowRecords);
+    }
+
+    public static DragonShardingResultSet newShardingResultSet(int columnCount, List<ResultSet> realResultSetList,
+            RowRecordCursor rowRecordCursor) {
+        return new DragonShardingResultSet(new DragonShardingStatement(null), newMetaData(columnCount),
+                realResultSetList, rowRecordCursor);
+    }
+
+    public static DragonResultSetMetaData newMetaData(int columnCount) {
+        Map<Integer, ColumnMetaData> columnMetaDataMap = new TreeMap<Integer, ColumnMetaData>();
+        DragonResultSetMetaData metaData = new DragonResultSetMetaData(columnMetaDataMap);
+        for (int i = 1; i <= columnCount; i++) {
+            ColumnMetaData columnMetaData = new ColumnMetaData();
+            columnMetaData.setColumnLabel("c" + i);
+            columnMetaData.setColumnName("c" + i);
+            columnMetaDataMap.put(i, columnMetaData);
+            metaData.putColumnLabelIndexMaping("c" + i, i);
+        }
+        return metaData;
+    }
+
+    public static DragonShardingResultSet.RowRecord row(DragonShardingResultSet shardingResultSet, Object... values) {
+        DragonShardingResultSet.RowRecord rowRecord = shardingResultSet.new RowRecord();
+        for (int i = 0; i < values.length; i++) {
+            rowRecord.setValue(i + 1, values[i]);
+        }
+        return rowRecord;
+    }
+
+    public static Object[] values(DragonShardingResultSet.RowRecord rowRecord, int columnCount) {
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = rowRecord.getValue(i + 1);
+        }
+        return values;
+    }
+
+    /**
+     * 分库返回的结果集，只支持next、getObject(int)、close和isClosed
+     */
+    public static ResultSet resultSet(final Object[]... rows) {
+        return (ResultSet) Proxy.newProxyInstance(MergeTestSupport.class.getClassLoader(), new Class[]{ResultSet.class},
+                new InvocationHandler() {
+                    private int cursor = -1;
+
+                    private boolean closed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("next".equals(name)) {
+                            if (closed) {
+                                throw new SQLException("result set closed");
+                            }
+                            return ++cursor < rows.length;
+                        }
+                        if ("getObject".equals(name) && args.length == 1 && args[0] instanceof Integer) {
+                            return rows[cursor][(Integer) args[0] - 1];
+                        }
+                        if ("close".equals(name)) {
+                            closed = true;
+                            return null;
+                        }
+                        if ("isClosed".equals(name)) {
+                            return closed;
+                        }
+                        if ("toString".equals(name)) {
+                            return "ResultSet" + Arrays.deepToString(rows);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * 按照第columnIndex列升序排序
+     */
+    public static Comparator<DragonShardingResultSet.RowRecord> ascending(final int columnIndex) {
+        return new Comparator<DragonShardingResultSet.RowRecord>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public int compare(DragonShardingResultSet.RowRecord o1, DragonShardingResultSet.RowRecord o2) {
+                return ((Comparable) o1.getValue(columnIndex)).compareTo(o2.getValue(columnIndex));
+            }
+        };
+    }
+
+    public static List<Object[]> readAll(RowRecordCursor cursor, int columnCount) throws SQLException {
+        List<Object[]> result = new ArrayList<Object[]>();
+        DragonShardingResultSet.RowRecord rowRecord;
+        while ((rowRecord = cursor.next()) != null) {
+            result.add(values(rowRecord, columnCount));
+        }
+        return result;
+    }
+
+    /**
+     * 每条记录第columnIndex列的值
+     */
+    public static List<Object> column(List<Object[]> rows, int columnIndex) {
+        Object[] values = new Object[rows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rows.get(i)[columnIndex - 1];
+        }
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,84 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql.MergeTestSupport.*;
+
+public class OrderByMergeCursorTest {
+    @Test
+    public void mergeSortedShards() throws Exception {
+        List<ResultSet> shards = Arrays.asList(
+                resultSet(new Object[]{1}, new Object[]{4}, new Object[]{7}),
+                resultSet(),
+                resultSet(new Object[]{2}, new Object[]{5}, new Object[]{8}, new Object[]{9}),
+                resultSet(new Object[]{3}, new Object[]{6}));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), column(merge(shards, 1, 0, -1), 1));
+    }
+
+    @Test
+    public void offsetAndLimit() throws Exception {
+        //limit 2,3
+        Assert.assertEquals(Arrays.asList(3, 4, 5), column(merge(threeShards(), 1, 2, 3), 1));
+        //limit 3
+        Assert.assertEquals(Arrays.asList(1, 2, 3), column(merge(threeShards(), 1, 0, 3), 1));
+        //offset超过记录数
+        Assert.assertTrue(merge(threeShards(), 1, 100, 3).isEmpty());
+        //limit 0
+        Assert.assertTrue(merge(threeShards(), 1, 0, 0).isEmpty());
+        //rowCount超过剩余的记录数
+        Assert.assertEquals(Arrays.asList(8, 9), column(merge(threeShards(), 1, 7, 10), 1));
+    }
+
+    @Test
+    public void equalKeysKeepShardOrder() throws Exception {
+        //第二列记录来自哪个分库
+        List<ResultSet> shards = Arrays.asList(
+                resultSet(new Object[]{1, "s0"}, new Object[]{2, "s0"}),
+                resultSet(new Object[]{1, "s1"}, new Object[]{2, "s1"}),
+                resultSet(new Object[]{1, "s2"}));
+        List<Object[]> rows = merge(shards, 2, 0, -1);
+        Assert.assertEquals(5, rows.size());
+        Assert.assertArrayEquals(new Object[]{1, "s0"}, rows.get(0));
+        Assert.assertArrayEquals(new Object[]{1, "s1"}, rows.get(1));
+        Assert.assertArrayEquals(new Object[]{1, "s2"}, rows.get(2));
+        Assert.assertArrayEquals(new Object[]{2, "s0"}, rows.get(3));
+        Assert.assertArrayEquals(new Object[]{2, "s1"}, rows.get(4));
+    }
+
+    @Test
+    public void readThroughShardingResultSet() throws Exception {
+        List<ResultSet> shards = threeShards();
+        OrderByMergeCursor cursor = new OrderByMergeCursor(shards, ascending(1), 1, 2);
+        DragonShardingResultSet shardingResultSet = newShardingResultSet(1, shards, cursor);
+        cursor.setShardingResultSet(shardingResultSet);
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(2, shardingResultSet.getInt(1));
+        Assert.assertTrue(shardingResultSet.next());
+        Assert.assertEquals(3, shardingResultSet.getObject("c1"));
+        Assert.assertFalse(shardingResultSet.next());
+        shardingResultSet.close();
+        for (ResultSet shard : shards) {
+            Assert.assertTrue(shard.isClosed());
+        }
+    }
+
+    private static List<ResultSet> threeShards() {
+        return Arrays.asList(
+                resultSet(new Object[]{1}, new Object[]{4}, new Object[]{7}),
+                resultSet(new Object[]{2}, new Object[]{5}, new Object[]{8}),
+                resultSet(new Object[]{3}, new Object[]{6}, new Object[]{9}));
+    }
+
+    private static List<Object[]> merge(List<ResultSet> shards, int columnCount, long offset, long rowCount)
+            throws Exception {
+        OrderByMergeCursor cursor = new OrderByMergeCursor(shards, ascending(1), offset, rowCount);
+        cursor.setShardingResultSet(newShardingResultSet(columnCount));
+        return readAll(cursor, columnCount);
+    }
+}
@@ -0,0 +1,43 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql.MergeTestSupport.*;
+
+public class SequentialMergeCursorTest {
+    @Test
+    public void readShardsInOrder() throws Exception {
+        List<ResultSet> shards = Arrays.asList(
+                resultSet(new Object[]{3}, new Object[]{1}),
+                resultSet(),
+                resultSet(new Object[]{2}));
+        SequentialMergeCursor cursor = new SequentialMergeCursor(shards);
+        cursor.setShardingResultSet(newShardingResultSet(1));
+
+        Assert.assertEquals(3, cursor.next().getValue(1));
+        Assert.assertEquals(1, cursor.next().getValue(1));
+        //第一个分库读完之后立即关闭，后面的分库还没有读取
+        Assert.assertEquals(2, cursor.next().getValue(1));
+        Assert.assertTrue(shards.get(0).isClosed());
+        Assert.assertTrue(shards.get(1).isClosed());
+        Assert.assertFalse(shards.get(2).isClosed());
+        Assert.assertNull(cursor.next());
+        Assert.assertTrue(shards.get(2).isClosed());
+    }
+
+    @Test
+    public void closeStopsReading() throws Exception {
+        SequentialMergeCursor cursor = new SequentialMergeCursor(Arrays.asList(
+                resultSet(new Object[]{1}, new Object[]{2}),
+                resultSet(new Object[]{3})));
+        cursor.setShardingResultSet(newShardingResultSet(1));
+        Assert.assertEquals(1, cursor.next().getValue(1));
+        cursor.close();
+        Assert.assertNull(cursor.next());
+    }
+}
@@ -0,0 +1,192 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql;
+
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.jdbc.resultset.DragonShardingResultSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.tianshouzhi.dragon.sharding.pipeline.handler.resultmerge.mysql.MergeTestSupport.*;
+
+public class SpillableRowSorterTest {
+    private final DragonShardingResultSet rs = newShardingResultSet(2);
+
+    @Test
+    public void inMemoryWhenUnderLimit() throws Exception {
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 10, 2);
+        sorter.add(row(rs, 3, "c"));
+        sorter.add(row(rs, 1, "a"));
+        Assert.assertFalse(sorter.isSpilled());
+        Assert.assertEquals(2, sorter.getRowCount());
+        Assert.assertEquals(Arrays.asList(1, 3), column(readAll(sorted(sorter, 0, -1), 2), 1));
+    }
+
+    @Test
+    public void externalSort() throws Exception {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(7));
+        List<File> before = listTempRuns();
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 64, 2);
+        for (Integer key : keys) {
+            sorter.add(row(rs, key, "v" + key));
+        }
+        Assert.assertTrue(sorter.isSpilled());
+        Assert.assertEquals(1000, sorter.getRowCount());
+        Assert.assertTrue(listTempRuns().size() > before.size());
+
+        List<Object[]> rows = readAll(sorted(sorter, 0, -1), 2);
+        Assert.assertEquals(1000, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            //从临时文件中读取的记录包含所有列
+            Assert.assertArrayEquals(new Object[]{i, "v" + i}, rows.get(i));
+        }
+        //读取结束之后删除临时文件
+        Assert.assertEquals(before.size(), listTempRuns().size());
+    }
+
+    @Test
+    public void offsetAndLimitAcrossRuns() throws Exception {
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 3, 2);
+        for (int key : new int[]{9, 2, 7, 4, 0, 5, 8, 1, 6, 3}) {
+            sorter.add(row(rs, key, null));
+        }
+        Assert.assertTrue(sorter.isSpilled());
+        Assert.assertEquals(Arrays.asList(4, 5, 6), column(readAll(sorted(sorter, 4, 3), 2), 1));
+    }
+
+    @Test
+    public void keepInsertionOrderWithoutComparator() throws Exception {
+        SpillableRowSorter sorter = new SpillableRowSorter(null, 2, 2);
+        for (int key : new int[]{5, 3, 9, 1, 7}) {
+            sorter.add(row(rs, key, null));
+        }
+        Assert.assertTrue(sorter.isSpilled());
+        Assert.assertEquals(Arrays.asList(5, 3, 9, 1, 7), column(readAll(sorted(sorter, 0, -1), 2), 1));
+    }
+
+    @Test
+    public void closeAndDiscardDeleteTempFiles() throws Exception {
+        List<File> before = listTempRuns();
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 2, 2);
+        for (int i = 0; i < 10; i++) {
+            sorter.add(row(rs, i, null));
+        }
+        SpillableRowSorter.SortedCursor cursor = sorted(sorter, 0, -1);
+        Assert.assertNotNull(cursor.next());
+        cursor.close();
+        Assert.assertNull(cursor.next());
+        Assert.assertEquals(before.size(), listTempRuns().size());
+
+        sorter = new SpillableRowSorter(ascending(1), 2, 2);
+        for (int i = 0; i < 10; i++) {
+            sorter.add(row(rs, i, null));
+        }
+        sorter.discard();
+        Assert.assertEquals(before.size(), listTempRuns().size());
+    }
+
+    @Test
+    public void intermediateMergeWhenTooManyRuns() throws Exception {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(11));
+        List<File> before = listTempRuns();
+        //每2条记录一个run，最多同时归并3个run，需要多轮归并
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 2, 2, 3);
+        for (Integer key : keys) {
+            sorter.add(row(rs, key, "v" + key));
+        }
+        List<Object[]> rows = readAll(sorted(sorter, 0, -1), 2);
+        Assert.assertEquals(100, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertArrayEquals(new Object[]{i, "v" + i}, rows.get(i));
+        }
+        Assert.assertEquals(before.size(), listTempRuns().size());
+
+        //不排序时归并之后仍然保持加入的顺序
+        sorter = new SpillableRowSorter(null, 2, 2, 3);
+        for (Integer key : keys) {
+            sorter.add(row(rs, key, null));
+        }
+        Assert.assertEquals(new ArrayList<Object>(keys), column(readAll(sorted(sorter, 0, -1), 2), 1));
+        Assert.assertEquals(before.size(), listTempRuns().size());
+    }
+
+    @Test
+    public void convertLobToSerializable() throws Exception {
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 1, 2);
+        //驱动返回的Blob、Clob一般不能序列化
+        sorter.add(row(rs, 1, lob(Blob.class, new SerialBlob(new byte[]{1, 2}))));
+        sorter.add(row(rs, 2, lob(Clob.class, new SerialClob("dragon".toCharArray()))));
+        List<Object[]> rows = readAll(sorted(sorter, 0, -1), 2);
+        Assert.assertTrue(Arrays.equals(new byte[]{1, 2}, (byte[]) rows.get(0)[1]));
+        Assert.assertEquals("dragon", rows.get(1)[1]);
+    }
+
+    @Test
+    public void notSerializableValue() throws Exception {
+        List<File> before = listTempRuns();
+        SpillableRowSorter sorter = new SpillableRowSorter(ascending(1), 2, 2);
+        sorter.add(row(rs, 1, null));
+        try {
+            sorter.add(row(rs, 2, new Object()));
+            Assert.fail();
+        } catch (DragonShardException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("dragon.merge.maxInMemoryRows"));
+        }
+        Assert.assertEquals(before.size(), listTempRuns().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxInMemoryRowsMustBePositive() throws Exception {
+        new SpillableRowSorter(null, 0, 2);
+    }
+
+    private SpillableRowSorter.SortedCursor sorted(SpillableRowSorter sorter, long offset, long rowCount) {
+        SpillableRowSorter.SortedCursor cursor = sorter.sortedCursor(offset, rowCount);
+        cursor.setShardingResultSet(rs);
+        return cursor;
+    }
+
+    //不能序列化的代理
+    private static Object lob(Class<?> lobClass, final Object target) {
+        return Proxy.newProxyInstance(SpillableRowSorterTest.class.getClassLoader(), new Class[]{lobClass},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.invoke(target, args);
+                    }
+                });
+    }
+
+    private static List<File> listTempRuns() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        List<File> runs = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("dragon-merge-") && file.getName().endsWith(".run")) {
+                    runs.add(file);
+                }
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,159 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import com.tianshouzhi.dragon.sharding.jdbc.connection.DragonShardingConnection;
+import com.tianshouzhi.dragon.sharding.jdbc.datasource.DragonShardingConfig;
+import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
+import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRewriteHandler;
+import com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite.SqlRouteInfo;
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FastRouteHandlerTest {
+    private DragonShardingConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        dsNameDatasourceMap.put("dragon_sharding_1", null);
+        LogicDatasource logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        Map<String, LogicTable> logicTableMap = new HashMap<String, LogicTable>();
+        logicTableMap.put("user", new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong()%4"),
+                Collections.singleton("(${id}.toLong()%4).intdiv(2)"), logicDatasource, null));
+        //分库分表使用了不同的分区字段
+        logicTableMap.put("user_account", new LogicTable("user_account", "user_account_{0}",
+                Collections.singleton("${user_id}.toLong()%4"), Collections.singleton("${org_id}.toLong()%2"),
+                logicDatasource, null));
+        //字符串分区字段，带引号与不带引号时计算出的表不同
+        logicTableMap.put("user_name", new LogicTable("user_name", "user_name_{0}",
+                Collections.singleton("${name}.length()%4"), Collections.singleton("(${name}.length()%4).intdiv(2)"),
+                logicDatasource, null));
+        connection = new DragonShardingConnection(null, null, new DragonShardingConfig("test", logicDatasource,
+                logicTableMap, null, 0, 0));
+    }
+
+    @Test
+    public void routeSelect() throws Exception {
+        DragonShardingPrepareStatement statement = new DragonShardingPrepareStatement(
+                "select id, name as n, age a from user where id = ?", connection);
+        statement.setLong(1, 5);
+        HandlerContext context = route(statement);
+        Assert.assertTrue(context.isFastRouted());
+        Assert.assertTrue(context.isQuery());
+        //只替换表名，其他部分保持原样
+        SqlRouteInfo sqlRouteInfo = routeInfo(context, "dragon_sharding_0", "user_1");
+        Assert.assertEquals("select id, name as n, age a from user_1 where id = ?", sqlRouteInfo.getSql());
+        Assert.assertEquals(5L, sqlRouteInfo.getParameters().get(1).values[0]);
+
+        //分区字段的值是字面量
+        context = route(new DragonShardingPrepareStatement("SELECT * FROM user WHERE id = 7", connection));
+        Assert.assertTrue(context.isFastRouted());
+        Assert.assertEquals("SELECT * FROM user_3 WHERE id = 7",
+                routeInfo(context, "dragon_sharding_1", "user_3").getSql());
+    }
+
+    @Test
+    public void routeInsert() throws Exception {
+        DragonShardingPrepareStatement statement = new DragonShardingPrepareStatement(
+                "insert into user (name, age, id) values ('tianshouzhi', ?, ?)", connection);
+        statement.setInt(1, 18);
+        statement.setLong(2, 6);
+        HandlerContext context = route(statement);
+        Assert.assertTrue(context.isFastRouted());
+        Assert.assertFalse(context.isQuery());
+        //分区字段之前的占位符也要计数
+        SqlRouteInfo sqlRouteInfo = routeInfo(context, "dragon_sharding_1", "user_2");
+        Assert.assertEquals("insert into user_2 (name, age, id) values ('tianshouzhi', ?, ?)", sqlRouteInfo.getSql());
+        Assert.assertEquals(2, sqlRouteInfo.getParameters().size());
+
+        context = route(new DragonShardingPrepareStatement("INSERT INTO user(id,name) VALUE(4,null)", connection));
+        Assert.assertTrue(context.isFastRouted());
+        Assert.assertEquals("INSERT INTO user_0(id,name) VALUE(4,null)",
+                routeInfo(context, "dragon_sharding_0", "user_0").getSql());
+    }
+
+    @Test
+    public void sameShardValueAsFullParse() throws Exception {
+        //快速路由与完整解析时，路由规则拿到的都是去掉引号之后的字符串
+        String sql = "select * from user_name where name = 'abcd'";
+        HandlerContext context = route(new DragonShardingPrepareStatement(sql, connection));
+        Assert.assertTrue(context.isFastRouted());
+        routeInfo(context, "dragon_sharding_0", "user_name_0");
+
+        context = new HandlerContext(new DragonShardingPrepareStatement(sql, connection));
+        new SqlParseHandler().invoke(context);
+        new SqlRewriteHandler().invoke(context);
+        Assert.assertFalse(context.isFastRouted());
+        routeInfo(context, "dragon_sharding_0", "user_name_0");
+    }
+
+    @Test
+    public void fallThroughToFullParse() throws Exception {
+        assertNotFastRouted("select * from user where id = ? for update");
+        assertNotFastRouted("select user.id from user where id = ?");
+        assertNotFastRouted("select * from user where user.id = ?");
+        assertNotFastRouted("select * from `user` where id = ?");
+        assertNotFastRouted("select * from user /*master*/ where id = ?");
+        assertNotFastRouted("select * from user where id = ? -- comment");
+        assertNotFastRouted("select * from user where id = ? # comment");
+        assertNotFastRouted("select * from user where id = ? and name = ?");
+        assertNotFastRouted("select count(*) from user where id = ?");
+        assertNotFastRouted("select * from user where id >= ?");
+        assertNotFastRouted("select * from user where id = ?;");
+        assertNotFastRouted("insert into user (id, name) values (?, ?), (?, ?)");
+        assertNotFastRouted("insert into user (id, name) values (?, now())");
+        assertNotFastRouted("insert into user (id, name) values (?)");
+        assertNotFastRouted("insert into user select * from user_backup where id = ?");
+        //分区字段不是分库分表规则唯一的分区字段
+        assertNotFastRouted("select * from user_account where user_id = ?");
+        assertNotFastRouted("insert into user_account (user_id, org_id) values (?, ?)");
+        //不是逻辑表
+        assertNotFastRouted("select * from t where id = ?");
+    }
+
+    @Test
+    public void fallThroughWhenParameterMissing() throws Exception {
+        HandlerContext context = route(new DragonShardingPrepareStatement("select * from user where id = ?",
+                connection));
+        Assert.assertFalse(context.isFastRouted());
+        Assert.assertTrue(context.getSqlRouteMap().isEmpty());
+
+        DragonShardingPrepareStatement statement = new DragonShardingPrepareStatement(
+                "insert into user (name, id) values (?, ?)", connection);
+        statement.setString(1, "tianshouzhi");
+        context = route(statement);
+        Assert.assertFalse(context.isFastRouted());
+    }
+
+    private HandlerContext route(DragonShardingPrepareStatement statement) throws Exception {
+        HandlerContext context = new HandlerContext(statement);
+        new FastRouteHandler().invoke(context);
+        return context;
+    }
+
+    private void assertNotFastRouted(String sql) throws Exception {
+        DragonShardingPrepareStatement statement = new DragonShardingPrepareStatement(sql, connection);
+        for (int i = 1; i <= 4; i++) {
+            statement.setLong(i, 5);
+        }
+        HandlerContext context = route(statement);
+        Assert.assertFalse(sql, context.isFastRouted());
+        Assert.assertTrue(sql, context.getSqlRouteMap().isEmpty());
+    }
+
+    private static SqlRouteInfo routeInfo(HandlerContext context, String realDBName, String realTBName) {
+        Assert.assertEquals(Collections.singleton(realDBName), context.getSqlRouteMap().keySet());
+        Map<String, SqlRouteInfo> tbRouteMap = context.getSqlRouteMap().get(realDBName);
+        Assert.assertEquals(Collections.singleton(realTBName), tbRouteMap.keySet());
+        return tbRouteMap.get(realTBName);
+    }
+}
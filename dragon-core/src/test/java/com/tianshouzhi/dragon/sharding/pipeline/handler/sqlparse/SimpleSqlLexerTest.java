@@ -0,0 +1,57 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimpleSqlLexerTest {
+    @Test
+    public void tokens() throws Exception {
+        SimpleSqlLexer lexer = new SimpleSqlLexer(" select *,a from user_1 where id= ? and b=-1.5 and c='it''s'");
+        Assert.assertEquals(SimpleSqlLexer.WORD, lexer.next());
+        Assert.assertTrue(lexer.isWord("SELECT"));
+        Assert.assertEquals(1, lexer.getStart());
+        Assert.assertEquals(7, lexer.getEnd());
+        Assert.assertEquals(SimpleSqlLexer.SYMBOL, lexer.next());
+        Assert.assertTrue(lexer.isSymbol('*'));
+        Assert.assertEquals(SimpleSqlLexer.SYMBOL, lexer.next());
+        Assert.assertTrue(lexer.isSymbol(','));
+        Assert.assertEquals(SimpleSqlLexer.WORD, lexer.next());
+        Assert.assertEquals(SimpleSqlLexer.WORD, lexer.next());
+        Assert.assertEquals(SimpleSqlLexer.WORD, lexer.next());
+        Assert.assertEquals("user_1", lexer.getText());
+        Assert.assertFalse(lexer.isWord("user"));
+        lexer.next();
+        lexer.next();
+        Assert.assertEquals(SimpleSqlLexer.SYMBOL, lexer.next());
+        Assert.assertTrue(lexer.isSymbol('='));
+        Assert.assertEquals(SimpleSqlLexer.PARAM, lexer.next());
+        lexer.next();
+        lexer.next();
+        lexer.next();
+        //负号是单独的符号，由调用者处理
+        Assert.assertEquals(SimpleSqlLexer.SYMBOL, lexer.next());
+        Assert.assertTrue(lexer.isSymbol('-'));
+        Assert.assertEquals(SimpleSqlLexer.NUMBER, lexer.next());
+        Assert.assertEquals("1.5", lexer.getText());
+        lexer.next();
+        lexer.next();
+        lexer.next();
+        Assert.assertEquals(SimpleSqlLexer.STRING, lexer.next());
+        Assert.assertEquals("'it''s'", lexer.getText());
+        Assert.assertEquals("it's", lexer.getStringValue());
+        Assert.assertEquals(SimpleSqlLexer.EOF, lexer.next());
+        Assert.assertEquals(SimpleSqlLexer.EOF, lexer.next());
+    }
+
+    @Test
+    public void unsupported() throws Exception {
+        String[] sqls = {"`user`", "/*master*/", "# comment", ".", ";", ">=", "==", "<=>", "0x1F", "1abc", "'abc", "@a"};
+        for (String sql : sqls) {
+            Assert.assertEquals(sql, SimpleSqlLexer.UNSUPPORTED, new SimpleSqlLexer(sql).next());
+        }
+        //--注释被识别为两个负号，之后不会是数字，由调用者判断
+        SimpleSqlLexer lexer = new SimpleSqlLexer("-- x");
+        Assert.assertTrue(lexer.next() == SimpleSqlLexer.SYMBOL && lexer.isSymbol('-'));
+        Assert.assertTrue(lexer.next() == SimpleSqlLexer.SYMBOL && lexer.isSymbol('-'));
+    }
+}
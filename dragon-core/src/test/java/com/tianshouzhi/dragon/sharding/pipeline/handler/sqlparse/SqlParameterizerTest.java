@@ -0,0 +1,114 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SqlParameterizerTest {
+    @Test
+    public void signedNumbers() throws Exception {
+        //运算符、左括号、逗号之后的+、-是正负号，操作数之后的是加减运算符
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "select * from t where a=-1 and b = a-1 and c in (+5, -6) and d > 1.5e3 and e = 0.25");
+        Assert.assertEquals("select * from t where a=? and b = a-? and c in (?, ?) and d > ? and e = ?",
+                parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(-1L, 1L, 5L, -6L, 1500.0, new BigDecimal("0.25")),
+                values(parameterized));
+        Assert.assertEquals(DragonPrepareStatement.ParamType.setLong, parameterized.getParameters().get(1).paramType);
+        Assert.assertEquals(DragonPrepareStatement.ParamType.setDouble, parameterized.getParameters().get(5).paramType);
+        Assert.assertEquals(DragonPrepareStatement.ParamType.setBigDecimal,
+                parameterized.getParameters().get(6).paramType);
+
+        //表名、列名中的数字不是字面量
+        parameterized = SqlParameterizer.parameterize("select t1.c2 from t1 where t1.c2 = 3");
+        Assert.assertEquals("select t1.c2 from t1 where t1.c2 = ?", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(3L), values(parameterized));
+    }
+
+    @Test
+    public void stringEscapes() throws Exception {
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "update t set name = 'it''s', memo = \"a\\tb\" where c like 'a\\%b\\_c'");
+        Assert.assertEquals("update t set name = ?, memo = ? where c like ?", parameterized.getSql());
+        //like中的\%、\_保留反斜杠，由mysql处理
+        Assert.assertEquals(Arrays.<Object>asList("it's", "a\tb", "a\\%b\\_c"), values(parameterized));
+        Assert.assertEquals(DragonPrepareStatement.ParamType.setString, parameterized.getParameters().get(1).paramType);
+    }
+
+    @Test
+    public void keepTypedLiterals() throws Exception {
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "select id from t where d > DATE '2017-01-01' and ts < timestamp '2017-01-01 00:00:00' and e = 'x'");
+        Assert.assertEquals("select id from t where d > DATE '2017-01-01' and ts < timestamp '2017-01-01 00:00:00' "
+                + "and e = ?", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList("x"), values(parameterized));
+    }
+
+    @Test
+    public void keepSelectListAndOrderByLiterals() throws Exception {
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "select 1, 'a', id from t where id = 2 group by 1 order by 2 limit 5");
+        Assert.assertEquals("select 1, 'a', id from t where id = ? group by 1 order by 2 limit ?",
+                parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(2L, 5L), values(parameterized));
+    }
+
+    @Test
+    public void nestedSubqueries() throws Exception {
+        //select列表中的子查询结束之后，仍然在外层的select列表中
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "SELECT (SELECT 1 FROM x WHERE x.a = 2), 'a' FROM t WHERE b = 'c'");
+        Assert.assertEquals("SELECT (SELECT 1 FROM x WHERE x.a = 2), 'a' FROM t WHERE b = ?", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList("c"), values(parameterized));
+
+        //没有from的子查询
+        parameterized = SqlParameterizer.parameterize("select (select 1), 2 from t where a = 3");
+        Assert.assertEquals("select (select 1), 2 from t where a = ?", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(3L), values(parameterized));
+
+        //where中的子查询
+        parameterized = SqlParameterizer.parameterize(
+                "select id from t where id in (select id from x where a = 3) and b = 4");
+        Assert.assertEquals("select id from t where id in (select id from x where a = ?) and b = ?",
+                parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(3L, 4L), values(parameterized));
+    }
+
+    @Test
+    public void rejectUnsafeSql() throws Exception {
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = X'1F'"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = _utf8'abc'"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = N'abc'"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = 0x1F"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = 'a' 'b'"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = 'abc"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = ? and b = 1"));
+        Assert.assertNull(SqlParameterizer.parameterize("select * from t where a = cast(b as char(10))"));
+    }
+
+    @Test
+    public void keepComments() throws Exception {
+        SqlParameterizer.ParameterizedSql parameterized = SqlParameterizer.parameterize(
+                "select * from t /* 'z' 2 */ # 'x' 1\nwhere a = 1 -- 'y' 3");
+        Assert.assertEquals("select * from t /* 'z' 2 */ # 'x' 1 where a = ? -- 'y' 3", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(1L), values(parameterized));
+
+        //--之后没有空白字符时不是注释，而是减去一个负数
+        parameterized = SqlParameterizer.parameterize("select * from t where a = 1 --1");
+        Assert.assertEquals("select * from t where a = ? -?", parameterized.getSql());
+        Assert.assertEquals(Arrays.<Object>asList(1L, -1L), values(parameterized));
+    }
+
+    private static List<Object> values(SqlParameterizer.ParameterizedSql parameterized) {
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 1; i <= parameterized.getParameters().size(); i++) {
+            values.add(parameterized.getParameters().get(i).values[0]);
+        }
+        return values;
+    }
+}
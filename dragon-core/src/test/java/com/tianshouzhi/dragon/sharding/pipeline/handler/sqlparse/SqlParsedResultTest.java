@@ -0,0 +1,146 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlparse;
+
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SqlParsedResultTest {
+    private LogicTable user;
+
+    private LogicTable userAccount;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        LogicDatasource logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        user = new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong()%4"),
+                Collections.singleton("${id}.toLong()%1"), logicDatasource, null);
+        userAccount = new LogicTable("user_account", "user_account_{0}", Collections.singleton("${user_id}.toLong()%4"),
+                Collections.singleton("${user_id}.toLong()%1"), logicDatasource, null);
+    }
+
+    @Test
+    public void unmarkRestoresAst() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select * from user where id = ? limit 10, 20");
+        //标记token时临时修改的语法树需要还原
+        Assert.assertEquals(parsedResult.getSqlStatement().toString(), parsedResult.getSql());
+        Assert.assertFalse(parsedResult.getSql().contains("\u0000"));
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "user", SqlParsedResult.TokenType.LIMIT_OFFSET, "10",
+                SqlParsedResult.TokenType.LIMIT_ROW_COUNT, "20");
+    }
+
+    @Test
+    public void tableNameInStringLiteral() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select u.name from user u join user_account a "
+                + "on u.id = a.user_id where u.name = 'user' and a.remark = 'from user_account'");
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "user", SqlParsedResult.TokenType.TABLE,
+                "user_account");
+        String sql = render(parsedResult, new LogicTable[]{user, userAccount}, null, 1L);
+        Assert.assertTrue(sql, sql.contains("user_1 u"));
+        Assert.assertTrue(sql, sql.contains("user_account_1 a"));
+        //字符串中的表名不替换
+        Assert.assertTrue(sql, sql.contains("'user'"));
+        Assert.assertTrue(sql, sql.contains("'from user_account'"));
+    }
+
+    @Test
+    public void tableNameInComment() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select * /* from user */ from user where id = ?");
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "user");
+        String sql = render(parsedResult, new LogicTable[]{user}, null, 2L);
+        Assert.assertEquals(sql, 1, count(sql, "user_2"));
+        Assert.assertFalse(sql, sql.contains("\u0000"));
+    }
+
+    @Test
+    public void backquotedTableName() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select * from `user` where id = ?");
+        //token保留反引号，与语法树中的表名一致
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "`user`");
+        String sql = render(parsedResult, new LogicTable[]{user}, null, 3L);
+        Assert.assertTrue(sql, sql.contains("user_3"));
+        Assert.assertFalse(sql, sql.contains("`user`"));
+    }
+
+    @Test
+    public void aliasSameAsOtherTable() throws Exception {
+        //别名与逻辑表同名时，只替换表名，不替换别名
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select user_account.id from user user_account "
+                + "where user_account.id = ?");
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "user");
+        String sql = render(parsedResult, new LogicTable[]{user}, null, 1L);
+        Assert.assertTrue(sql, sql.contains("user_1 user_account"));
+        Assert.assertEquals(sql, 0, count(sql, "user_account_1"));
+    }
+
+    @Test
+    public void repeatedTableReference() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select * from user where id in "
+                + "(select id from user where name = 'user')");
+        assertTokens(parsedResult, SqlParsedResult.TokenType.TABLE, "user", SqlParsedResult.TokenType.TABLE, "user");
+        String sql = render(parsedResult, new LogicTable[]{user, user}, null, 1L);
+        Assert.assertEquals(sql, 2, count(sql, "user_1"));
+        Assert.assertTrue(sql, sql.contains("'user'"));
+
+        //为null的表名保持不变
+        sql = render(parsedResult, new LogicTable[]{user, null}, null, 1L);
+        Assert.assertEquals(sql, 1, count(sql, "user_1"));
+    }
+
+    @Test
+    public void replaceLimit() throws Exception {
+        SqlParsedResult parsedResult = SqlParsedResult.parse("select * from user order by id limit 10, 20");
+        Map<SqlParsedResult.TokenType, String> replacements = new EnumMap<SqlParsedResult.TokenType, String>(
+                SqlParsedResult.TokenType.class);
+        replacements.put(SqlParsedResult.TokenType.LIMIT_OFFSET, "0");
+        replacements.put(SqlParsedResult.TokenType.LIMIT_ROW_COUNT, "30");
+        String sql = render(parsedResult, new LogicTable[]{user}, replacements, 1L);
+        List<SqlParsedResult.Token> tokens = parsedResult.getTokens();
+        String expected = parsedResult.getSql().substring(0, tokens.get(0).getStart()) + "user_1"
+                + parsedResult.getSql().substring(tokens.get(0).getEnd(), tokens.get(1).getStart()) + "0"
+                + parsedResult.getSql().substring(tokens.get(1).getEnd(), tokens.get(2).getStart()) + "30"
+                + parsedResult.getSql().substring(tokens.get(2).getEnd());
+        Assert.assertEquals(expected, sql);
+        //模板不会修改解析结果
+        Assert.assertEquals(parsedResult.getSqlStatement().toString(), parsedResult.getSql());
+    }
+
+    //依次为每个token的类型和内容，并检查token的位置
+    private static void assertTokens(SqlParsedResult parsedResult, Object... typeAndTexts) {
+        List<Object> actual = new ArrayList<Object>();
+        int lastEnd = 0;
+        for (SqlParsedResult.Token token : parsedResult.getTokens()) {
+            actual.add(token.getType());
+            actual.add(token.getText());
+            Assert.assertTrue(token.getStart() >= lastEnd);
+            Assert.assertEquals(token.getText(), parsedResult.getSql().substring(token.getStart(), token.getEnd()));
+            lastEnd = token.getEnd();
+        }
+        Assert.assertEquals(Arrays.asList(typeAndTexts), actual);
+    }
+
+    private static String render(SqlParsedResult parsedResult, LogicTable[] tableLogicTables,
+            Map<SqlParsedResult.TokenType, String> replacements, long primaryTBIndex) {
+        return parsedResult.makeSqlTemplate(tableLogicTables, replacements).render(primaryTBIndex);
+    }
+
+    private static int count(String sql, String word) {
+        int count = 0;
+        for (int index = sql.indexOf(word); index >= 0; index = sql.indexOf(word, index + word.length())) {
+            count++;
+        }
+        return count;
+    }
+}
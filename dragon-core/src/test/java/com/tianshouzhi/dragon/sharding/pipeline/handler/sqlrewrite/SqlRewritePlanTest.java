@@ -0,0 +1,93 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.sharding.jdbc.connection.DragonShardingConnection;
+import com.tianshouzhi.dragon.sharding.jdbc.datasource.DragonShardingConfig;
+import com.tianshouzhi.dragon.sharding.jdbc.statement.DragonShardingPrepareStatement;
+import com.tianshouzhi.dragon.sharding.pipeline.HandlerContext;
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SqlRewritePlanTest {
+    private static final String SQL = "select * from user where id in (?, ?) and name = ?";
+
+    private LogicDatasource logicDatasource;
+
+    private DragonShardingConfig config;
+
+    private DragonShardingConnection connection;
+
+    private SqlRewritePlan rewritePlan;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        dsNameDatasourceMap.put("dragon_sharding_1", null);
+        logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        LogicTable user = newLogicTable();
+        config = new DragonShardingConfig("test", logicDatasource, Collections.singletonMap("user", user), null, 0, 0);
+        connection = new DragonShardingConnection(null, null, config);
+
+        //与解析SQL得到的结果相同：分区字段的值是第1、2个参数
+        SqlRouteParams routeParams = new SqlRouteParams();
+        routeParams.putInListRouteParams(user, "id", Arrays.<Object>asList(new SqlRouteParams.ParamRef(1),
+                new SqlRouteParams.ParamRef(2)));
+        SqlTemplate sqlTemplate = new SqlTemplate(new String[]{"SELECT * FROM ", " WHERE id IN (?, ?) AND name = ?"},
+                new LogicTable[]{user});
+        rewritePlan = new SqlRewritePlan(Collections.singletonList(user), routeParams, sqlTemplate, null);
+    }
+
+    @Test
+    public void rewriteWithDifferentParameters() throws Exception {
+        HandlerContext context = rewrite(5, 7, "tianshouzhi");
+        Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = context.getSqlRouteMap();
+        Assert.assertEquals(2, sqlRouteMap.size());
+        SqlRouteInfo user1 = sqlRouteMap.get("dragon_sharding_0").get("user_1");
+        Assert.assertEquals("SELECT * FROM user_1 WHERE id IN (?, ?) AND name = ?", user1.getSql());
+        Assert.assertEquals("tianshouzhi", user1.getParameters().get(3).values[0]);
+        SqlRouteInfo user3 = sqlRouteMap.get("dragon_sharding_1").get("user_3");
+        Assert.assertEquals("SELECT * FROM user_3 WHERE id IN (?, ?) AND name = ?", user3.getSql());
+
+        //同一个plan，不同的参数路由到不同的表
+        context = rewrite(4, 8, "dragon");
+        sqlRouteMap = context.getSqlRouteMap();
+        Assert.assertEquals(Collections.singleton("dragon_sharding_0"), sqlRouteMap.keySet());
+        Assert.assertEquals(Collections.singleton("user_0"), sqlRouteMap.get("dragon_sharding_0").keySet());
+        SqlRouteInfo user0 = sqlRouteMap.get("dragon_sharding_0").get("user_0");
+        Assert.assertEquals("SELECT * FROM user_0 WHERE id IN (?, ?) AND name = ?", user0.getSql());
+        Assert.assertEquals(8L, user0.getParameters().get(2).values[0]);
+        Assert.assertEquals("dragon", user0.getParameters().get(3).values[0]);
+    }
+
+    @Test
+    public void invalidAfterReplaceLogicTable() throws Exception {
+        HandlerContext context = new HandlerContext(new DragonShardingPrepareStatement(SQL, connection));
+        Assert.assertTrue(rewritePlan.isValid(context));
+        config.replaceLogicTable(newLogicTable());
+        Assert.assertFalse(rewritePlan.isValid(context));
+    }
+
+    private HandlerContext rewrite(long id1, long id2, String name) throws Exception {
+        DragonShardingPrepareStatement statement = new DragonShardingPrepareStatement(SQL, connection);
+        statement.setLong(1, id1);
+        statement.setLong(2, id2);
+        statement.setString(3, name);
+        HandlerContext context = new HandlerContext(statement);
+        rewritePlan.rewrite(context);
+        return context;
+    }
+
+    private LogicTable newLogicTable() throws Exception {
+        return new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong()%4"),
+                Collections.singleton("(${id}.toLong()%4).intdiv(2)"), logicDatasource, null);
+    }
+}
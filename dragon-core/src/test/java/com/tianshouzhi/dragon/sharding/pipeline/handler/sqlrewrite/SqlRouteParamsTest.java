@@ -0,0 +1,92 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.common.jdbc.statement.DragonPrepareStatement;
+import com.tianshouzhi.dragon.sharding.exception.DragonShardException;
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class SqlRouteParamsTest {
+    private LogicTable user;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        dsNameDatasourceMap.put("dragon_sharding_1", null);
+        LogicDatasource logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        user = new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong()%4"),
+                Collections.singleton("(${id}.toLong()%4).intdiv(2)"), logicDatasource, null);
+    }
+
+    @Test
+    public void resolveBinaryParam() throws Exception {
+        SqlRouteParams routeParams = new SqlRouteParams();
+        routeParams.putBinaryRouteParams(user, "id", new SqlRouteParams.ParamRef(2));
+
+        SqlRouteParams resolved = routeParams.resolve(params(2, 5L));
+        Assert.assertEquals(5L, resolved.getBinaryRouteParamsMap().get("id"));
+        Assert.assertEquals(Collections.singletonMap("dragon_sharding_0", Collections.singletonList("user_1")),
+                route(resolved));
+        //同一个路由参数使用不同的参数值
+        resolved = routeParams.resolve(params(2, 7L));
+        Assert.assertEquals(Collections.singletonMap("dragon_sharding_1", Collections.singletonList("user_3")),
+                route(resolved));
+        //原对象不会被修改，可以继续缓存
+        Assert.assertTrue(routeParams.getBinaryRouteParamsMap().get("id") instanceof SqlRouteParams.ParamRef);
+    }
+
+    @Test
+    public void resolveInListParams() throws Exception {
+        SqlRouteParams routeParams = new SqlRouteParams();
+        routeParams.putInListRouteParams(user, "id", Arrays.<Object>asList(new SqlRouteParams.ParamRef(1), "2",
+                new SqlRouteParams.ParamRef(2)));
+        Map<Integer, DragonPrepareStatement.ParamSetting> parameters = params(1, 4L);
+        parameters.putAll(params(2, 7L));
+
+        SqlRouteParams resolved = routeParams.resolve(parameters);
+        Assert.assertEquals(Arrays.<Object>asList(4L, "2", 7L), resolved.getSqlInListRouteParamsMap().get("id"));
+        Map<String, List<String>> routed = route(resolved);
+        Assert.assertEquals(Arrays.asList("user_0"), routed.get("dragon_sharding_0"));
+        Assert.assertEquals(Arrays.asList("user_2", "user_3"), routed.get("dragon_sharding_1"));
+    }
+
+    @Test(expected = DragonShardException.class)
+    public void resolveMissingParam() throws Exception {
+        SqlRouteParams routeParams = new SqlRouteParams();
+        routeParams.putBinaryRouteParams(user, "id", new SqlRouteParams.ParamRef(2));
+        routeParams.resolve(params(1, 5L));
+    }
+
+    private static Map<Integer, DragonPrepareStatement.ParamSetting> params(int index, Object value) {
+        Map<Integer, DragonPrepareStatement.ParamSetting> parameters =
+                new HashMap<Integer, DragonPrepareStatement.ParamSetting>();
+        parameters.put(index, new DragonPrepareStatement.ParamSetting(DragonPrepareStatement.ParamType.setObject,
+                new Object[]{value}));
+        return parameters;
+    }
+
+    //真实库名->排序之后的真实表名
+    private Map<String, List<String>> route(SqlRouteParams routeParams) {
+        Map<String, Map<String, SqlRouteInfo>> sqlRouteMap = new HashMap<String, Map<String, SqlRouteInfo>>();
+        routeParams.fillRouteMap(sqlRouteMap, Collections.singletonList(user), "select * from user");
+        Map<String, List<String>> routed = new TreeMap<String, List<String>>();
+        for (Map.Entry<String, Map<String, SqlRouteInfo>> entry : sqlRouteMap.entrySet()) {
+            List<String> realTBNames = new ArrayList<String>(entry.getValue().keySet());
+            Collections.sort(realTBNames);
+            routed.put(entry.getKey(), realTBNames);
+        }
+        return routed;
+    }
+}
@@ -0,0 +1,49 @@
+package com.tianshouzhi.dragon.sharding.pipeline.handler.sqlrewrite;
+
+import com.tianshouzhi.dragon.sharding.route.LogicDatasource;
+import com.tianshouzhi.dragon.sharding.route.LogicTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SqlTemplateTest {
+    private LogicTable user;
+
+    private LogicTable userAccount;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, DataSource> dsNameDatasourceMap = new HashMap<String, DataSource>();
+        dsNameDatasourceMap.put("dragon_sharding_0", null);
+        LogicDatasource logicDatasource = new LogicDatasource("dragon_sharding_{0}", dsNameDatasourceMap, null);
+        user = new LogicTable("user", "user_{0}", Collections.singleton("${id}.toLong()%4"),
+                Collections.singleton("${id}.toLong()%1"), logicDatasource, null);
+        userAccount = new LogicTable("user_account", "user_account_{0}", Collections.singleton("${user_id}.toLong()%4"),
+                Collections.singleton("${user_id}.toLong()%1"), logicDatasource, null);
+    }
+
+    @Test
+    public void render() throws Exception {
+        SqlTemplate sqlTemplate = new SqlTemplate(new String[]{"SELECT * FROM ", " u JOIN ", " a ON u.id = a.user_id"},
+                new LogicTable[]{user, userAccount});
+        //所有逻辑表都替换为主维度表的编号对应的真实表
+        Assert.assertEquals("SELECT * FROM user_1 u JOIN user_account_1 a ON u.id = a.user_id", sqlTemplate.render(1L));
+        Assert.assertEquals("SELECT * FROM user_3 u JOIN user_account_3 a ON u.id = a.user_id", sqlTemplate.render(3L));
+    }
+
+    @Test
+    public void renderWithoutLogicTable() throws Exception {
+        SqlTemplate sqlTemplate = new SqlTemplate(new String[]{"SELECT 1"}, new LogicTable[0]);
+        Assert.assertEquals("SELECT 1", sqlTemplate.render(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentsNotMatch() throws Exception {
+        new SqlTemplate(new String[]{"SELECT * FROM "}, new LogicTable[]{user});
+    }
+}
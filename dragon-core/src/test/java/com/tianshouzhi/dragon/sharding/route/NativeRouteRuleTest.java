@@ -0,0 +1,61 @@
+package com.tianshouzhi.dragon.sharding.route;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class NativeRouteRuleTest {
+    @Test
+    public void modSameAsGroovy() throws Exception {
+        String[][] rules = {{"${id}.toLong().intdiv(100)%100", "id.toLong().intdiv(100)%100"},
+                {"${id}.toLong()%10000", "id.toLong()%10000"},
+                {"${id}%16", "id%16"}};
+        Object[] values = {123456L, -98765L, 7, 1234567};
+        for (String[] rule : rules) {
+            NativeRouteRule nativeRouteRule = NativeRouteRule.parse(rule[0]);
+            CompiledRouteRule compiledRouteRule = RouteRuleCompiler.compile(rule[1], Arrays.asList("id"));
+            for (Object value : values) {
+                long expected = ((Number) compiledRouteRule.eval(new Object[]{value})).longValue();
+                Assert.assertEquals(rule[0] + ":" + value, expected, nativeRouteRule.eval(value));
+            }
+        }
+        Assert.assertEquals(34L, NativeRouteRule.parse("${id}.toLong().intdiv(100)%100").eval("123456"));
+    }
+
+    @Test
+    public void modIndexRange() throws Exception {
+        //只包含非负的编号，负数取模的结果不预先生成
+        Assert.assertArrayEquals(new long[]{0, 9999}, NativeRouteRule.parse("${id}.toLong()%10000").getIndexRange());
+        Assert.assertArrayEquals(new long[]{0, 99}, NativeRouteRule.parse("${id}.toLong().intdiv(100)%100").getIndexRange());
+        Assert.assertNull(NativeRouteRule.parse("${id}.toLong().intdiv(100)").getIndexRange());
+    }
+
+    @Test
+    public void hashMod() throws Exception {
+        NativeRouteRule rule = NativeRouteRule.parse("${id}.murmurHashMod(16)");
+        Assert.assertEquals(rule.eval(123), rule.eval("123"));
+        long index = rule.eval("abc");
+        Assert.assertTrue(index >= 0 && index < 16);
+    }
+
+    @Test
+    public void range() throws Exception {
+        NativeRouteRule rule = NativeRouteRule.parse("${id}.range(0:0;1000:1;2000:2)");
+        Assert.assertEquals(0L, rule.eval(999));
+        Assert.assertEquals(1L, rule.eval("1000"));
+        Assert.assertEquals(2L, rule.eval(99999L));
+    }
+
+    @Test
+    public void date() throws Exception {
+        Assert.assertEquals(201711L, NativeRouteRule.parse("${create_time}.yearMonth()").eval("'2017-11-05 10:00:00'"));
+        Assert.assertEquals(20171105L, NativeRouteRule.parse("${create_time}.yearMonthDay()").eval("2017-11-05"));
+        Assert.assertEquals(11L, NativeRouteRule.parse("${create_time}.month()").eval("2017-11-05"));
+    }
+
+    @Test
+    public void notRecognized() throws Exception {
+        Assert.assertNull(NativeRouteRule.parse("${id}.substring(2)"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.tianshouzhi.dragon.sharding.route;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class RouteRuleCompilerTest {
+    @Test
+    public void compile() throws Exception {
+        String script = "id.substring(id.length()-4).toLong().intdiv(100)%100";
+        CompiledRouteRule compiledRouteRule = RouteRuleCompiler.compile(script, Arrays.asList("id"));
+
+        HashMap<String, Object> params = new HashMap<String, Object>();
+        params.put("id", "0101");
+        Assert.assertEquals(DragonGroovyEngine.eval(script, params), compiledRouteRule.eval(new Object[]{"0101"}));
+    }
+
+    @Test
+    public void compileMultiColumns() throws Exception {
+        CompiledRouteRule compiledRouteRule = RouteRuleCompiler.compile("(user_id.toLong()+order_id.toLong())%10",
+                Arrays.asList("user_id", "order_id"));
+        Assert.assertEquals(3L, ((Number) compiledRouteRule.eval(new Object[]{"11", 2L})).longValue());
+    }
+}
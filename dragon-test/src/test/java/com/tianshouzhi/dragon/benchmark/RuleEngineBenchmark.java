@@ -3,12 +3,15 @@ package com.tianshouzhi.dragon.benchmark;
 import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
 import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
 import com.carrotsearch.junitbenchmarks.annotation.BenchmarkMethodChart;
+import com.tianshouzhi.dragon.sharding.route.CompiledRouteRule;
 import com.tianshouzhi.dragon.sharding.route.DragonGroovyEngine;
+import com.tianshouzhi.dragon.sharding.route.RouteRuleCompiler;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyObject;
 import org.junit.Test;
 
 import java.io.FileReader;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -19,6 +22,8 @@ public class RuleEngineBenchmark extends AbstractBenchmark{
 
     static RuleEngine javaRuleEngine=new JavaRuleEngine();
     static RuleEngine groovyEngine= (RuleEngine) getGroovyEngine("src/test/resources/GroovyRuleEngine.groovy");
+    static CompiledRouteRule compiledRouteRule = RouteRuleCompiler.compile(
+            "id.substring(id.length()-4).toLong().intdiv(10)%10", Arrays.asList("id"));
     static HashMap<String, Object> params = new HashMap<String, Object>(){{
         put("id", "0101");
     }};
@@ -35,6 +40,13 @@ public class RuleEngineBenchmark extends AbstractBenchmark{
 
     }
 
+    //LogicTable中实际使用的方式：配置加载时编译，运行时按分区字段顺序传参
+    @Test
+    @BenchmarkOptions( benchmarkRounds = 1000000, warmupRounds = 1000,concurrency = 100)
+    public void testCompiledRule() {
+        compiledRouteRule.eval(new Object[]{params.get("id")});
+    }
+
     @Test
     @BenchmarkOptions( benchmarkRounds = 1000000, warmupRounds = 1000,concurrency = 100)
     public void testGroovy() {